@@ -0,0 +1,112 @@
+package com.foodpanda.distributedcron;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.document.DynamoDB;
+import com.amazonaws.services.dynamodbv2.local.embedded.DynamoDBEmbedded;
+import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
+import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Throughput and latency of DynamoDbLocker against an embedded DynamoDB Local
+ *
+ * The uncontended benchmarks lock and unlock a key of their own thread, so every tryLock succeeds. The contended
+ * benchmarks have all threads go for the same key, so most tryLock calls fail their conditional write. The absolute
+ * numbers say little about a real table, they are meant to compare the cost of the locker's own code between changes.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DynamoDbLockerBenchmark {
+
+    private static final String TABLE = "locks";
+
+    private static final int EXPIRY_IN_SECONDS = 60;
+
+    @State(Scope.Benchmark)
+    public static class LocalDynamoDb {
+
+        private AmazonDynamoDB client;
+
+        Locker locker;
+
+        @Setup
+        public void setUp() {
+            client = DynamoDBEmbedded.create().amazonDynamoDB();
+            client.createTable(
+                new CreateTableRequest()
+                    .withTableName(TABLE)
+                    .withKeySchema(new KeySchemaElement(DynamoDbLocker.TABLE_KEY, "HASH"))
+                    .withAttributeDefinitions(new AttributeDefinition(DynamoDbLocker.TABLE_KEY, "S"))
+                    .withProvisionedThroughput(new ProvisionedThroughput(1L, 1L))
+            );
+
+            locker = new DynamoDbLocker(new DynamoDB(client), TABLE);
+        }
+
+        @TearDown
+        public void tearDown() {
+            client.shutdown();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadLockKey {
+
+        private static final AtomicInteger threads = new AtomicInteger();
+
+        String lockKey;
+
+        @Setup
+        public void setUp() {
+            lockKey = "benchmark-" + threads.incrementAndGet();
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void tryLockAndUnlockUncontended(LocalDynamoDb dynamoDb, ThreadLockKey key) {
+        if (dynamoDb.locker.tryLock(key.lockKey, EXPIRY_IN_SECONDS)) {
+            dynamoDb.locker.unlock(key.lockKey);
+        }
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void tryLockAndUnlockUncontendedMultiThreaded(LocalDynamoDb dynamoDb, ThreadLockKey key) {
+        if (dynamoDb.locker.tryLock(key.lockKey, EXPIRY_IN_SECONDS)) {
+            dynamoDb.locker.unlock(key.lockKey);
+        }
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean tryLockAndUnlockContended(LocalDynamoDb dynamoDb) {
+        if (dynamoDb.locker.tryLock("benchmark", EXPIRY_IN_SECONDS)) {
+            dynamoDb.locker.unlock("benchmark");
+
+            return true;
+        }
+
+        return false;
+    }
+}
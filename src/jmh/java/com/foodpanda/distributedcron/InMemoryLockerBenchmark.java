@@ -0,0 +1,81 @@
+package com.foodpanda.distributedcron;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Throughput and latency of the InMemoryLocker, the lower bound of what any Locker costs
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InMemoryLockerBenchmark {
+
+    private static final int EXPIRY_IN_SECONDS = 60;
+
+    @State(Scope.Benchmark)
+    public static class SharedLocker {
+
+        Locker locker;
+
+        @Setup
+        public void setUp() {
+            locker = new InMemoryLocker();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadLockKey {
+
+        private static final AtomicInteger threads = new AtomicInteger();
+
+        String lockKey;
+
+        @Setup
+        public void setUp() {
+            lockKey = "benchmark-" + threads.incrementAndGet();
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void tryLockAndUnlockUncontended(SharedLocker shared, ThreadLockKey key) {
+        if (shared.locker.tryLock(key.lockKey, EXPIRY_IN_SECONDS)) {
+            shared.locker.unlock(key.lockKey);
+        }
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void tryLockAndUnlockUncontendedMultiThreaded(SharedLocker shared, ThreadLockKey key) {
+        if (shared.locker.tryLock(key.lockKey, EXPIRY_IN_SECONDS)) {
+            shared.locker.unlock(key.lockKey);
+        }
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean tryLockAndUnlockContended(SharedLocker shared) {
+        if (shared.locker.tryLock("benchmark", EXPIRY_IN_SECONDS)) {
+            shared.locker.unlock("benchmark");
+
+            return true;
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,79 @@
+package com.foodpanda.distributedcron;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one tick of the scheduler as the number of registered jobs grows
+ *
+ * All jobs run on every tick of a timing wheel driven by a virtual clock, with a locker which always grants the lock
+ * and commands which do nothing, so only the scheduler's own work per run is measured: the timing wheel, the run
+ * wrappers and the lock calls. The time per tick divided by the number of jobs is the dispatch overhead of a run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SchedulerDispatchBenchmark {
+
+    private static final long TICK_MILLIS = 10;
+
+    @Param({"10", "100", "1000", "10000"})
+    public int jobCount;
+
+    private MutableClock clock;
+
+    private TimingWheelScheduledExecutorService wheel;
+
+    private long runs;
+
+    @Setup
+    public void setUp() {
+        clock = new MutableClock(0L);
+        wheel = new TimingWheelScheduledExecutorService(clock, TICK_MILLIS, 512, null, null);
+
+        final Locker alwaysGranted = new Locker() {
+            @Override
+            public boolean tryLock(String lockKey, int expiryInSeconds) {
+                return true;
+            }
+
+            @Override
+            public void unlock(String lockKey) {
+            }
+        };
+        final CronJobSchedulerFactory factory = new CronJobSchedulerFactory(alwaysGranted, wheel);
+
+        for (int i = 0; i < jobCount; i++) {
+            factory.createScheduler("job " + i)
+                .scheduleAtFixedRate(() -> runs++, 0, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        wheel.shutdown();
+    }
+
+    @Benchmark
+    public long tick() {
+        clock.advance(TICK_MILLIS);
+        wheel.advanceTo(clock.millis());
+
+        return runs;
+    }
+}
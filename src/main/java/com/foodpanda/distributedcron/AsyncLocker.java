@@ -0,0 +1,27 @@
+package com.foodpanda.distributedcron;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking counterpart of Locker, the lock calls complete their futures instead of blocking the calling thread
+ */
+public interface AsyncLocker {
+
+    /**
+     * Acquires a lock with some expiry period in seconds, the future completes with true if it was acquired,
+     * false otherwise. The acquiring tries once, does not wait to retry acquiring the lock.
+     *
+     * @param lockKey the key for the lock
+     * @param expiryInSeconds the expiry period of the lock, in seconds
+     * @return future of whether the lock was acquired
+     */
+    CompletableFuture<Boolean> tryLockAsync(String lockKey, int expiryInSeconds);
+
+    /**
+     * Release a distributed lock
+     *
+     * @param lockKey the key for the lock
+     * @return future completed once the lock was released
+     */
+    CompletableFuture<Void> unlockAsync(String lockKey);
+}
@@ -0,0 +1,186 @@
+package com.foodpanda.distributedcron;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers until when locks are held by other processes and refuses to acquire them locally until then.
+ *
+ * Every failed acquisition is followed by a read of the lock's expiry. Until that expiry passes, further attempts are
+ * answered with false without calling the wrapped locker, so a fleet of nodes contending for the same lock pays one
+ * failed conditional write and one read per lock period, instead of a failed conditional write on every tick.
+ *
+ * A lock is only remembered as held for up to maxCachedMillis, even if it expires much later, since its holder may
+ * release it early, e.g. when it stops gracefully or uses short leases. The other nodes then take over at most
+ * maxCachedMillis after the release instead of waiting for the full expiry.
+ *
+ * The cached expiry is only trusted up to clockSkewMillis before it passes, so a small difference between the clocks
+ * of the nodes never delays taking over an expired lock.
+ */
+public class CachingLocker implements Locker {
+
+    private static final Logger logger = LoggerFactory.getLogger(CachingLocker.class);
+
+    private final InspectableLocker locker;
+
+    private final Clock clock;
+
+    private final long clockSkewMillis;
+
+    private final long maxCachedMillis;
+
+    /**
+     * Until when each lock held by another process is answered from the cache, in epoch millis
+     */
+    private final Map<String, Long> foreignLockExpiries = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    public CachingLocker(final InspectableLocker locker) {
+        this(locker, Clock.systemUTC(), 1000L, 30000L);
+    }
+
+    public CachingLocker(final InspectableLocker locker, final Clock clock, final long clockSkewMillis) {
+        this(locker, clock, clockSkewMillis, 30000L);
+    }
+
+    public CachingLocker(
+        final InspectableLocker locker,
+        final Clock clock,
+        final long clockSkewMillis,
+        final long maxCachedMillis
+    ) {
+        this.locker = locker;
+        this.clock = clock;
+        this.clockSkewMillis = clockSkewMillis;
+        this.maxCachedMillis = maxCachedMillis;
+    }
+
+    @Override
+    public boolean tryLock(String lockKey, int expiryInSeconds) {
+        return tryAcquire(lockKey, expiryInSeconds) == LockOutcome.ACQUIRED;
+    }
+
+    /**
+     * Only a lock the wrapped locker reports as held by someone else is cached, a failed or throttled attempt is
+     * passed on as it is and retried on the next call
+     */
+    @Override
+    public LockOutcome tryAcquire(String lockKey, int expiryInSeconds) {
+        if (isKnownToBeHeld(lockKey)) {
+            return LockOutcome.CONTENDED;
+        }
+
+        LockOutcome outcome = locker.tryAcquire(lockKey, expiryInSeconds);
+
+        if (outcome == LockOutcome.ACQUIRED) {
+            foreignLockExpiries.remove(lockKey);
+        } else if (outcome == LockOutcome.CONTENDED) {
+            rememberExpiry(lockKey);
+        }
+
+        return outcome;
+    }
+
+    @Override
+    public Set<String> tryLockAll(Collection<String> lockKeys, int expiryInSeconds) {
+        List<String> unknownLockKeys = new ArrayList<>();
+        for (String lockKey : new LinkedHashSet<>(lockKeys)) {
+            if (!isKnownToBeHeld(lockKey)) {
+                unknownLockKeys.add(lockKey);
+            }
+        }
+
+        if (unknownLockKeys.isEmpty()) {
+            return new LinkedHashSet<>();
+        }
+
+        Set<String> acquired = locker.tryLockAll(unknownLockKeys, expiryInSeconds);
+
+        for (String lockKey : unknownLockKeys) {
+            if (acquired.contains(lockKey)) {
+                foreignLockExpiries.remove(lockKey);
+            } else {
+                rememberExpiry(lockKey);
+            }
+        }
+
+        return acquired;
+    }
+
+    @Override
+    public boolean renewLock(String lockKey, int expiryInSeconds) {
+        return locker.renewLock(lockKey, expiryInSeconds);
+    }
+
+    @Override
+    public void unlock(String lockKey) {
+        foreignLockExpiries.remove(lockKey);
+        locker.unlock(lockKey);
+    }
+
+    /**
+     * Looks through to the wrapped locker, calls made through its capabilities bypass the cache
+     */
+    @Override
+    public <T> T unwrap(Class<T> capability) {
+        return capability.isInstance(this) ? capability.cast(this) : locker.unwrap(capability);
+    }
+
+    /**
+     * @return how many acquisition attempts were answered from the cache
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return how many acquisition attempts were passed on to the wrapped locker
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    private boolean isKnownToBeHeld(String lockKey) {
+        Long cachedUntil = foreignLockExpiries.get(lockKey);
+
+        if (cachedUntil != null && clock.millis() < cachedUntil) {
+            hits.increment();
+
+            return true;
+        }
+
+        if (cachedUntil != null) {
+            foreignLockExpiries.remove(lockKey, cachedUntil);
+        }
+
+        misses.increment();
+
+        return false;
+    }
+
+    private void rememberExpiry(String lockKey) {
+        try {
+            long expiry = locker.getLockExpiry(lockKey);
+            long now = clock.millis();
+
+            if (expiry > now) {
+                foreignLockExpiries.put(lockKey, Math.min(expiry - clockSkewMillis, now + maxCachedMillis));
+            }
+        } catch (Exception ex) {
+            logger.error("Error when reading expiry of lock [{}]: ", lockKey, ex);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.foodpanda.distributedcron;
+
+/**
+ * The checkpoint of a run of a CheckpointedJob, stored with the lock of the job
+ *
+ * Commits are fenced by the lock of the run. Once a commit fails, the lock was lost, e.g. because the run took longer
+ * than the lock expiry, and another node may already be processing the same input, so the run should stop.
+ */
+public class Checkpoint {
+
+    private final CheckpointLocker locker;
+
+    private final String lockKey;
+
+    private volatile String value;
+
+    Checkpoint(final CheckpointLocker locker, final String lockKey, final String value) {
+        this.locker = locker;
+        this.lockKey = lockKey;
+        this.value = value;
+    }
+
+    /**
+     * @return the checkpoint committed last, by this run or a previous one, null if none was ever committed
+     */
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * Stores the progress of the run, for this run and the next ones to continue from
+     *
+     * @param value the new checkpoint, e.g. the id of the last processed record
+     * @return true if it was stored, false if the lock of the run is no longer held or the lock store failed
+     */
+    public boolean commit(String value) {
+        if (!locker.commitCheckpoint(lockKey, value)) {
+            return false;
+        }
+
+        this.value = value;
+
+        return true;
+    }
+}
@@ -0,0 +1,40 @@
+package com.foodpanda.distributedcron;
+
+/**
+ * A locker which also stores a checkpoint of the job guarded by the lock, e.g. the id of the last processed record,
+ * so whichever node runs the job next resumes where the previous run stopped
+ *
+ * The checkpoint is kept next to the lock itself, locking and unlocking it with the other methods leaves it alone.
+ * Committing a checkpoint is fenced by the lock: it only succeeds while this process holds the lock, so a process
+ * whose lock expired and was taken over can never overwrite the progress of the new holder.
+ */
+public interface CheckpointLocker extends Locker {
+
+    /**
+     * Reads the last committed checkpoint of the job guarded by the lock
+     *
+     * @param lockKey the key for the lock
+     * @return the checkpoint, or null if none was ever committed
+     */
+    String readCheckpoint(String lockKey);
+
+    /**
+     * Acquires the lock like tryLock, reading the checkpoint with the same request, so a run knows where to resume
+     * without another round-trip to the lock store
+     *
+     * @param lockKey the key for the lock
+     * @param expiryInSeconds the expiry of the lock
+     * @return the checkpoint of the run which acquired the lock, whose value is null if none was ever committed, or
+     * null if the lock wasn't acquired
+     */
+    Checkpoint tryLockWithCheckpoint(String lockKey, int expiryInSeconds);
+
+    /**
+     * Stores the checkpoint, but only if the lock is held by this process and hasn't expired
+     *
+     * @param lockKey the key for the lock
+     * @param checkpoint the new checkpoint, should be small as it's stored with the lock
+     * @return true if the checkpoint was stored, false if the lock is no longer held or the lock store failed
+     */
+    boolean commitCheckpoint(String lockKey, String checkpoint);
+}
@@ -0,0 +1,16 @@
+package com.foodpanda.distributedcron;
+
+/**
+ * A job which processes its input incrementally, resuming from the checkpoint committed by the previous run, whichever
+ * node that run was on
+ */
+@FunctionalInterface
+public interface CheckpointedJob {
+
+    /**
+     * Processes the input after the checkpoint, committing the progress as it goes
+     *
+     * @param checkpoint the checkpoint of the job, read right after the lock of the run was acquired
+     */
+    void run(Checkpoint checkpoint);
+}
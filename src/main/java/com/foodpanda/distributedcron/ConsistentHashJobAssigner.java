@@ -0,0 +1,146 @@
+package com.foodpanda.distributedcron;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shards the cron jobs across all live members of the fleet by consistent hashing of their descriptions
+ *
+ * Every job runs on exactly one node, so the load of running jobs is spread over the whole fleet instead of landing on
+ * whichever node wins the lock races, and no lock calls are made per run. The node publishes its heartbeat and reads
+ * the live members on every refresh. When the membership changes, only the jobs of the joining or leaving node move.
+ *
+ * Nodes can have different views of the membership until the next refresh, so right after a change a job can run on
+ * two nodes, or none, for up to one refresh interval. A node which can't publish its heartbeat for a whole membership
+ * expiry stops running any jobs, since the rest of the fleet has already taken them over.
+ */
+public class ConsistentHashJobAssigner implements JobAssigner {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConsistentHashJobAssigner.class);
+
+    private static final int DEFAULT_VIRTUAL_NODES_PER_MEMBER = 128;
+
+    private final Membership membership;
+
+    private final String nodeId;
+
+    private final long refreshIntervalMillis;
+
+    private final long membershipExpiryMillis;
+
+    private final int virtualNodesPerMember;
+
+    private final ScheduledExecutorService refreshExecutor;
+
+    private volatile HashRing ring = new HashRing(Collections.emptySet(), 0);
+
+    private volatile Set<String> members = Collections.emptySet();
+
+    private volatile long lastHeartbeatNanos;
+
+    /**
+     * @param nodeId the id this node publishes its heartbeats under
+     * @param refreshIntervalMillis how often to publish the heartbeat and read the membership, should be a fraction of
+     *                              the membership expiry
+     * @param membershipExpiryMillis how long a node is considered alive after its last heartbeat
+     */
+    public ConsistentHashJobAssigner(
+        final Membership membership,
+        final String nodeId,
+        final long refreshIntervalMillis,
+        final long membershipExpiryMillis
+    ) {
+        this(
+            membership,
+            nodeId,
+            refreshIntervalMillis,
+            membershipExpiryMillis,
+            DEFAULT_VIRTUAL_NODES_PER_MEMBER,
+            Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("fleet-cron-membership-%d").setDaemon(true).build()
+            )
+        );
+    }
+
+    public ConsistentHashJobAssigner(
+        final Membership membership,
+        final String nodeId,
+        final long refreshIntervalMillis,
+        final long membershipExpiryMillis,
+        final int virtualNodesPerMember,
+        final ScheduledExecutorService refreshExecutor
+    ) {
+        this.membership = membership;
+        this.nodeId = nodeId;
+        this.refreshIntervalMillis = refreshIntervalMillis;
+        this.membershipExpiryMillis = membershipExpiryMillis;
+        this.virtualNodesPerMember = virtualNodesPerMember;
+        this.refreshExecutor = refreshExecutor;
+        this.lastHeartbeatNanos = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(membershipExpiryMillis) - 1;
+    }
+
+    /**
+     * Joins the fleet, the first heartbeat and membership read are done right away
+     */
+    public void start() {
+        refreshExecutor.scheduleWithFixedDelay(this::refresh, 0, refreshIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Leaves the fleet, so the jobs of this node move to the other nodes on their next refresh
+     */
+    public void stop() {
+        refreshExecutor.shutdown();
+
+        try {
+            refreshExecutor.awaitTermination(refreshIntervalMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        ring = new HashRing(Collections.emptySet(), 0);
+        membership.leave();
+    }
+
+    @Override
+    public boolean isAssignedToThisNode(String cronJobDescription) {
+        if (System.nanoTime() - lastHeartbeatNanos > TimeUnit.MILLISECONDS.toNanos(membershipExpiryMillis)) {
+            return false;
+        }
+
+        return nodeId.equals(ring.ownerOf(cronJobDescription));
+    }
+
+    /**
+     * @return the live members as of the last refresh
+     */
+    public Set<String> getMembers() {
+        return members;
+    }
+
+    void refresh() {
+        try {
+            final long heartbeatStartedAtNanos = System.nanoTime();
+            membership.heartbeat();
+            lastHeartbeatNanos = heartbeatStartedAtNanos;
+
+            final Set<String> liveMembers = membership.readLiveMembers();
+            if (!liveMembers.equals(members)) {
+                ring = new HashRing(liveMembers, virtualNodesPerMember);
+                members = Collections.unmodifiableSet(liveMembers);
+
+                logger.info("Fleet membership changed, {} live members: {}", liveMembers.size(), liveMembers);
+            }
+        } catch (Exception ex) {
+            logger.error("Error when refreshing fleet membership of node [{}]: ", nodeId, ex);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.foodpanda.distributedcron;
+
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.BitSet;
+import java.util.Locale;
+
+/**
+ * A parsed cron expression, e.g. "15 2 * * MON-FRI" for every weekday at 02:15
+ *
+ * The expression has the five standard fields "minute hour day-of-month month day-of-week", optionally preceded by
+ * a sixth "second" field. Each field is either "*", a value, a range "1-5" or a list "1,3,5" of these, all
+ * optionally followed by a step "/n". Months and days of week can be given by their three letter English names, both
+ * 0 and 7 mean Sunday and "?" is accepted as "*" in the day fields. As in classic cron, when both day-of-month and
+ * day-of-week are restricted, a day matching either of them matches.
+ *
+ * The next fire time is evaluated in the time zone of the passed time. Local times skipped by a daylight saving
+ * transition are skipped by the schedule as well.
+ */
+public final class CronExpression {
+
+    private static final String[] MONTHS = {
+        "JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP", "OCT", "NOV", "DEC"
+    };
+
+    private static final String[] DAYS_OF_WEEK = {"SUN", "MON", "TUE", "WED", "THU", "FRI", "SAT"};
+
+    /**
+     * How far ahead to look for the next fire time, expressions like "0 0 30 2 *" never fire
+     */
+    private static final int MAX_YEARS_AHEAD = 5;
+
+    private final String expression;
+
+    private final BitSet seconds;
+
+    private final BitSet minutes;
+
+    private final BitSet hours;
+
+    private final BitSet daysOfMonth;
+
+    private final BitSet months;
+
+    private final BitSet daysOfWeek;
+
+    private final boolean daysOfMonthRestricted;
+
+    private final boolean daysOfWeekRestricted;
+
+    private CronExpression(String expression) {
+        this.expression = expression;
+
+        String[] fields = expression.trim().split("\\s+");
+        if (fields.length != 5 && fields.length != 6) {
+            throw new IllegalArgumentException(
+                "Cron expression '" + expression + "' must have 5 or 6 fields, it has " + fields.length
+            );
+        }
+
+        int offset = fields.length - 5;
+
+        this.seconds = offset == 1 ? parseField(fields[0], 0, 59, null) : parseField("0", 0, 59, null);
+        this.minutes = parseField(fields[offset], 0, 59, null);
+        this.hours = parseField(fields[offset + 1], 0, 23, null);
+        this.daysOfMonth = parseField(fields[offset + 2], 1, 31, null);
+        this.months = parseField(fields[offset + 3], 1, 12, MONTHS);
+        this.daysOfWeek = parseField(fields[offset + 4], 0, 7, DAYS_OF_WEEK);
+
+        // 7 is an alias of Sunday
+        if (daysOfWeek.get(7)) {
+            daysOfWeek.set(0);
+            daysOfWeek.clear(7);
+        }
+
+        this.daysOfMonthRestricted = !isWildcard(fields[offset + 2]);
+        this.daysOfWeekRestricted = !isWildcard(fields[offset + 4]);
+    }
+
+    /**
+     * @param expression the cron expression
+     * @return the parsed expression
+     * @throws IllegalArgumentException if the expression is not valid
+     */
+    public static CronExpression parse(String expression) {
+        return new CronExpression(expression);
+    }
+
+    /**
+     * Finds the first time matching the expression strictly after the passed time
+     *
+     * @param after the time to start searching from, also determines the time zone
+     * @return the next fire time
+     * @throws IllegalStateException if the expression doesn't fire in the next few years
+     */
+    public ZonedDateTime nextAfter(ZonedDateTime after) {
+        ZonedDateTime candidate = after.truncatedTo(ChronoUnit.SECONDS).plusSeconds(1);
+        ZonedDateTime limit = after.plusYears(MAX_YEARS_AHEAD);
+
+        while (candidate.isBefore(limit)) {
+            if (!months.get(candidate.getMonthValue())) {
+                candidate = candidate.truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1).plusMonths(1);
+            } else if (!matchesDay(candidate)) {
+                candidate = candidate.truncatedTo(ChronoUnit.DAYS).plusDays(1);
+            } else if (!hours.get(candidate.getHour())) {
+                candidate = candidate.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+            } else if (!minutes.get(candidate.getMinute())) {
+                candidate = candidate.truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+            } else if (!seconds.get(candidate.getSecond())) {
+                candidate = candidate.plusSeconds(1);
+            } else {
+                return candidate;
+            }
+        }
+
+        throw new IllegalStateException(
+            "Cron expression '" + expression + "' does not fire within " + MAX_YEARS_AHEAD + " years after " + after
+        );
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    private boolean matchesDay(ZonedDateTime candidate) {
+        boolean dayOfMonthMatches = daysOfMonth.get(candidate.getDayOfMonth());
+        boolean dayOfWeekMatches = daysOfWeek.get(candidate.getDayOfWeek().getValue() % 7);
+
+        if (daysOfMonthRestricted && daysOfWeekRestricted) {
+            return dayOfMonthMatches || dayOfWeekMatches;
+        }
+
+        return dayOfMonthMatches && dayOfWeekMatches;
+    }
+
+    private static boolean isWildcard(String field) {
+        return "*".equals(field) || "?".equals(field);
+    }
+
+    private BitSet parseField(String field, int min, int max, String[] names) {
+        BitSet values = new BitSet(max + 1);
+
+        for (String part : field.split(",")) {
+            int step = 1;
+            String range = part;
+
+            int slash = part.indexOf('/');
+            if (slash >= 0) {
+                step = parseValue(part.substring(slash + 1), 1, Integer.MAX_VALUE, null);
+                range = part.substring(0, slash);
+            }
+
+            int from;
+            int to;
+
+            if (isWildcard(range)) {
+                from = min;
+                to = max;
+            } else if (range.indexOf('-') > 0) {
+                int dash = range.indexOf('-');
+                from = parseValue(range.substring(0, dash), min, max, names);
+                to = parseValue(range.substring(dash + 1), min, max, names);
+            } else {
+                from = parseValue(range, min, max, names);
+                to = slash >= 0 ? max : from;
+            }
+
+            if (from > to) {
+                throw new IllegalArgumentException("Invalid range '" + part + "' in cron expression '" + expression + "'");
+            }
+
+            for (int value = from; value <= to; value += step) {
+                values.set(value);
+            }
+        }
+
+        return values;
+    }
+
+    private int parseValue(String value, int min, int max, String[] names) {
+        if (names != null) {
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equals(value.toUpperCase(Locale.ROOT))) {
+                    return i + min;
+                }
+            }
+        }
+
+        int parsed;
+        try {
+            parsed = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value '" + value + "' in cron expression '" + expression + "'", e);
+        }
+
+        if (parsed < min || parsed > max) {
+            throw new IllegalArgumentException(
+                "Value " + parsed + " in cron expression '" + expression + "' is out of range " + min + "-" + max
+            );
+        }
+
+        return parsed;
+    }
+}
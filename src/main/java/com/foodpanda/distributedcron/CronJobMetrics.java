@@ -0,0 +1,66 @@
+package com.foodpanda.distributedcron;
+
+/**
+ * Receives measurements of the locks and runs of cron jobs, e.g. to publish them to a metrics system
+ *
+ * The methods are called on the threads acquiring the locks and running the jobs, so implementations must be
+ * thread-safe and should return quickly without allocating, e.g. by updating counters and histograms kept per lock
+ * key or job. All durations are in nanoseconds. Every method does nothing by default, so implementations only need
+ * to override what they are interested in.
+ *
+ * @see InMemoryCronJobMetrics
+ */
+public interface CronJobMetrics {
+
+    /**
+     * Does not record anything
+     */
+    CronJobMetrics NONE = new CronJobMetrics() { };
+
+    /**
+     * Called after each attempt to acquire a lock
+     *
+     * @param lockKey the key of the lock
+     * @param outcome whether the lock was acquired, held by someone else or the attempt failed
+     * @param latencyNanos how long the attempt took
+     */
+    default void recordLockAcquire(String lockKey, LockOutcome outcome, long latencyNanos) {
+    }
+
+    /**
+     * Called after each release of a lock
+     *
+     * @param lockKey the key of the lock
+     * @param latencyNanos how long releasing the lock took
+     */
+    default void recordUnlock(String lockKey, long latencyNanos) {
+    }
+
+    /**
+     * Called after each run of a job's command on this node
+     *
+     * @param cronJobDescription the job
+     * @param durationNanos how long the command ran
+     * @param failed whether the command threw an exception
+     */
+    default void recordRun(String cronJobDescription, long durationNanos, boolean failed) {
+    }
+
+    /**
+     * Called for each run which was due but skipped without contending for the lock, because the previous run of the
+     * job was still going or there was no capacity to execute it
+     *
+     * @param cronJobDescription the job
+     */
+    default void recordSkippedRun(String cronJobDescription) {
+    }
+
+    /**
+     * Called when a run is started by the scheduled executor
+     *
+     * @param cronJobDescription the job
+     * @param driftNanos how much later than its due time the run started
+     */
+    default void recordScheduleDrift(String cronJobDescription, long driftNanos) {
+    }
+}
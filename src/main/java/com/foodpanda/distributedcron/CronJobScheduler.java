@@ -3,8 +3,28 @@ package com.foodpanda.distributedcron;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Clock;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * Utility class for our managed cron jobs. it wraps the ScheduledExecutorService which runs a cron
@@ -22,57 +42,1057 @@ public class CronJobScheduler {
 
     private static final int DEFAULT_CRONJOB_EXPIRY = 600;
 
+    private final ScheduledExecutorService scheduledExecutorService;
+
+    private final String cronJobDescription;
+
+    private final String lockKey;
+
+    /**
+     * Only used to resolve the locks of partitioned jobs and the permits of jobs with a concurrency limit, and to
+     * release all locks on a graceful stop, the job's own lock goes through lockHandle
+     */
     private final Locker locker;
 
-    private final ScheduledExecutorService scheduledExecutorService;
+    /**
+     * The lock guarding the runs, resolved once for all of them
+     */
+    private final LockHandle lockHandle;
+
+    /**
+     * The time of the lock store, used for everything compared against the expiries and due times of the locks
+     */
+    private final Clock clock;
+
+    private final LeaseRenewer leaseRenewer;
+
+    /**
+     * Shared by all schedulers of a factory to acquire locks of coinciding runs together, null if not batching
+     */
+    private final LockBatcher lockBatcher;
+
+    /**
+     * Decides which node runs the job instead of a lock on each run, null if the runs contend for the lock
+     */
+    private final JobAssigner jobAssigner;
+
+    /**
+     * Runs the lock acquisition and the command, so the scheduled executor only dispatches due runs,
+     * null to run them on the scheduled executor itself
+     */
+    private final Executor runExecutor;
+
+    /**
+     * Acquires and releases the locks of the runs without blocking a thread, null to use the locker instead
+     */
+    private final AsyncLocker asyncLocker;
+
+    private final CronJobMetrics metrics;
+
+    /**
+     * Stores the schedule shared by the fleet, null if the locker doesn't support it
+     */
+    private final SharedScheduleLocker sharedScheduleLocker;
+
+    /**
+     * How much later than scheduled this node starts the runs of this job, to spread the lock calls of the fleet
+     */
+    private final long jitterMillis;
+
+    /**
+     * Records every run of the command, null to keep no history
+     */
+    private final RunHistory runHistory;
+
+    /**
+     * Releases the locks still held on a graceful stop as handed off, null if the locker can't mark them
+     */
+    private final HandOffLocker handOffLocker;
+
+    /**
+     * Retries runs as soon as a lock held by another node is handed off, null to only retry on the next run
+     */
+    private final HandOffWatcher handOffWatcher;
+
+    /**
+     * Stores the checkpoints of checkpointed jobs with their lock, null if the locker doesn't support it
+     */
+    private final CheckpointLocker checkpointLocker;
+
+    /**
+     * The locks this node acquired and didn't release yet, with the epoch millis they expire at
+     */
+    private final Map<String, Long> heldLocks = new ConcurrentHashMap<>();
+
+    /**
+     * The held locks whose runs are still going, a graceful stop which gives up on the runs leaves them to expire
+     */
+    private final Set<String> locksOfRunsInFlight = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The number of commands running at the moment, also the monitor a graceful stop waits on
+     */
+    private final AtomicInteger runsInFlight = new AtomicInteger();
+
+    private volatile boolean stopping;
+
+    /**
+     * The optional capabilities, e.g. the shared schedule, are looked up through any decorators of the locker
+     */
+    CronJobScheduler(String cronJobDescription, SchedulerSettings settings) {
+        this.scheduledExecutorService = settings.scheduledExecutorService;
+        this.cronJobDescription = cronJobDescription;
+        this.lockKey = "LOCK_" + cronJobDescription;
+        this.locker = settings.locker;
+        this.lockHandle = locker.handle(lockKey);
+        this.clock = settings.clock;
+        this.leaseRenewer = settings.leaseRenewer;
+        this.lockBatcher = settings.lockBatcher;
+        this.jobAssigner = settings.jobAssigner;
+        this.runExecutor = settings.runExecutor;
+        this.asyncLocker = settings.asyncLocker;
+        this.metrics = settings.metrics;
+        this.sharedScheduleLocker = locker.unwrap(SharedScheduleLocker.class);
+        this.jitterMillis = CronJobSchedulerFactory.jitterMillis(
+            settings.jitterNodeId, cronJobDescription, settings.maxJitterMillis
+        );
+        this.runHistory = settings.runHistory;
+        this.handOffLocker = locker.unwrap(HandOffLocker.class);
+        this.handOffWatcher = settings.handOffWatcher;
+        this.checkpointLocker = locker.unwrap(CheckpointLocker.class);
+    }
+
+    public void scheduleAtFixedRateWithLock(Runnable command, long initialDelay, long period, TimeUnit unit, int expiryInSeconds) {
+        final long startDelayNanos = jitteredDelayNanos(initialDelay, unit);
+        final long periodNanos = unit.toNanos(period);
+        final Runnable run = prepareRun(command, (measured, retry) -> runAndReleaseLockAfterTimeout(measured, expiryInSeconds, retry));
+
+        scheduledExecutorService.scheduleAtFixedRate(
+            measureFixedRateDrift(run, startDelayNanos, periodNanos, TimeUnit.NANOSECONDS),
+            startDelayNanos,
+            periodNanos,
+            TimeUnit.NANOSECONDS
+        );
+
+        logger.info("Scheduled cron job '{}' with a start delay of {}, a fixed rate of {} and expiry in {} seconds",
+                    cronJobDescription,
+                    initialDelay +  " " + unit.name(),
+                    period +  " " + unit.name(),
+                    expiryInSeconds
+        );
+    }
+
+    public void scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        final long startDelayNanos = jitteredDelayNanos(initialDelay, unit);
+        final long periodNanos = unit.toNanos(period);
+        final Runnable run = prepareRun(command, this::runAndReleaseLockAfterCommand);
+
+        scheduledExecutorService.scheduleAtFixedRate(
+            measureFixedRateDrift(run, startDelayNanos, periodNanos, TimeUnit.NANOSECONDS),
+            startDelayNanos,
+            periodNanos,
+            TimeUnit.NANOSECONDS
+        );
+
+        logger.info("Scheduled cron job '{}' with a start delay of {} and a fixed rate of {}",
+            cronJobDescription,
+            initialDelay +  " " + unit.name(),
+            period +  " " + unit.name()
+        );
+    }
+
+    /**
+     * Schedules the command with a fixed break between the end of a run and the start of the next one
+     *
+     * The break always counts from the end of the command, also when the command is run on an execution pool or
+     * after its lock was acquired in a batch or asynchronously.
+     */
+    public void scheduleWithFixedDelay(final Runnable command, final Long initialDelay, final Integer breakBetweenRunsInSeconds, final TimeUnit unit) {
+        final long startDelayNanos = jitteredDelayNanos(initialDelay, unit);
+        final long delayNanos = unit.toNanos(breakBetweenRunsInSeconds);
+        final Runnable run = prepareRun(command, this::runAndReleaseLockAfterCommand);
+
+        scheduleWithFixedDelayAfterRun(run, startDelayNanos, delayNanos);
+
+        logger.info("Scheduled cron job '{}' with a start delay of {} and a delay before next run of {}",
+            cronJobDescription,
+            initialDelay +  " " + unit.name(),
+            breakBetweenRunsInSeconds +  " " + unit.name()
+        );
+    }
+
+    /**
+     * Schedules the command to run at the times matching a cron expression, e.g. "15 2 * * MON-FRI" for every
+     * weekday at 02:15, evaluated in the passed time zone. Each run is guarded by the lock like with
+     * scheduleAtFixedRate.
+     *
+     * Each run is scheduled as a one-shot task when the previous one is done, fire times missed because a run took
+     * too long are skipped. The fire times follow the clock of the scheduler, so a cron schedule also runs on the
+     * virtual clock of a TimingWheelScheduledExecutorService passed the same clock.
+     *
+     * @see CronExpression
+     */
+    public void scheduleWithCron(Runnable command, String cronExpression, ZoneId zone) {
+        final CronExpression cron = CronExpression.parse(cronExpression);
+
+        scheduleNextCronRun(prepareRun(command, this::runAndReleaseLockAfterCommand), cron, ZonedDateTime.now(clock.withZone(zone)));
+
+        logger.info("Scheduled cron job '{}' with cron expression '{}' in time zone {}",
+            cronJobDescription,
+            cronExpression,
+            zone
+        );
+    }
+
+    /**
+     * Schedules the command at a fixed rate, holding the lock only with a short lease which is renewed in the
+     * background for as long as the command runs. If the node dies, the lock is free again after leaseInSeconds.
+     *
+     * If the lease can't be renewed, the thread running the command is interrupted, since another node may
+     * already be running the job. Long running commands should check for interruption and abort.
+     */
+    public void scheduleAtFixedRateWithLease(Runnable command, long initialDelay, long period, TimeUnit unit, int leaseInSeconds) {
+        final long startDelayNanos = jitteredDelayNanos(initialDelay, unit);
+        final long periodNanos = unit.toNanos(period);
+        final Runnable run = prepareRun(command, (measured, retry) -> runWithRenewedLease(measured, leaseInSeconds, retry));
+
+        scheduledExecutorService.scheduleAtFixedRate(
+            measureFixedRateDrift(run, startDelayNanos, periodNanos, TimeUnit.NANOSECONDS),
+            startDelayNanos,
+            periodNanos,
+            TimeUnit.NANOSECONDS
+        );
+
+        logger.info("Scheduled cron job '{}' with a start delay of {}, a fixed rate of {} and a lease of {} seconds",
+            cronJobDescription,
+            initialDelay +  " " + unit.name(),
+            period +  " " + unit.name(),
+            leaseInSeconds
+        );
+    }
+
+    /**
+     * Schedules the command with a fixed delay between runs, holding the lock with a renewed lease
+     *
+     * @see #scheduleAtFixedRateWithLease(Runnable, long, long, TimeUnit, int)
+     */
+    public void scheduleWithFixedDelayWithLease(Runnable command, long initialDelay, long delay, TimeUnit unit, int leaseInSeconds) {
+        final long startDelayNanos = jitteredDelayNanos(initialDelay, unit);
+        final long delayNanos = unit.toNanos(delay);
+        final Runnable run = prepareRun(command, (measured, retry) -> runWithRenewedLease(measured, leaseInSeconds, retry));
+
+        scheduleWithFixedDelayAfterRun(run, startDelayNanos, delayNanos);
+
+        logger.info("Scheduled cron job '{}' with a start delay of {}, a delay before next run of {} and a lease of {} seconds",
+            cronJobDescription,
+            initialDelay +  " " + unit.name(),
+            delay +  " " + unit.name(),
+            leaseInSeconds
+        );
+    }
+
+    /**
+     * Schedules the command to run once per period across the whole fleet, following a schedule shared through the
+     * lock store instead of a timer of each node
+     *
+     * Each node reads when the job is due next, waits until then and claims that period, which only one node
+     * succeeds in. The others wait for the next period, so the job runs exactly once per period however far the
+     * nodes are out of phase, and the lock store sees one claim per node and period. Periods nobody claimed, e.g.
+     * while the whole fleet was down, are skipped.
+     *
+     * The lock is held while the command runs, for at most expiryInSeconds. A period which becomes due while the
+     * previous run still holds the lock is skipped.
+     *
+     * @throws UnsupportedOperationException if the locker doesn't implement SharedScheduleLocker
+     */
+    public void scheduleAtFixedRateWithSharedSchedule(Runnable command, long period, TimeUnit unit, int expiryInSeconds) {
+        if (sharedScheduleLocker == null) {
+            throw new UnsupportedOperationException("The locker doesn't implement SharedScheduleLocker");
+        }
+
+        scheduleNextSharedRun(measureRun(command), unit.toMillis(period), expiryInSeconds, jitterMillis);
+
+        logger.info("Scheduled cron job '{}' with a shared fixed rate of {} and expiry in {} seconds",
+            cronJobDescription,
+            period +  " " + unit.name(),
+            expiryInSeconds
+        );
+    }
+
+    /**
+     * Schedules the command to run on up to maxConcurrentRuns nodes of the fleet at the same time, e.g. for jobs
+     * draining a queue
+     *
+     * Instead of the lock, each run acquires a permit of a FleetSemaphore stored next to the lock, and releases it
+     * once the command is done. A run which finds all permits held is skipped. The permit is held for at most
+     * expiryInSeconds, so the permit of a node which died is reclaimed once it expires.
+     */
+    public void scheduleAtFixedRateWithConcurrency(
+        Runnable command,
+        int maxConcurrentRuns,
+        long initialDelay,
+        long period,
+        TimeUnit unit,
+        int expiryInSeconds
+    ) {
+        final FleetSemaphore semaphore = new FleetSemaphore(locker, lockKey, maxConcurrentRuns);
+        final long startDelayNanos = jitteredDelayNanos(initialDelay, unit);
+        final long periodNanos = unit.toNanos(period);
+        final Runnable run = prepareRun(command, (measured, retry) -> runWithPermit(measured, semaphore, expiryInSeconds));
+
+        scheduledExecutorService.scheduleAtFixedRate(
+            measureFixedRateDrift(run, startDelayNanos, periodNanos, TimeUnit.NANOSECONDS),
+            startDelayNanos,
+            periodNanos,
+            TimeUnit.NANOSECONDS
+        );
+
+        logger.info("Scheduled cron job '{}' on up to {} nodes, with a start delay of {}, a fixed rate of {} and expiry in {} seconds",
+            cronJobDescription,
+            maxConcurrentRuns,
+            initialDelay + " " + unit.name(),
+            period + " " + unit.name(),
+            expiryInSeconds
+        );
+    }
+
+    /**
+     * Schedules a job whose work is split into partitions, which every node of the fleet processes in parallel
+     *
+     * Each partition has its own lock. On every run, a node goes through all partitions, starting at a random one,
+     * and processes the ones whose lock it acquires. Once a partition is done, its lock is kept until the end of the
+     * period, which marks it as done for the other nodes, so each partition is processed once per period by whichever
+     * node got to it first, and the job takes about partitionCount / fleet size partitions worth of time.
+     *
+     * While a partition is processed, its lock is renewed by the lease renewer, so another node takes the partition
+     * over within expiryInSeconds if the node processing it died, however long processing takes. If the lock can't be
+     * renewed, the thread processing the partition is interrupted. A partition which fails is released right away,
+     * for another node to retry in the same period. Partitions whose lock can't be kept until the end of the period,
+     * e.g. with a locker which doesn't support renewal, may be processed again once their lock expires. The period
+     * should be at least a few seconds, as the locks have a resolution of seconds.
+     *
+     * Partitioned jobs are run by all nodes, a job assigner is ignored.
+     */
+    public void scheduleAtFixedRatePartitioned(
+        PartitionedJob job,
+        int partitionCount,
+        long initialDelay,
+        long period,
+        TimeUnit unit,
+        int expiryInSeconds
+    ) {
+        if (partitionCount < 1) {
+            throw new IllegalArgumentException("A partitioned job needs at least one partition");
+        }
+
+        final LockHandle[] partitions = new LockHandle[partitionCount];
+        for (int partition = 0; partition < partitionCount; partition++) {
+            partitions[partition] = locker.handle(lockKey + "_PARTITION_" + partition);
+        }
+
+        final long startDelayNanos = jitteredDelayNanos(initialDelay, unit);
+        final long periodNanos = unit.toNanos(period);
+        final Runnable measured = measureRun(() -> runPartitions(job, partitions, unit.toMillis(period), expiryInSeconds));
+        final Runnable run = runExecutor != null ? dispatchToRunExecutor(measured) : measured;
+
+        scheduledExecutorService.scheduleAtFixedRate(
+            measureFixedRateDrift(run, startDelayNanos, periodNanos, TimeUnit.NANOSECONDS),
+            startDelayNanos,
+            periodNanos,
+            TimeUnit.NANOSECONDS
+        );
+
+        logger.info("Scheduled cron job '{}' with {} partitions, a start delay of {}, a fixed rate of {} and expiry in {} seconds",
+            cronJobDescription,
+            partitionCount,
+            initialDelay + " " + unit.name(),
+            period + " " + unit.name(),
+            expiryInSeconds
+        );
+    }
+
+    /**
+     * Schedules a job which processes its input incrementally, from the checkpoint committed by its previous run
+     *
+     * Each run acquires the lock like scheduleAtFixedRateWithLock, reading the checkpoint stored with the lock in the
+     * same request, and passes it to the job. The lock is acquired straight from the checkpoint locker, neither batched
+     * nor asynchronously, as the run needs the checkpoint before it can start. Commits of the job only succeed while
+     * the lock of its run is held, so a run which outlived its lock can't overwrite the progress of the run which took
+     * over. The lock expiry should therefore cover the longest run, or the job should commit often and stop as soon as
+     * a commit fails.
+     *
+     * The commits are fenced by the lock of the run, so checkpointed jobs always contend for the lock, a job assigner
+     * is ignored.
+     *
+     * @throws UnsupportedOperationException if the locker doesn't implement CheckpointLocker
+     */
+    public void scheduleAtFixedRateWithCheckpoint(
+        CheckpointedJob job,
+        long initialDelay,
+        long period,
+        TimeUnit unit,
+        int expiryInSeconds
+    ) {
+        if (checkpointLocker == null) {
+            throw new UnsupportedOperationException("The locker doesn't implement CheckpointLocker");
+        }
+
+        final long startDelayNanos = jitteredDelayNanos(initialDelay, unit);
+        final long periodNanos = unit.toNanos(period);
+        final Runnable run = retriedOnHandOff(retry -> {
+            final Runnable locked = runWithCheckpoint(job, expiryInSeconds, retry);
+
+            return runExecutor != null ? dispatchToRunExecutor(locked) : locked;
+        });
+
+        scheduledExecutorService.scheduleAtFixedRate(
+            measureFixedRateDrift(run, startDelayNanos, periodNanos, TimeUnit.NANOSECONDS),
+            startDelayNanos,
+            periodNanos,
+            TimeUnit.NANOSECONDS
+        );
+
+        logger.info("Scheduled checkpointed cron job '{}' with a start delay of {}, a fixed rate of {} and expiry in {} seconds",
+            cronJobDescription,
+            initialDelay + " " + unit.name(),
+            period + " " + unit.name(),
+            expiryInSeconds
+        );
+    }
+
+    public void stop() {
+        shutDownExecutors();
+        flushRunHistory();
+
+        logger.info("Shut down schedule of cron job '{}'", cronJobDescription);
+    }
+
+    /**
+     * Stops the schedule so the rest of the fleet can take over the job right away, e.g. when the node is scaled in
+     *
+     * No new runs are started, and the runs in flight get up to timeout to finish. All locks this node still holds,
+     * including the ones only held until they expire, are then released in one batch, as handed off if the locker
+     * supports it, so nodes watching them retry right away. Runs still going after the timeout are abandoned, like
+     * with stop(), but their locks are kept until they expire, so no other node starts the job while they may still
+     * be running. The run history is flushed last, so it includes the runs which finished while draining.
+     *
+     * @return true if all runs in flight finished within the timeout
+     */
+    public boolean stop(long timeout, TimeUnit unit) {
+        stopping = true;
+        shutDownExecutors();
+
+        final boolean drained = awaitRunsInFlight(unit.toMillis(timeout));
+        if (!drained) {
+            logger.warn("Cron job '{}' still has {} runs in flight, abandoning them", cronJobDescription, runsInFlight.get());
+        }
+
+        releaseHeldLocks();
+
+        if (handOffWatcher != null) {
+            handOffWatcher.unwatch(lockKey);
+        }
+
+        flushRunHistory();
+
+        logger.info("Shut down schedule of cron job '{}'", cronJobDescription);
+
+        return drained;
+    }
+
+    private void shutDownExecutors() {
+        scheduledExecutorService.shutdown();
+
+        if (runExecutor instanceof ExecutorService) {
+            ((ExecutorService) runExecutor).shutdown();
+        }
+    }
+
+    private void flushRunHistory() {
+        if (runHistory != null) {
+            runHistory.flush();
+        }
+    }
+
+    private boolean awaitRunsInFlight(long timeoutMillis) {
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+
+        synchronized (runsInFlight) {
+            try {
+                // a run is only over once its lock was released or marked as finished, after its command returned
+                while (runsInFlight.get() > 0 || !locksOfRunsInFlight.isEmpty()) {
+                    final long left = deadline - System.currentTimeMillis();
+                    if (left <= 0) {
+                        return false;
+                    }
+
+                    runsInFlight.wait(left);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Releases the held locks which didn't expire yet, except the locks of runs which are still going
+     */
+    private void releaseHeldLocks() {
+        final long now = clock.millis();
+        final List<String> lockKeys = new ArrayList<>();
+
+        for (Map.Entry<String, Long> held : heldLocks.entrySet()) {
+            if (held.getValue() > now && !locksOfRunsInFlight.contains(held.getKey())) {
+                lockKeys.add(held.getKey());
+            }
+        }
+        heldLocks.clear();
+
+        if (!locksOfRunsInFlight.isEmpty()) {
+            logger.warn("Cron job '{}' keeps locks {} of abandoned runs until they expire", cronJobDescription, locksOfRunsInFlight);
+        }
+
+        if (lockKeys.isEmpty()) {
+            return;
+        }
+
+        try {
+            if (handOffLocker != null) {
+                handOffLocker.handOff(lockKeys);
+            } else {
+                locker.unlockAll(lockKeys);
+            }
+
+            logger.info("Cron job '{}' released locks {}", cronJobDescription, lockKeys);
+        } catch (Exception ex) {
+            logger.error("Cron job '{}' failed to release locks {}: {}", cronJobDescription, lockKeys, ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Remembers a lock this node acquired, to release it on a graceful stop
+     *
+     * @param expiresAt the epoch millis the lock expires at, Long.MAX_VALUE for a lock kept alive until it's released
+     */
+    private void held(String heldLockKey, long expiresAt) {
+        heldLocks.put(heldLockKey, expiresAt);
+        locksOfRunsInFlight.add(heldLockKey);
+
+        if (handOffWatcher != null) {
+            handOffWatcher.unwatch(heldLockKey);
+        }
+    }
+
+    private void released(String releasedLockKey) {
+        heldLocks.remove(releasedLockKey);
+        locksOfRunsInFlight.remove(releasedLockKey);
+        notifyIfDrained();
+    }
+
+    /**
+     * Notes that the run of a lock which is kept until it expires is done, so a graceful stop may release it
+     */
+    private void finished(String finishedLockKey) {
+        locksOfRunsInFlight.remove(finishedLockKey);
+        notifyIfDrained();
+    }
+
+    /**
+     * Wakes up a graceful stop waiting for the runs in flight once they are all over
+     */
+    private void notifyIfDrained() {
+        if (runsInFlight.get() == 0 && locksOfRunsInFlight.isEmpty()) {
+            synchronized (runsInFlight) {
+                runsInFlight.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Retries the run as soon as the lock this node could not acquire is handed off
+     *
+     * @param retry the run which found the lock held
+     */
+    private void contended(Runnable retry) {
+        recordNotRun(RunOutcome.CONTENDED);
+
+        if (handOffWatcher != null && !stopping) {
+            handOffWatcher.watch(lockKey, retry);
+        }
+    }
+
+    private void skipped() {
+        metrics.recordSkippedRun(cronJobDescription);
+        recordNotRun(RunOutcome.SKIPPED);
+    }
+
+    private void recordNotRun(RunOutcome outcome) {
+        if (runHistory != null) {
+            final long now = System.currentTimeMillis();
+            runHistory.record(cronJobDescription, outcome, now, now, null);
+        }
+    }
+
+    private long expiresIn(int expiryInSeconds) {
+        return clock.millis() + expiryInSeconds * 1000L;
+    }
+
+    private void scheduleNextCronRun(Runnable run, CronExpression cron, ZonedDateTime previousFireTime) {
+        final ZonedDateTime now = ZonedDateTime.now(clock.withZone(previousFireTime.getZone()));
+        final ZonedDateTime nextFireTime = cron.nextAfter(now.isAfter(previousFireTime) ? now : previousFireTime);
+        final long dueMillis = nextFireTime.toInstant().toEpochMilli() + jitterMillis;
+        final long delayMillis = dueMillis - now.toInstant().toEpochMilli();
+
+        try {
+            scheduledExecutorService.schedule(
+                () -> {
+                    metrics.recordScheduleDrift(
+                        cronJobDescription,
+                        TimeUnit.MILLISECONDS.toNanos(clock.millis() - dueMillis)
+                    );
+
+                    try {
+                        run.run();
+                    } finally {
+                        scheduleNextCronRun(run, cron, nextFireTime);
+                    }
+                },
+                delayMillis,
+                TimeUnit.MILLISECONDS
+            );
+        } catch (RejectedExecutionException e) {
+            logger.info("Stopped cron schedule '{}' of cron job '{}'", cron, cronJobDescription);
+        }
+    }
+
+    /**
+     * Schedules the run with a fixed delay between the end of one run and the start of the next
+     *
+     * A non-blocking run returns before its command is done, so it isn't scheduled with a fixed delay on the scheduled
+     * executor. Each of its runs is scheduled as a one-shot task once the previous one is over instead.
+     */
+    private void scheduleWithFixedDelayAfterRun(Runnable run, long initialDelayNanos, long delayNanos) {
+        if (run instanceof NonBlockingRun) {
+            scheduleNextNonBlockingRun((NonBlockingRun) run, initialDelayNanos, delayNanos);
+            return;
+        }
+
+        scheduledExecutorService.scheduleWithFixedDelay(
+            measureFixedDelayDrift(run, initialDelayNanos, delayNanos, TimeUnit.NANOSECONDS),
+            initialDelayNanos,
+            delayNanos,
+            TimeUnit.NANOSECONDS
+        );
+    }
+
+    private void scheduleNextNonBlockingRun(NonBlockingRun run, long delayNanos, long breakNanos) {
+        final long dueNanos = System.nanoTime() + delayNanos;
+
+        try {
+            scheduledExecutorService.schedule(
+                () -> {
+                    // delayed one-shot tasks still run after a shutdown
+                    if (scheduledExecutorService.isShutdown()) {
+                        return;
+                    }
+
+                    metrics.recordScheduleDrift(cronJobDescription, System.nanoTime() - dueNanos);
+
+                    run.run(() -> scheduleNextNonBlockingRun(run, breakNanos, breakNanos));
+                },
+                delayNanos,
+                TimeUnit.NANOSECONDS
+            );
+        } catch (RejectedExecutionException e) {
+            logger.info("Stopped schedule of cron job '{}'", cronJobDescription);
+        }
+    }
+
+    private void scheduleNextSharedRun(Runnable command, long periodMillis, int expiryInSeconds, long delayMillis) {
+        final Executor claimExecutor = runExecutor != null ? runExecutor : scheduledExecutorService;
+        final Runnable attempt = () -> scheduleNextSharedRun(
+            command,
+            periodMillis,
+            expiryInSeconds,
+            runSharedPeriod(command, periodMillis, expiryInSeconds)
+        );
+
+        try {
+            scheduledExecutorService.schedule(
+                () -> {
+                    try {
+                        claimExecutor.execute(attempt);
+                    } catch (RejectedExecutionException e) {
+                        logger.warn("No capacity to run cron job '{}', skipping run", cronJobDescription);
+                        skipped();
+                        scheduleNextSharedRun(command, periodMillis, expiryInSeconds, periodMillis);
+                    }
+                },
+                delayMillis,
+                TimeUnit.MILLISECONDS
+            );
+        } catch (RejectedExecutionException e) {
+            logger.info("Stopped shared schedule of cron job '{}'", cronJobDescription);
+        }
+    }
+
+    private long jitteredDelayNanos(long initialDelay, TimeUnit unit) {
+        return unit.toNanos(initialDelay) + TimeUnit.MILLISECONDS.toNanos(jitterMillis);
+    }
+
+    /**
+     * Run the command if the period which is due could be claimed, catching, logging and then swallowing any
+     * exception that gets thrown
+     *
+     * @return how long to wait before looking at the shared schedule again, in milliseconds
+     */
+    private long runSharedPeriod(Runnable command, long periodMillis, int expiryInSeconds) {
+        final long dueAt;
+        try {
+            dueAt = sharedScheduleLocker.getNextDueAt(lockKey);
+        } catch (Exception ex) {
+            logger.error("Cron job '{}' failed to read its shared schedule: {}", cronJobDescription, ex.getMessage(), ex);
+
+            return periodMillis;
+        }
+
+        // nodes with a smaller jitter claim first, the others then see the new due time and don't even try
+        final long now = clock.millis();
+        if (dueAt + jitterMillis > now) {
+            return dueAt + jitterMillis - now;
+        }
+
+        // periods which passed without anyone claiming them are skipped
+        final long nextDueAt = dueAt > 0 ? dueAt + ((now - dueAt) / periodMillis + 1) * periodMillis : now + periodMillis;
+
+        final long start = System.nanoTime();
+        final LockOutcome outcome = sharedScheduleLocker.claimPeriod(lockKey, dueAt, nextDueAt, expiryInSeconds);
+        metrics.recordLockAcquire(lockKey, outcome, System.nanoTime() - start);
+
+        if (outcome != LockOutcome.ACQUIRED) {
+            logger.info("Cron job {} could not claim the period due at {}", cronJobDescription, dueAt);
+
+            if (outcome == LockOutcome.CONTENDED) {
+                recordNotRun(RunOutcome.CONTENDED);
+            }
+
+            // whoever claimed the period moved the due time to the same next period
+            return nextDueAt + jitterMillis - now;
+        }
+
+        if (dueAt > 0) {
+            metrics.recordScheduleDrift(cronJobDescription, TimeUnit.MILLISECONDS.toNanos(now - dueAt - jitterMillis));
+        }
+
+        logger.info("Started run of cron job '{}'", cronJobDescription);
+        held(lockKey, expiresIn(expiryInSeconds));
+
+        try {
+            command.run();
+
+            logger.info("Finished run of cron job '{}'", cronJobDescription);
+        } catch (Exception ex) {
+            logger.error("Cron job '{}' run failed with an unhandled exception: {}",
+                cronJobDescription,
+                ex.getMessage(),
+                ex
+            );
+        } finally {
+            lockHandle.unlock();
+            released(lockKey);
+        }
+
+        return Math.max(0L, nextDueAt + jitterMillis - clock.millis());
+    }
+
+    /**
+     * Process every partition which is neither done nor being processed by another node, catching, logging and then
+     * swallowing any exception that gets thrown
+     */
+    private void runPartitions(PartitionedJob job, LockHandle[] partitions, long periodMillis, int expiryInSeconds) {
+        // the done marks lapse a second early, so the next run of this node never mistakes them for the next period's
+        final long periodEnd = clock.millis() + periodMillis - 1000;
+        final int first = ThreadLocalRandom.current().nextInt(partitions.length);
+        int processed = 0;
+
+        logger.info("Started run of cron job '{}'", cronJobDescription);
+
+        for (int i = 0; i < partitions.length; i++) {
+            final int partition = (first + i) % partitions.length;
+            final int secondsLeft = (int) ((periodEnd - clock.millis()) / 1000);
+
+            if (secondsLeft < 1) {
+                logger.warn("Cron job '{}' ran out of its period, leaving the other partitions to the next run", cronJobDescription);
+                break;
+            }
+
+            if (runPartition(job, partition, partitions, expiryInSeconds, periodEnd)) {
+                processed++;
+            }
+        }
+
+        logger.info("Finished run of cron job '{}', processed {} of {} partitions", cronJobDescription, processed, partitions.length);
+    }
+
+    /**
+     * @return true if this node processed the partition
+     */
+    private boolean runPartition(PartitionedJob job, int partition, LockHandle[] partitions, int expiryInSeconds, long periodEnd) {
+        final LockHandle partitionLock = partitions[partition];
 
-    private final String cronJobDescription;
+        try {
+            if (!partitionLock.tryLock(expiryInSeconds)) {
+                logger.debug("Partition {} of cron job '{}' is done or being processed", partition, cronJobDescription);
+                return false;
+            }
 
-    CronJobScheduler(
-        Locker locker,
-        ScheduledExecutorService scheduledExecutorService,
-        String cronJobDescription
-    ) {
-        this.locker = locker;
-        this.scheduledExecutorService = scheduledExecutorService;
-        this.cronJobDescription = cronJobDescription;
+            held(partitionLock.getLockKey(), Long.MAX_VALUE);
+        } catch (Exception ex) {
+            logger.error("Cron job '{}' failed to acquire the lock of partition {}: {}",
+                cronJobDescription,
+                partition,
+                ex.getMessage(),
+                ex
+            );
+            return false;
+        }
+
+        final Thread runner = Thread.currentThread();
+        final LeaseRenewer.Lease lease = leaseRenewer.keepAlive(partitionLock.getLockKey(), expiryInSeconds, () -> {
+            logger.warn("Cron job '{}' lost the lock of partition {}, interrupting it", cronJobDescription, partition);
+            runner.interrupt();
+        });
+
+        try {
+            job.run(partition, partitions.length);
+        } catch (Exception ex) {
+            logger.error("Partition {} of cron job '{}' failed with an unhandled exception: {}",
+                partition,
+                cronJobDescription,
+                ex.getMessage(),
+                ex
+            );
+            lease.cancel();
+            released(partitionLock.getLockKey());
+
+            if (lease.isLost()) {
+                Thread.interrupted();
+            } else {
+                partitionLock.unlock();
+            }
+            return false;
+        }
+
+        lease.cancel();
+        // the done mark is not released on a graceful stop, the partition must not be processed again
+        released(partitionLock.getLockKey());
+
+        if (lease.isLost()) {
+            // don't leak the interrupt into the next partition, another node may have taken this one over
+            Thread.interrupted();
+            logger.warn("Could not mark partition {} of cron job '{}' as done, it may be processed again",
+                partition,
+                cronJobDescription
+            );
+            return true;
+        }
+
+        try {
+            // keeping the lock until the period ends marks the partition as done
+            final int secondsLeft = (int) ((periodEnd - clock.millis()) / 1000);
+            if (secondsLeft < 1) {
+                partitionLock.unlock();
+            } else if (!partitionLock.renew(secondsLeft)) {
+                logger.warn("Could not mark partition {} of cron job '{}' as done, it may be processed again",
+                    partition,
+                    cronJobDescription
+                );
+            }
+        } catch (Exception ex) {
+            logger.error("Cron job '{}' failed to mark partition {} as done: {}", cronJobDescription, partition, ex.getMessage(), ex);
+        }
+
+        return true;
     }
 
-    public void scheduleAtFixedRateWithLock(Runnable command, long initialDelay, long period, TimeUnit unit, int expiryInSeconds) {
-        scheduledExecutorService.scheduleAtFixedRate(runAndReleaseLockAfterTimeout(command, expiryInSeconds), initialDelay, period, unit);
+    /**
+     * Picks how a run is coordinated with the rest of the fleet, by the job assigner if there is one, by the lock
+     * otherwise, and where it's executed
+     *
+     * @param withLock wraps the command into a run guarded by the lock, given the retry of the run for when the lock
+     * is found held
+     */
+    private Runnable prepareRun(Runnable command, BiFunction<Runnable, Runnable, Runnable> withLock) {
+        final Runnable measuredCommand = measureRun(command);
 
-        logger.info("Scheduled cron job '{}' with a start delay of {}, a fixed rate of {} and expiry in {} seconds",
-                    cronJobDescription,
-                    initialDelay +  " " + unit.name(),
-                    period +  " " + unit.name(),
-                    expiryInSeconds
-        );
+        return retriedOnHandOff(retry -> {
+            final Runnable run = jobAssigner != null
+                ? runIfAssignedToThisNode(measuredCommand)
+                : withLock.apply(measuredCommand, retry);
+
+            // non-blocking runs hand the command over to the run executor themselves
+            return runExecutor != null && !(run instanceof NonBlockingRun) ? dispatchToRunExecutor(run) : run;
+        });
     }
 
-    public void scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
-        scheduledExecutorService.scheduleAtFixedRate(runAndReleaseLockAfterCommand(command), initialDelay, period, unit);
+    /**
+     * Builds a run which is passed its own retry, which starts the run again on the scheduled executor, so a
+     * hand-off watcher never runs a job on its polling thread
+     */
+    private Runnable retriedOnHandOff(Function<Runnable, Runnable> withRetry) {
+        final AtomicReference<Runnable> run = new AtomicReference<>();
 
-        logger.info("Scheduled cron job '{}' with a start delay of {} and a fixed rate of {}",
-            cronJobDescription,
-            initialDelay +  " " + unit.name(),
-            period +  " " + unit.name()
-        );
+        run.set(withRetry.apply(() -> {
+            try {
+                scheduledExecutorService.execute(run.get());
+            } catch (RejectedExecutionException e) {
+                logger.info("Stopped schedule of cron job '{}', not retrying", cronJobDescription);
+            }
+        }));
+
+        return run.get();
     }
 
-    public void scheduleWithFixedDelay(final Runnable command, final Long initialDelay, final Integer breakBetweenRunsInSeconds, final TimeUnit unit) {
-        scheduledExecutorService.scheduleWithFixedDelay(runAndReleaseLockAfterCommand(command), initialDelay, breakBetweenRunsInSeconds, unit);
+    /**
+     * Records the duration of every run of the command and whether it failed, to the metrics and the run history,
+     * rethrowing any exception for the run wrappers to log
+     */
+    private Runnable measureRun(Runnable command) {
+        return () -> {
+            final long startedAt = System.currentTimeMillis();
+            final long start = System.nanoTime();
+            Throwable failure = null;
+            runsInFlight.incrementAndGet();
 
-        logger.info("Scheduled cron job '{}' with a start delay of {} and a delay before next run of {}",
-            cronJobDescription,
-            initialDelay +  " " + unit.name(),
-            breakBetweenRunsInSeconds +  " " + unit.name()
-        );
+            try {
+                command.run();
+            } catch (Throwable t) {
+                failure = t;
+                throw t;
+            } finally {
+                metrics.recordRun(cronJobDescription, System.nanoTime() - start, failure != null);
+
+                if (runHistory != null) {
+                    runHistory.record(
+                        cronJobDescription,
+                        failure != null ? RunOutcome.FAILED : RunOutcome.SUCCEEDED,
+                        startedAt,
+                        System.currentTimeMillis(),
+                        failure
+                    );
+                }
+
+                runsInFlight.decrementAndGet();
+                notifyIfDrained();
+            }
+        };
     }
 
-    public void stop() {
-        scheduledExecutorService.shutdown();
+    /**
+     * Records how late each run starts compared to its due time, initialDelay plus a multiple of the period after
+     * scheduling
+     */
+    private Runnable measureFixedRateDrift(Runnable run, long initialDelay, long period, TimeUnit unit) {
+        final long periodNanos = unit.toNanos(period);
+        final AtomicLong dueNanos = new AtomicLong(System.nanoTime() + unit.toNanos(initialDelay));
 
-        logger.info("Shut down schedule of cron job '{}'", cronJobDescription);
+        return () -> {
+            metrics.recordScheduleDrift(cronJobDescription, System.nanoTime() - dueNanos.getAndAdd(periodNanos));
+
+            run.run();
+        };
+    }
+
+    /**
+     * Records how late each run starts compared to its due time, initialDelay after scheduling for the first run and
+     * the delay after the previous run returned for all others
+     */
+    private Runnable measureFixedDelayDrift(Runnable run, long initialDelay, long delay, TimeUnit unit) {
+        final long delayNanos = unit.toNanos(delay);
+        final AtomicLong dueNanos = new AtomicLong(System.nanoTime() + unit.toNanos(initialDelay));
+
+        return () -> {
+            metrics.recordScheduleDrift(cronJobDescription, System.nanoTime() - dueNanos.get());
+
+            try {
+                run.run();
+            } finally {
+                dueNanos.set(System.nanoTime() + delayNanos);
+            }
+        };
+    }
+
+    /**
+     * Hands the run over to the run executor, so a slow lock call or command never delays the dispatch of other jobs
+     *
+     * Only one run of the scheduled command is in flight at a time, a run which becomes due while the previous one
+     * is still going is skipped, so a single slow job can't take up the whole run executor.
+     */
+    private Runnable dispatchToRunExecutor(Runnable run) {
+        final AtomicBoolean inFlight = new AtomicBoolean();
+
+        return new NonBlockingRun(whenDone -> {
+            if (!inFlight.compareAndSet(false, true)) {
+                logger.info("Cron job '{}' is still running, skipping run", cronJobDescription);
+                skipped();
+                whenDone.run();
+                return;
+            }
+
+            try {
+                runExecutor.execute(() -> {
+                    try {
+                        if (stopping) {
+                            logger.info("Cron job '{}' is stopping, skipping run", cronJobDescription);
+                            return;
+                        }
+
+                        run.run();
+                    } finally {
+                        inFlight.set(false);
+                        whenDone.run();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                inFlight.set(false);
+                logger.warn("No capacity to run cron job '{}', skipping run", cronJobDescription);
+                skipped();
+                whenDone.run();
+            }
+        });
+    }
+
+    /**
+     * Run the command, catching, logging and then swallowing any exception that gets thrown
+     *
+     * The job assigner decides whether this node runs the job, no lock is involved. Nodes the job is not assigned
+     * to skip the run, but keep the schedule so they can take over as soon as the job is assigned to them.
+     */
+    private Runnable runIfAssignedToThisNode(Runnable command) {
+        return () -> {
+            if (!jobAssigner.isAssignedToThisNode(cronJobDescription)) {
+                logger.debug("Cron job '{}' is not assigned to this node, skipping run", cronJobDescription);
+                return;
+            }
+
+            logger.info("Started run of cron job '{}'", cronJobDescription);
+
+            try {
+                command.run();
+
+                logger.info("Finished run of cron job '{}'", cronJobDescription);
+            } catch (Exception ex) {
+                logger.error("Cron job '{}' run failed with an unhandled exception: {}",
+                    cronJobDescription,
+                    ex.getMessage(),
+                    ex
+                );
+            }
+        };
     }
 
     /**
@@ -82,20 +1102,37 @@ public class CronJobScheduler {
      *
      * The lock is released after the command is done
      */
-    private Runnable runAndReleaseLockAfterCommand(Runnable command) {
+    private Runnable runAndReleaseLockAfterCommand(Runnable command, Runnable retry) {
+        if (lockBatcher != null) {
+            return runWithBatchedLock(command, DEFAULT_CRONJOB_EXPIRY, true, retry);
+        }
+
+        if (asyncLocker != null) {
+            return runWithAsyncLock(command, DEFAULT_CRONJOB_EXPIRY, true, retry);
+        }
+
         return () -> {
             logger.info("Started run of cron job '{}'", cronJobDescription);
-            final String lockKey = "LOCK_" + cronJobDescription;
 
             try {
                 // DEFAULT_CRONJOB_EXPIRY is just a safety net if the lock still hasn't been released.
-                if (locker.tryLock(lockKey, DEFAULT_CRONJOB_EXPIRY)) {
-                    command.run();
-
-                    logger.info("Finished run of cron job '{}'", cronJobDescription);
-                } else {
+                if (!lockHandle.tryLock(DEFAULT_CRONJOB_EXPIRY)) {
                     logger.info("Cron job {} already running cannot acquire lock", cronJobDescription);
+                    contended(retry);
+                    return;
                 }
+
+                held(lockKey, expiresIn(DEFAULT_CRONJOB_EXPIRY));
+            } catch (Exception ex) {
+                logger.error("Cron job '{}' failed to acquire its lock: {}", cronJobDescription, ex.getMessage(), ex);
+                return;
+            }
+
+            // only the lock this run acquired is released, never the one of the node running the job
+            try {
+                command.run();
+
+                logger.info("Finished run of cron job '{}'", cronJobDescription);
             } catch (Exception ex) {
                 logger.error("Cron job '{}' run failed with an unhandled exception: {}",
                     cronJobDescription,
@@ -103,7 +1140,8 @@ public class CronJobScheduler {
                     ex
                 );
             } finally {
-                locker.unlock(lockKey);
+                lockHandle.unlock();
+                released(lockKey);
             }
         };
     }
@@ -115,18 +1153,71 @@ public class CronJobScheduler {
      *
      * The lock is released after the expiryInSeconds finishes
      */
-    private Runnable runAndReleaseLockAfterTimeout(Runnable command, int expiryInSeconds) {
+    private Runnable runAndReleaseLockAfterTimeout(Runnable command, int expiryInSeconds, Runnable retry) {
+        if (lockBatcher != null) {
+            return runWithBatchedLock(command, expiryInSeconds, false, retry);
+        }
+
+        if (asyncLocker != null) {
+            return runWithAsyncLock(command, expiryInSeconds, false, retry);
+        }
+
+        return () -> {
+            logger.info("Started run of cron job '{}'", cronJobDescription);
+
+            try {
+                if (lockHandle.tryLock(expiryInSeconds)) {
+                    held(lockKey, expiresIn(expiryInSeconds));
+
+                    try {
+                        command.run();
+                    } finally {
+                        finished(lockKey);
+                    }
+
+                    logger.info("Finished run of cron job '{}'", cronJobDescription);
+                } else {
+                    logger.info("Cron job {} already running cannot acquire lock", cronJobDescription);
+                    contended(retry);
+                }
+            } catch (Exception ex) {
+                logger.error("Cron job '{}' run failed with an unhandled exception: {}",
+                     cronJobDescription,
+                     ex.getMessage(),
+                     ex
+                );
+            }
+        };
+    }
+
+    /**
+     * Run the job from the checkpoint read when acquiring the lock, catching, logging and then swallowing any
+     * exception that gets thrown
+     *
+     * This guarantees only one instance of the job will be run at a given time
+     *
+     * The lock is released after the expiryInSeconds finishes
+     */
+    private Runnable runWithCheckpoint(CheckpointedJob job, int expiryInSeconds, Runnable retry) {
         return () -> {
             logger.info("Started run of cron job '{}'", cronJobDescription);
-            final String lockKey = "LOCK_" + cronJobDescription;
 
             try {
-                if (locker.tryLock(lockKey, expiryInSeconds)) {
-                    command.run();
+                final Checkpoint checkpoint = checkpointLocker.tryLockWithCheckpoint(lockKey, expiryInSeconds);
+
+                if (checkpoint != null) {
+                    held(lockKey, expiresIn(expiryInSeconds));
+
+                    try {
+                        measureRun(() -> job.run(checkpoint)).run();
+                    } finally {
+                        finished(lockKey);
+                    }
 
                     logger.info("Finished run of cron job '{}'", cronJobDescription);
                 } else {
                     logger.info("Cron job {} already running cannot acquire lock", cronJobDescription);
+                    contended(retry);
                 }
             } catch (Exception ex) {
                 logger.error("Cron job '{}' run failed with an unhandled exception: {}",
@@ -137,4 +1228,281 @@ public class CronJobScheduler {
             }
         };
     }
+
+    /**
+     * Run the command, catching, logging and then swallowing any exception that gets thrown
+     *
+     * This guarantees at most as many instances of the job as the semaphore has permits will be run at a given time
+     *
+     * The permit is released after the command is done
+     */
+    private Runnable runWithPermit(Runnable command, FleetSemaphore semaphore, int expiryInSeconds) {
+        return () -> {
+            final LockHandle permit;
+            try {
+                permit = semaphore.tryAcquire(expiryInSeconds);
+            } catch (Exception ex) {
+                logger.error("Cron job '{}' failed to acquire a permit: {}", cronJobDescription, ex.getMessage(), ex);
+                return;
+            }
+
+            if (permit == null) {
+                logger.info("Cron job {} already running on {} nodes", cronJobDescription, semaphore.getPermits());
+                recordNotRun(RunOutcome.CONTENDED);
+                return;
+            }
+
+            logger.info("Started run of cron job '{}'", cronJobDescription);
+            held(permit.getLockKey(), expiresIn(expiryInSeconds));
+
+            try {
+                command.run();
+
+                logger.info("Finished run of cron job '{}'", cronJobDescription);
+            } catch (Exception ex) {
+                logger.error("Cron job '{}' run failed with an unhandled exception: {}",
+                    cronJobDescription,
+                    ex.getMessage(),
+                    ex
+                );
+            } finally {
+                permit.unlock();
+                released(permit.getLockKey());
+            }
+        };
+    }
+
+    /**
+     * Run the command, catching, logging and then swallowing any exception that gets thrown
+     *
+     * This guarantees only one instance of the job will be run at a given time, as long as the lease keeps
+     * being renewed. The running command is interrupted if a renewal fails.
+     *
+     * The lock is released after the command is done, unless the lease was lost in the meantime.
+     */
+    private Runnable runWithRenewedLease(Runnable command, int leaseInSeconds, Runnable retry) {
+        return () -> {
+            logger.info("Started run of cron job '{}'", cronJobDescription);
+
+            try {
+                if (!lockHandle.tryLock(leaseInSeconds)) {
+                    logger.info("Cron job {} already running cannot acquire lock", cronJobDescription);
+                    contended(retry);
+                    return;
+                }
+
+                held(lockKey, Long.MAX_VALUE);
+            } catch (Exception ex) {
+                logger.error("Cron job '{}' failed to acquire its lock: {}", cronJobDescription, ex.getMessage(), ex);
+                return;
+            }
+
+            final Thread runner = Thread.currentThread();
+            final LeaseRenewer.Lease lease = leaseRenewer.keepAlive(lockKey, leaseInSeconds, () -> {
+                logger.warn("Cron job '{}' lost its lease, interrupting the run", cronJobDescription);
+                runner.interrupt();
+            });
+
+            try {
+                command.run();
+
+                logger.info("Finished run of cron job '{}'", cronJobDescription);
+            } catch (Exception ex) {
+                logger.error("Cron job '{}' run failed with an unhandled exception: {}",
+                    cronJobDescription,
+                    ex.getMessage(),
+                    ex
+                );
+            } finally {
+                lease.cancel();
+
+                released(lockKey);
+
+                if (lease.isLost()) {
+                    // don't leak the interrupt into the next job sharing this executor thread
+                    Thread.interrupted();
+                } else {
+                    lockHandle.unlock();
+                }
+            }
+        };
+    }
+
+    /**
+     * Run the command, catching, logging and then swallowing any exception that gets thrown
+     *
+     * The lock is acquired together with the locks of other jobs due at the same time, the command is run
+     * once the batch was acquired. The lock is released after the command only if releaseAfterCommand is set,
+     * otherwise it is held until it expires.
+     *
+     * The scheduled run returns as soon as the lock is queued, the command is run on the run executor, or the
+     * scheduled executor if there is none, so a slow job never delays the other jobs of its batch. Like with a
+     * separate run executor, only one run is in flight at a time and runs due in the meantime are skipped.
+     */
+    private Runnable runWithBatchedLock(Runnable command, int expiryInSeconds, boolean releaseAfterCommand, Runnable retry) {
+        final Executor commandExecutor = runExecutor != null ? runExecutor : scheduledExecutorService;
+        final AtomicBoolean inFlight = new AtomicBoolean();
+
+        return new NonBlockingRun(whenDone -> {
+            if (!inFlight.compareAndSet(false, true)) {
+                logger.info("Cron job '{}' is still running, skipping run", cronJobDescription);
+                skipped();
+                whenDone.run();
+                return;
+            }
+
+            lockBatcher.acquire(lockKey, expiryInSeconds).whenComplete((acquired, ex) -> {
+                if (ex != null) {
+                    inFlight.set(false);
+                    logger.error("Cron job '{}' run could not be started: {}", cronJobDescription, ex.getMessage(), ex);
+                    whenDone.run();
+                    return;
+                }
+
+                if (!acquired) {
+                    inFlight.set(false);
+                    logger.info("Cron job {} already running cannot acquire lock", cronJobDescription);
+                    contended(retry);
+                    whenDone.run();
+                    return;
+                }
+
+                try {
+                    commandExecutor.execute(() -> {
+                        try {
+                            runWithAcquiredLock(command, expiryInSeconds, releaseAfterCommand);
+                        } finally {
+                            inFlight.set(false);
+                            whenDone.run();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    inFlight.set(false);
+                    logger.warn("No capacity to run cron job '{}', skipping run", cronJobDescription);
+                    skipped();
+                    lockHandle.unlock();
+                    whenDone.run();
+                }
+            });
+        });
+    }
+
+    private void runWithAcquiredLock(Runnable command, int expiryInSeconds, boolean releaseAfterCommand) {
+        logger.info("Started run of cron job '{}'", cronJobDescription);
+        held(lockKey, expiresIn(expiryInSeconds));
+
+        try {
+            command.run();
+
+            logger.info("Finished run of cron job '{}'", cronJobDescription);
+        } catch (Exception ex) {
+            logger.error("Cron job '{}' run failed with an unhandled exception: {}",
+                cronJobDescription,
+                ex.getMessage(),
+                ex
+            );
+        } finally {
+            if (releaseAfterCommand) {
+                lockHandle.unlock();
+                released(lockKey);
+            } else {
+                finished(lockKey);
+            }
+        }
+    }
+
+    /**
+     * Run the command, catching, logging and then swallowing any exception that gets thrown
+     *
+     * The lock is acquired and released with the async locker, so no thread waits for the lock calls. The command
+     * is run on the run executor, or the scheduled executor if there is none, once the lock was acquired. Like with
+     * a separate run executor, only one run is in flight at a time and runs due in the meantime are skipped.
+     *
+     * The lock is released after the command only if releaseAfterCommand is set, otherwise it is held until it
+     * expires.
+     */
+    private Runnable runWithAsyncLock(Runnable command, int expiryInSeconds, boolean releaseAfterCommand, Runnable retry) {
+        final Executor commandExecutor = runExecutor != null ? runExecutor : scheduledExecutorService;
+        final AtomicBoolean inFlight = new AtomicBoolean();
+
+        return new NonBlockingRun(whenDone -> {
+            if (!inFlight.compareAndSet(false, true)) {
+                logger.info("Cron job '{}' is still running, skipping run", cronJobDescription);
+                skipped();
+                whenDone.run();
+                return;
+            }
+
+            asyncLocker.tryLockAsync(lockKey, expiryInSeconds)
+                .thenComposeAsync(
+                    acquired -> {
+                        if (!acquired) {
+                            logger.info("Cron job {} already running cannot acquire lock", cronJobDescription);
+                            contended(retry);
+
+                            return CompletableFuture.<Void>completedFuture(null);
+                        }
+
+                        logger.info("Started run of cron job '{}'", cronJobDescription);
+                        held(lockKey, expiresIn(expiryInSeconds));
+
+                        try {
+                            command.run();
+
+                            logger.info("Finished run of cron job '{}'", cronJobDescription);
+                        } catch (Exception ex) {
+                            logger.error("Cron job '{}' run failed with an unhandled exception: {}",
+                                cronJobDescription,
+                                ex.getMessage(),
+                                ex
+                            );
+                        }
+
+                        if (!releaseAfterCommand) {
+                            finished(lockKey);
+
+                            return CompletableFuture.<Void>completedFuture(null);
+                        }
+
+                        released(lockKey);
+
+                        return asyncLocker.unlockAsync(lockKey);
+                    },
+                    commandExecutor
+                )
+                .whenComplete((result, ex) -> {
+                    inFlight.set(false);
+
+                    if (ex != null) {
+                        logger.error("Cron job '{}' run could not be started: {}", cronJobDescription, ex.getMessage(), ex);
+                    }
+
+                    whenDone.run();
+                });
+        });
+    }
+
+    /**
+     * A run which doesn't block the thread it's started on, and tells when it is over
+     */
+    private static final class NonBlockingRun implements Runnable {
+
+        private final Consumer<Runnable> run;
+
+        private NonBlockingRun(Consumer<Runnable> run) {
+            this.run = run;
+        }
+
+        @Override
+        public void run() {
+            run(() -> { });
+        }
+
+        /**
+         * @param whenDone called once the run is over, also if it was skipped or its lock couldn't be acquired
+         */
+        private void run(Runnable whenDone) {
+            run.accept(whenDone);
+        }
+    }
 }
@@ -1,7 +1,14 @@
 package com.foodpanda.distributedcron;
 
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class CronJobSchedulerFactory {
 
@@ -9,6 +16,33 @@ public class CronJobSchedulerFactory {
 
     private final ScheduledExecutorService executorService;
 
+    private final LeaseRenewer leaseRenewer;
+
+    private long lockBatchWindowMillis = -1;
+
+    private LockBatcher lockBatcher;
+
+    private JobAssigner jobAssigner;
+
+    private Executor runExecutor;
+
+    private AsyncLocker asyncLocker;
+
+    private CronJobMetrics metrics = CronJobMetrics.NONE;
+
+    private long maxJitterMillis = 0;
+
+    private String jitterNodeId = NodeId.local();
+
+    private RunHistory runHistory;
+
+    private HandOffWatcher handOffWatcher;
+
+    private Clock clock = Clock.systemUTC();
+
+    /**
+     * Creates a factory whose schedulers share a single thread, which both dispatches and executes their runs
+     */
     public CronJobSchedulerFactory(final Locker locker) {
         this(
             locker,
@@ -16,16 +50,278 @@ public class CronJobSchedulerFactory {
         );
     }
 
+    /**
+     * Creates a factory whose schedulers both dispatch and execute their runs on the passed executor
+     */
     public CronJobSchedulerFactory(final Locker locker, final ScheduledExecutorService executorService) {
+        this(
+            locker,
+            executorService,
+            new LeaseRenewer(locker)
+        );
+    }
+
+    public CronJobSchedulerFactory(
+        final Locker locker,
+        final ScheduledExecutorService executorService,
+        final LeaseRenewer leaseRenewer
+    ) {
         this.locker = locker;
         this.executorService = executorService;
+        this.leaseRenewer = leaseRenewer;
+    }
+
+    /**
+     * Copies the configuration of the passed factory, except for its lock batcher, which the copy creates anew
+     */
+    private CronJobSchedulerFactory(final CronJobSchedulerFactory factory) {
+        this(factory.locker, factory.executorService, factory.leaseRenewer);
+
+        this.lockBatchWindowMillis = factory.lockBatchWindowMillis;
+        this.jobAssigner = factory.jobAssigner;
+        this.runExecutor = factory.runExecutor;
+        this.asyncLocker = factory.asyncLocker;
+        this.metrics = factory.metrics;
+        this.maxJitterMillis = factory.maxJitterMillis;
+        this.jitterNodeId = factory.jitterNodeId;
+        this.runHistory = factory.runHistory;
+        this.handOffWatcher = factory.handOffWatcher;
+        this.clock = factory.clock;
+    }
+
+    /**
+     * Creates a factory whose schedulers acquire their locks in batches. Runs of all these schedulers which
+     * become due within the passed window share one Locker.tryLockAll call instead of each calling tryLock.
+     *
+     * The command of a batched run is started after the window closes, so a run can start up to windowMillis late.
+     * A run due while the previous run of the same job is still going is skipped. Fixed delay schedules count their
+     * delay from the end of the command.
+     *
+     * @param windowMillis how long to collect due runs before acquiring their locks
+     * @return a copy of this factory
+     */
+    public CronJobSchedulerFactory withBatchedLocking(final long windowMillis) {
+        final CronJobSchedulerFactory factory = new CronJobSchedulerFactory(this);
+        factory.lockBatchWindowMillis = windowMillis;
+
+        return factory;
+    }
+
+    /**
+     * Creates a factory whose schedulers leave the choice of the node running their jobs to the job assigner,
+     * instead of contending for a lock on every run, e.g. to run all jobs on the leader of a LeaderElection.
+     *
+     * @param jobAssigner decides which node runs a job
+     * @return a copy of this factory
+     */
+    public CronJobSchedulerFactory withJobAssigner(final JobAssigner jobAssigner) {
+        final CronJobSchedulerFactory factory = new CronJobSchedulerFactory(this);
+        factory.jobAssigner = jobAssigner;
+
+        return factory;
+    }
+
+    /**
+     * Creates a factory whose schedulers acquire their locks and run their commands on the passed pool, the
+     * scheduled executor is only used to dispatch the due runs to it. Each scheduled job has at most one run in
+     * flight, a run due while the previous one is still going, or rejected by the pool, is skipped. Fixed delay
+     * schedules still count their delay from the end of the command, their next run is only scheduled then.
+     *
+     * @param runPool executes the runs, it is shut down when a scheduler is stopped
+     * @return a copy of this factory
+     */
+    public CronJobSchedulerFactory withExecutionPool(final ExecutorService runPool) {
+        final CronJobSchedulerFactory factory = new CronJobSchedulerFactory(this);
+        factory.runExecutor = runPool;
+
+        return factory;
+    }
+
+    /**
+     * Creates a factory whose schedulers start a new virtual thread for every run, so runs blocked on lock calls
+     * or I/O don't hold on to any platform thread. Requires Java 21 or newer.
+     *
+     * @return a copy of this factory
+     * @throws UnsupportedOperationException if the JVM doesn't support virtual threads
+     */
+    public CronJobSchedulerFactory withVirtualThreadPerRun() {
+        final ExecutorService virtualThreadPerRun;
+
+        try {
+            // looked up reflectively so the library still builds for and runs on Java 8
+            virtualThreadPerRun = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or newer", e);
+        }
+
+        return withExecutionPool(virtualThreadPerRun);
+    }
+
+    /**
+     * Creates a factory whose schedulers acquire and release the locks of their runs with the async locker, so
+     * no thread is blocked while waiting for the lock store. Lease and batched runs keep using the locker.
+     *
+     * The async locker must use the same lock store as the locker, e.g. DynamoDbAsyncLocker on the table of a
+     * DynamoDbLocker.
+     *
+     * @param asyncLocker acquires and releases the locks
+     * @return a copy of this factory
+     */
+    public CronJobSchedulerFactory withAsyncLocker(final AsyncLocker asyncLocker) {
+        final CronJobSchedulerFactory factory = new CronJobSchedulerFactory(this);
+        factory.asyncLocker = asyncLocker;
+
+        return factory;
+    }
+
+    /**
+     * Creates a factory whose schedulers report the latency and outcome of their lock calls, the duration of their
+     * runs, skipped runs and how late their runs start to the passed metrics
+     *
+     * Lock calls made by the async locker and by lease renewals are not measured.
+     *
+     * @param metrics receives the measurements, e.g. an InMemoryCronJobMetrics
+     * @return a copy of this factory
+     */
+    public CronJobSchedulerFactory withMetrics(final CronJobMetrics metrics) {
+        final CronJobSchedulerFactory factory = new CronJobSchedulerFactory(this);
+        factory.metrics = metrics;
+
+        return factory;
+    }
+
+    /**
+     * Creates a factory whose schedulers start their runs up to maxJitter later than scheduled, so the nodes of
+     * the fleet don't all call the lock store in the same millisecond
+     *
+     * The jitter is derived from this node and the job, so it is different for every node and job, but stays the
+     * same for all runs of a job on a node. Applies to the start of fixed rate and fixed delay schedules, the fire
+     * times of cron schedules and the claims of shared schedules.
+     *
+     * This node is identified by NodeId.local(), which includes the pid, so the jitter changes when the process is
+     * restarted. Pass a node id which survives restarts to keep it, see withJitter(long, TimeUnit, String).
+     *
+     * @param maxJitter the maximum delay added to the runs of a job
+     * @param unit the unit of maxJitter
+     * @return a copy of this factory
+     */
+    public CronJobSchedulerFactory withJitter(final long maxJitter, final TimeUnit unit) {
+        return withJitter(maxJitter, unit, NodeId.local());
+    }
+
+    /**
+     * Creates a factory whose schedulers start their runs up to maxJitter later than scheduled, like
+     * withJitter(long, TimeUnit), deriving the jitter from the passed node id
+     *
+     * @param maxJitter the maximum delay added to the runs of a job
+     * @param unit the unit of maxJitter
+     * @param nodeId identifies this node, e.g. its host name, the jitter stays the same as long as it does
+     * @return a copy of this factory
+     */
+    public CronJobSchedulerFactory withJitter(final long maxJitter, final TimeUnit unit, final String nodeId) {
+        final CronJobSchedulerFactory factory = new CronJobSchedulerFactory(this);
+        factory.maxJitterMillis = unit.toMillis(maxJitter);
+        factory.jitterNodeId = nodeId;
+
+        return factory;
+    }
+
+    /**
+     * Creates a factory whose schedulers record every run of their jobs to the passed run history, which is
+     * flushed when a scheduler is stopped
+     *
+     * @param runHistory keeps the runs, e.g. a started DynamoDbRunHistory
+     * @return a copy of this factory
+     */
+    public CronJobSchedulerFactory withRunHistory(final RunHistory runHistory) {
+        final CronJobSchedulerFactory factory = new CronJobSchedulerFactory(this);
+        factory.runHistory = runHistory;
+
+        return factory;
+    }
+
+    /**
+     * Creates a factory whose schedulers retry a run as soon as the lock they could not acquire is handed off by a
+     * node stopping gracefully, instead of on their next run
+     *
+     * The watcher polls the hand-off markers of the locks in the background, starting right away.
+     *
+     * @param pollInterval how often the hand-off markers are read
+     * @param unit the unit of pollInterval
+     * @return a copy of this factory
+     * @throws UnsupportedOperationException if the locker doesn't implement HandOffLocker
+     */
+    public CronJobSchedulerFactory withHandOffWatching(final long pollInterval, final TimeUnit unit) {
+        final HandOffLocker handOffLocker = locker.unwrap(HandOffLocker.class);
+        if (handOffLocker == null) {
+            throw new UnsupportedOperationException("The locker doesn't implement HandOffLocker");
+        }
+
+        final CronJobSchedulerFactory factory = new CronJobSchedulerFactory(this);
+        factory.handOffWatcher = new HandOffWatcher(handOffLocker, unit.toMillis(pollInterval));
+        factory.handOffWatcher.start();
+
+        return factory;
+    }
+
+    /**
+     * Creates a factory whose schedulers read the time of the lock store from the passed clock, to compare it against
+     * the expiries and due times stored with the locks
+     *
+     * @param clock the clock of the locker, the system clock in UTC by default
+     * @return a copy of this factory
+     */
+    public CronJobSchedulerFactory withClock(final Clock clock) {
+        final CronJobSchedulerFactory factory = new CronJobSchedulerFactory(this);
+        factory.clock = clock;
+
+        return factory;
     }
 
     public CronJobScheduler createScheduler(final String schedulerDescription) {
-        return new CronJobScheduler(
-            locker,
-            executorService,
-            schedulerDescription
-        );
+        final SchedulerSettings settings = new SchedulerSettings(getSchedulerLocker(), executorService);
+        settings.clock = clock;
+        settings.leaseRenewer = leaseRenewer;
+        settings.lockBatcher = getLockBatcher();
+        settings.jobAssigner = jobAssigner;
+        settings.runExecutor = runExecutor;
+        settings.asyncLocker = asyncLocker;
+        settings.metrics = metrics;
+        settings.maxJitterMillis = maxJitterMillis;
+        settings.jitterNodeId = jitterNodeId;
+        settings.runHistory = runHistory;
+        settings.handOffWatcher = handOffWatcher;
+
+        return new CronJobScheduler(schedulerDescription, settings);
+    }
+
+    /**
+     * @return a delay between 0 and maxJitterMillis, always the same for the same node and job
+     */
+    static long jitterMillis(final String nodeId, final String jobDescription, final long maxJitterMillis) {
+        if (maxJitterMillis <= 0) {
+            return 0;
+        }
+
+        final long hash = Hashing.murmur3_128().hashString(nodeId + "/" + jobDescription, StandardCharsets.UTF_8).asLong();
+
+        return Math.floorMod(hash, maxJitterMillis + 1);
+    }
+
+    private Locker getSchedulerLocker() {
+        return metrics != CronJobMetrics.NONE ? new MeteredLocker(locker, metrics) : locker;
+    }
+
+    private LockBatcher getLockBatcher() {
+        if (lockBatchWindowMillis >= 0 && lockBatcher == null) {
+            lockBatcher = new LockBatcher(
+                getSchedulerLocker(),
+                executorService,
+                runExecutor != null ? runExecutor : executorService,
+                lockBatchWindowMillis
+            );
+        }
+
+        return lockBatcher;
     }
 }
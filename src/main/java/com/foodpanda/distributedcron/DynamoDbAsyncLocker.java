@@ -0,0 +1,192 @@
+package com.foodpanda.distributedcron;
+
+import com.google.common.collect.ImmutableMap;
+
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.OffsetDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import static com.foodpanda.distributedcron.DynamoDbLocker.ACQUIRE_CONDITION;
+import static com.foodpanda.distributedcron.DynamoDbLocker.ACQUIRE_NAMES;
+import static com.foodpanda.distributedcron.DynamoDbLocker.ACQUIRE_UPDATE;
+import static com.foodpanda.distributedcron.DynamoDbLocker.RELEASE_CONDITION;
+import static com.foodpanda.distributedcron.DynamoDbLocker.RELEASE_NAMES;
+import static com.foodpanda.distributedcron.DynamoDbLocker.RELEASE_UPDATE;
+import static com.foodpanda.distributedcron.DynamoDbLocker.TABLE_KEY;
+import static com.foodpanda.distributedcron.DynamoDbLocker.getEnvironmentSpecificLockKey;
+
+/**
+ * AsyncLocker on the asynchronous DynamoDB client, storing the locks exactly like DynamoDbLocker does
+ *
+ * Both lockers can be used on the same table at the same time. The calling thread only sends the request, the
+ * futures are completed by the client's callback, so a few threads can drive many concurrent lock calls.
+ */
+public class DynamoDbAsyncLocker implements AsyncLocker {
+
+    private static final Logger logger = LoggerFactory.getLogger(DynamoDbAsyncLocker.class);
+
+    private final AmazonDynamoDBAsync dynamoDb;
+
+    private final String tableName;
+
+    private final Clock clock;
+
+    private final String ownerId;
+
+    public DynamoDbAsyncLocker(final AmazonDynamoDBAsync dynamoDb, final String tableName) {
+        this(dynamoDb, tableName, Clock.systemUTC(), NodeId.local());
+    }
+
+    public DynamoDbAsyncLocker(
+        final AmazonDynamoDBAsync dynamoDb,
+        final String tableName,
+        final Clock clock,
+        final String ownerId
+    ) {
+        this.dynamoDb = dynamoDb;
+        this.tableName = tableName;
+        this.clock = clock;
+        this.ownerId = ownerId;
+    }
+
+    /**
+     * Acquires a distributed lock with a conditional update, see DynamoDbLocker.tryLock
+     *
+     * The future never completes exceptionally, errors are logged and reported as the lock not being acquired.
+     */
+    @Override
+    public CompletableFuture<Boolean> tryLockAsync(String lockKey, int expiryInSeconds) {
+        final String environmentLockKey = getEnvironmentSpecificLockKey(lockKey);
+        final CompletableFuture<Boolean> acquired = new CompletableFuture<>();
+
+        logger.info("Trying to acquire lock [{}]", environmentLockKey);
+
+        final long now = clock.millis();
+
+        UpdateItemRequest request = new UpdateItemRequest()
+            .withTableName(tableName)
+            .withKey(ImmutableMap.of(TABLE_KEY, new AttributeValue(environmentLockKey)))
+            .withUpdateExpression(ACQUIRE_UPDATE)
+            // create the lock if it doesn't exist, OR overwrite it if it's expired
+            .withConditionExpression(ACQUIRE_CONDITION)
+            .withExpressionAttributeNames(ACQUIRE_NAMES)
+            .withExpressionAttributeValues(ImmutableMap.of(
+                ":expiry", new AttributeValue().withN(String.valueOf(now + (expiryInSeconds * 1000L))),
+                ":owner", new AttributeValue(ownerId),
+                ":createdAt", new AttributeValue(OffsetDateTime.now(clock).toString()),
+                ":now", new AttributeValue().withN(String.valueOf(now))
+            ));
+
+        Consumer<Exception> onError = ex -> {
+            if (ex instanceof ConditionalCheckFailedException) { // thrown if we tried to acquire a locked lock
+                logger.info("Could not acquire locked lock [{}]", environmentLockKey);
+            } else if (DynamoDbLocker.isThrottling(ex)) {
+                logger.warn("Throttled when trying to acquire lock [{}]", environmentLockKey);
+            } else {
+                logger.error("Error when trying to aquire lock [{}]: ", environmentLockKey, ex);
+            }
+
+            acquired.complete(false);
+        };
+
+        try {
+            dynamoDb.updateItemAsync(request, new Handler<>(
+                result -> {
+                    logger.info("Acquired lock [{}]", environmentLockKey);
+                    acquired.complete(true);
+                },
+                onError
+            ));
+        } catch (Exception ex) { // thrown if the request couldn't even be submitted
+            onError.accept(ex);
+        }
+
+        return acquired;
+    }
+
+    /**
+     * Release a distributed lock, by setting its expiry to 0, see DynamoDbLocker.unlock
+     *
+     * The future never completes exceptionally, errors are logged.
+     */
+    @Override
+    public CompletableFuture<Void> unlockAsync(String lockKey) {
+        final String environmentLockKey = getEnvironmentSpecificLockKey(lockKey);
+        final CompletableFuture<Void> released = new CompletableFuture<>();
+
+        logger.info("Releasing lock [{}]", environmentLockKey);
+
+        UpdateItemRequest request = new UpdateItemRequest()
+            .withTableName(tableName)
+            .withKey(ImmutableMap.of(TABLE_KEY, new AttributeValue(environmentLockKey)))
+            .withUpdateExpression(RELEASE_UPDATE)
+            // only the owner releases a lock, like DynamoDbLocker.unlock
+            .withConditionExpression(RELEASE_CONDITION)
+            .withExpressionAttributeNames(RELEASE_NAMES)
+            .withExpressionAttributeValues(ImmutableMap.of(
+                ":released", new AttributeValue().withN("0"), // an expiry of 0 means the lock is always expired, therefore released
+                ":createdAt", new AttributeValue(OffsetDateTime.now(clock).toString()),
+                ":owner", new AttributeValue(ownerId)
+            ));
+
+        Consumer<Exception> onError = ex -> {
+            if (ex instanceof ConditionalCheckFailedException) { // thrown if the lock is owned by another process
+                logger.info("Did not release lock [{}], it is held by another process", environmentLockKey);
+            } else {
+                logger.error("Failed to release lock [{}]", environmentLockKey, ex);
+            }
+
+            released.complete(null);
+        };
+
+        try {
+            dynamoDb.updateItemAsync(request, new Handler<>(
+                result -> {
+                    logger.info("Released lock [{}]", environmentLockKey);
+                    released.complete(null);
+                },
+                onError
+            ));
+        } catch (Exception ex) {
+            onError.accept(ex);
+        }
+
+        return released;
+    }
+
+    /**
+     * Bridges the callbacks of the client to functional interfaces
+     */
+    private static class Handler<REQUEST extends AmazonWebServiceRequest, RESULT> implements AsyncHandler<REQUEST, RESULT> {
+
+        private final Consumer<RESULT> onSuccess;
+
+        private final Consumer<Exception> onError;
+
+        private Handler(Consumer<RESULT> onSuccess, Consumer<Exception> onError) {
+            this.onSuccess = onSuccess;
+            this.onError = onError;
+        }
+
+        @Override
+        public void onSuccess(REQUEST request, RESULT result) {
+            onSuccess.accept(result);
+        }
+
+        @Override
+        public void onError(Exception exception) {
+            onError.accept(exception);
+        }
+    }
+}
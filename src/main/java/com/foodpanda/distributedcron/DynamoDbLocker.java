@@ -1,11 +1,21 @@
 package com.foodpanda.distributedcron;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
 
+import com.amazonaws.services.dynamodbv2.document.BatchGetItemOutcome;
 import com.amazonaws.services.dynamodbv2.document.DynamoDB;
 import com.amazonaws.services.dynamodbv2.document.Item;
 import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.document.TableKeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.document.UpdateItemOutcome;
+import com.amazonaws.services.dynamodbv2.document.spec.GetItemSpec;
+import com.amazonaws.services.dynamodbv2.document.spec.UpdateItemSpec;
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.dynamodbv2.model.ReturnValue;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -13,16 +23,133 @@ import org.slf4j.LoggerFactory;
 
 import java.time.Clock;
 import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
-public class DynamoDbLocker implements Locker {
+public class DynamoDbLocker
+    implements InspectableLocker, SharedScheduleLocker, HandOffLocker, IdempotentLocker, CheckpointLocker {
 
     private static final Logger logger = LoggerFactory.getLogger(DynamoDbLocker.class);
 
-    private static final String TABLE_KEY = "id";
+    static final String TABLE_KEY = "id";
 
-    private static final String TABLE_CREATED_AT = "created_at";
+    static final String TABLE_CREATED_AT = "created_at";
 
-    private static final String LOCK = "lock";
+    static final String LOCK = "lock";
+
+    static final String OWNER = "owner";
+
+    static final String NEXT_DUE_AT = "next_due_at";
+
+    static final String LAST_RUN_AT = "last_run_at";
+
+    static final String HANDED_OFF_AT = "handed_off_at";
+
+    static final String ATTEMPT = "attempt";
+
+    static final String CHECKPOINT = "checkpoint";
+
+    /**
+     * The maximum number of keys DynamoDB accepts in a single BatchGetItem request
+     */
+    private static final int MAX_BATCH_GET_KEYS = 100;
+
+    /**
+     * The environment the locks are stored for, appended to every lock key
+     */
+    private static final String ENVIRONMENT = System.getenv("ENV") != null ? System.getenv("ENV") : "dev";
+
+    // all writes are updates, so the schedule attributes survive locking and unlocking
+    static final String ACQUIRE_UPDATE =
+        "SET #lockExpiry = :expiry, #owner = :owner, #createdAt = :createdAt REMOVE #handedOffAt";
+
+    static final String ACQUIRE_CONDITION = "attribute_not_exists(#id) OR #lockExpiry < :now";
+
+    static final Map<String, String> ACQUIRE_NAMES = ImmutableMap.of(
+        "#id", TABLE_KEY,
+        "#lockExpiry", LOCK,
+        "#owner", OWNER,
+        "#createdAt", TABLE_CREATED_AT,
+        "#handedOffAt", HANDED_OFF_AT
+    );
+
+    private static final String IDEMPOTENT_ACQUIRE_UPDATE =
+        "SET #lockExpiry = :expiry, #owner = :owner, #createdAt = :createdAt, #attempt = :attempt REMOVE #handedOffAt";
+
+    private static final String IDEMPOTENT_ACQUIRE_CONDITION = ACQUIRE_CONDITION + " OR (#owner = :owner AND #attempt = :attempt)";
+
+    private static final Map<String, String> IDEMPOTENT_ACQUIRE_NAMES = ImmutableMap.<String, String>builder()
+        .putAll(ACQUIRE_NAMES)
+        .put("#attempt", ATTEMPT)
+        .build();
+
+    static final String RELEASE_UPDATE = "SET #lockExpiry = :released, #createdAt = :createdAt";
+
+    // only the owner releases a lock, so a stray release never frees the lock of another process
+    static final String RELEASE_CONDITION = "#owner = :owner";
+
+    static final Map<String, String> RELEASE_NAMES = ImmutableMap.of(
+        "#lockExpiry", LOCK,
+        "#createdAt", TABLE_CREATED_AT,
+        "#owner", OWNER
+    );
+
+    private static final String CLAIM_UPDATE =
+        "SET #lockExpiry = :expiry, #owner = :owner, #createdAt = :createdAt, #nextDueAt = :nextDueAt, #lastRunAt = :now"
+            + " REMOVE #handedOffAt";
+
+    private static final String CLAIM_FIRST_CONDITION =
+        "attribute_not_exists(#nextDueAt) AND (attribute_not_exists(#lockExpiry) OR #lockExpiry < :now)";
+
+    private static final String CLAIM_CONDITION = "#nextDueAt = :dueAt AND #lockExpiry < :now";
+
+    private static final Map<String, String> CLAIM_NAMES = ImmutableMap.<String, String>builder()
+        .put("#lockExpiry", LOCK)
+        .put("#owner", OWNER)
+        .put("#createdAt", TABLE_CREATED_AT)
+        .put("#nextDueAt", NEXT_DUE_AT)
+        .put("#lastRunAt", LAST_RUN_AT)
+        .put("#handedOffAt", HANDED_OFF_AT)
+        .build();
+
+    private static final String HAND_OFF_UPDATE = "SET #lockExpiry = :released, #createdAt = :createdAt, #handedOffAt = :now";
+
+    private static final Map<String, String> HAND_OFF_NAMES = ImmutableMap.of(
+        "#lockExpiry", LOCK,
+        "#createdAt", TABLE_CREATED_AT,
+        "#handedOffAt", HANDED_OFF_AT,
+        "#owner", OWNER
+    );
+
+    private static final String RENEW_UPDATE = "SET #lockExpiry = :expiry";
+
+    private static final String RENEW_CONDITION = "#owner = :owner AND #lockExpiry >= :now";
+
+    private static final Map<String, String> RENEW_NAMES = ImmutableMap.of("#lockExpiry", LOCK, "#owner", OWNER);
+
+    private static final String COMMIT_CHECKPOINT_UPDATE = "SET #checkpoint = :checkpoint";
+
+    private static final Map<String, String> COMMIT_CHECKPOINT_NAMES = ImmutableMap.of(
+        "#lockExpiry", LOCK,
+        "#owner", OWNER,
+        "#checkpoint", CHECKPOINT
+    );
+
+    /**
+     * The backoff after the first throttled request, doubled for every further consecutive one
+     */
+    static final long MIN_THROTTLE_BACKOFF_MILLIS = 50;
+
+    static final long MAX_THROTTLE_BACKOFF_MILLIS = 10000;
 
     private final DynamoDB dynamoDb;
 
@@ -30,6 +157,20 @@ public class DynamoDbLocker implements Locker {
 
     private final Clock clock;
 
+    private final String ownerId;
+
+    private final Table table;
+
+    private final LongAdder throttledCount = new LongAdder();
+
+    /**
+     * The backoffs of the locks whose last acquisition or claim was throttled, by environment specific lock key
+     *
+     * DynamoDB throttles hot partitions on their own, so one throttled lock doesn't hold up the others. When the whole
+     * table is over its capacity, every lock is throttled and backs off on its next attempt.
+     */
+    private final Map<String, Backoff> backoffs = new ConcurrentHashMap<>();
+
     public DynamoDbLocker(final DynamoDB dynamoDb, final String tableName) {
         this(dynamoDb, tableName, Clock.systemUTC());
     }
@@ -38,10 +179,24 @@ public class DynamoDbLocker implements Locker {
         DynamoDB configuration,
         String tableName,
         Clock clock
+    ) {
+        this(configuration, tableName, clock, NodeId.local());
+    }
+
+    /**
+     * @param ownerId identifies this process as the holder of the locks it acquires, only the owner can renew a lock
+     */
+    public DynamoDbLocker(
+        DynamoDB configuration,
+        String tableName,
+        Clock clock,
+        String ownerId
     ) {
         this.dynamoDb = configuration;
         this.tableName = tableName;
         this.clock = clock;
+        this.ownerId = ownerId;
+        this.table = configuration.getTable(tableName);
     }
 
     /**
@@ -56,62 +211,528 @@ public class DynamoDbLocker implements Locker {
      */
     @Override
     public boolean tryLock(String lockKey, int expiryInSeconds) {
-        try {
-            lockKey = getEnvironmentSpecificLockKey(lockKey);
+        return tryAcquire(lockKey, expiryInSeconds) == LockOutcome.ACQUIRED;
+    }
+
+    /**
+     * Acquires a distributed lock, telling apart a failed condition, i.e. a lock held by another process, from errors
+     * of the request
+     */
+    @Override
+    public LockOutcome tryAcquire(String lockKey, int expiryInSeconds) {
+        return acquire(getEnvironmentSpecificLockKey(lockKey), expiryInSeconds, null, null);
+    }
+
+    /**
+     * Acquires a distributed lock like tryAcquire, also succeeding if the lock is held by this process for the same
+     * attempt, which is stored with the lock
+     */
+    @Override
+    public LockOutcome tryAcquire(String lockKey, int expiryInSeconds, String attemptId) {
+        return acquire(getEnvironmentSpecificLockKey(lockKey), expiryInSeconds, attemptId, null);
+    }
+
+    /**
+     * Resolves the key the lock is stored under once, so acquiring and releasing the lock through the handle only
+     * builds the request
+     */
+    @Override
+    public LockHandle handle(String lockKey) {
+        return new DynamoDbLockHandle(lockKey, getEnvironmentSpecificLockKey(lockKey));
+    }
+
+    /**
+     * Acquires as many of the passed locks as possible
+     *
+     * DynamoDB can't batch conditional writes, so the current state of all the locks is first read with as few
+     * consistent BatchGetItem requests as possible. The conditional write is then only attempted for the locks which
+     * were free, which saves a failed write round-trip for every lock already held by another process.
+     */
+    @Override
+    public Set<String> tryLockAll(Collection<String> lockKeys, int expiryInSeconds) {
+        Set<String> acquired = new LinkedHashSet<>();
+
+        for (List<String> batch : Iterables.partition(new LinkedHashSet<>(lockKeys), MAX_BATCH_GET_KEYS)) {
+            Set<String> unlocked;
+
+            try {
+                unlocked = findUnlocked(batch);
+            } catch (Exception ex) { // the conditional writes still guarantee correctness, just try them all
+                logger.error("Error when reading the state of locks {}: ", batch, ex);
+                unlocked = new LinkedHashSet<>(batch);
+            }
+
+            for (String lockKey : unlocked) {
+                if (tryLock(lockKey, expiryInSeconds)) {
+                    acquired.add(lockKey);
+                }
+            }
+        }
+
+        return acquired;
+    }
+
+    /**
+     * Extends a lock held by this process, by moving its expiry to now + expiryInSeconds
+     *
+     * The update is conditional on this process still being the owner of an unexpired lock, so a lock which was
+     * already taken over by another process after expiring is never extended.
+     */
+    @Override
+    public boolean renewLock(String lockKey, int expiryInSeconds) {
+        return renew(getEnvironmentSpecificLockKey(lockKey), expiryInSeconds);
+    }
+
+    /**
+     * Reads the expiry of a lock
+     *
+     * The read is strongly consistent, an eventually consistent one could miss a release which just happened.
+     */
+    @Override
+    public long getLockExpiry(String lockKey) {
+        Item item = table.getItem(
+            new GetItemSpec()
+                .withPrimaryKey(TABLE_KEY, getEnvironmentSpecificLockKey(lockKey))
+                .withAttributesToGet(LOCK)
+                .withConsistentRead(true)
+        );
+
+        return item != null && item.isPresent(LOCK) ? item.getLong(LOCK) : 0L;
+    }
+
+    /**
+     * Reads the due time of the job guarded by the lock, strongly consistent like getLockExpiry
+     */
+    @Override
+    public long getNextDueAt(String lockKey) {
+        Item item = table.getItem(
+            new GetItemSpec()
+                .withPrimaryKey(TABLE_KEY, getEnvironmentSpecificLockKey(lockKey))
+                .withAttributesToGet(NEXT_DUE_AT)
+                .withConsistentRead(true)
+        );
 
-            logger.info("Trying to acquire lock [{}]", lockKey);
+        return item != null && item.isPresent(NEXT_DUE_AT) ? item.getLong(NEXT_DUE_AT) : 0L;
+    }
+
+    /**
+     * Reads the checkpoint of the job guarded by the lock, strongly consistent like getLockExpiry
+     */
+    @Override
+    public String readCheckpoint(String lockKey) {
+        Item item = table.getItem(
+            new GetItemSpec()
+                .withPrimaryKey(TABLE_KEY, getEnvironmentSpecificLockKey(lockKey))
+                .withAttributesToGet(CHECKPOINT)
+                .withConsistentRead(true)
+        );
+
+        return item != null && item.isPresent(CHECKPOINT) ? item.getString(CHECKPOINT) : null;
+    }
+
+    /**
+     * Acquires a distributed lock like tryLock, with the acquiring update returning the whole lock item, checkpoint
+     * included, so resuming a run doesn't take a second, consistent read
+     */
+    @Override
+    public Checkpoint tryLockWithCheckpoint(String lockKey, int expiryInSeconds) {
+        final String[] checkpoint = new String[1];
+        final LockOutcome outcome = acquire(
+            getEnvironmentSpecificLockKey(lockKey),
+            expiryInSeconds,
+            null,
+            item -> checkpoint[0] = item != null && item.isPresent(CHECKPOINT) ? item.getString(CHECKPOINT) : null
+        );
 
-            Table table = dynamoDb.getTable(tableName);
+        return outcome == LockOutcome.ACQUIRED ? new Checkpoint(this, lockKey, checkpoint[0]) : null;
+    }
 
-            Item lock = new Item()
-                .withPrimaryKey(TABLE_KEY, lockKey)
-                .withLong(LOCK, clock.millis() + (expiryInSeconds * 1000L))
-                .withString(TABLE_CREATED_AT, OffsetDateTime.now(clock).toString());
+    /**
+     * Stores the checkpoint in the lock item, with an update conditional on this process owning the unexpired lock,
+     * the same condition a renewal has
+     */
+    @Override
+    public boolean commitCheckpoint(String lockKey, String checkpoint) {
+        final String environmentKey = getEnvironmentSpecificLockKey(lockKey);
 
-            // create the lock if it doesn't exist, OR overwrite it if it's expired
-            table.putItem(
-                lock,
-                "attribute_not_exists(#id) OR #lockExpiry < :now",
-                ImmutableMap.of("#id", TABLE_KEY, "#lockExpiry", LOCK),
-                ImmutableMap.of(":now", clock.millis())
+        try {
+            table.updateItem(
+                TABLE_KEY,
+                environmentKey,
+                COMMIT_CHECKPOINT_UPDATE,
+                RENEW_CONDITION,
+                COMMIT_CHECKPOINT_NAMES,
+                ImmutableMap.of(
+                    ":checkpoint", checkpoint,
+                    ":owner", ownerId,
+                    ":now", clock.millis()
+                )
             );
 
-            logger.info("Acquired lock [{}]", lockKey);
+            logger.debug("Committed checkpoint [{}] of lock [{}]", checkpoint, environmentKey);
 
             return true;
-        } catch (ConditionalCheckFailedException e) { // thrown if we tried to acquire a locked lock
-            logger.info("Could not acquire locked lock [{}]", lockKey);
-        } catch (Exception ex) { // thrown on any other, unexpected, error performing the request
-            logger.error("Error when trying to aquire lock [{}]: ", lockKey, ex);
+        } catch (ConditionalCheckFailedException e) { // thrown if the lock expired or belongs to someone else
+            logger.warn("Could not commit checkpoint of lock [{}], it is no longer held", environmentKey);
+        } catch (Exception ex) {
+            logger.error("Error when trying to commit checkpoint of lock [{}]: ", environmentKey, ex);
         }
 
         return false;
     }
 
+    /**
+     * Claims a period with a single conditional update of the lock item, which acquires the lock, moves next_due_at
+     * on and records the time of the run in last_run_at
+     */
+    @Override
+    public LockOutcome claimPeriod(String lockKey, long dueAt, long nextDueAt, int expiryInSeconds) {
+        lockKey = getEnvironmentSpecificLockKey(lockKey);
+
+        if (isBackingOff(lockKey)) {
+            logger.debug("Not trying to claim period due at {} of lock [{}] while backing off", dueAt, lockKey);
+
+            return LockOutcome.THROTTLED;
+        }
+
+        try {
+            final long now = clock.millis();
+            final Map<String, Object> values = new HashMap<>();
+            values.put(":expiry", now + (expiryInSeconds * 1000L));
+            values.put(":owner", ownerId);
+            values.put(":createdAt", OffsetDateTime.now(clock).toString());
+            values.put(":nextDueAt", nextDueAt);
+            values.put(":now", now);
+
+            if (dueAt > 0) {
+                values.put(":dueAt", dueAt);
+            }
+
+            table.updateItem(
+                TABLE_KEY,
+                lockKey,
+                CLAIM_UPDATE,
+                dueAt > 0 ? CLAIM_CONDITION : CLAIM_FIRST_CONDITION,
+                CLAIM_NAMES,
+                values
+            );
+
+            logger.info("Claimed period due at {} of lock [{}]", dueAt, lockKey);
+            backoffs.remove(lockKey);
+
+            return LockOutcome.ACQUIRED;
+        } catch (ConditionalCheckFailedException e) { // thrown if the period was claimed already or the lock is held
+            logger.info("Could not claim period due at {} of lock [{}]", dueAt, lockKey);
+            backoffs.remove(lockKey);
+
+            return LockOutcome.CONTENDED;
+        } catch (Exception ex) {
+            if (isThrottling(ex)) {
+                backOff(lockKey);
+
+                return LockOutcome.THROTTLED;
+            }
+
+            logger.error("Error when trying to claim period due at {} of lock [{}]: ", dueAt, lockKey, ex);
+
+            return LockOutcome.ERROR;
+        }
+    }
+
+    /**
+     * Releases the locks like unlock, also recording when they were handed off
+     *
+     * DynamoDB can't batch updates, and a delete would lose the shared schedule of the lock, so this is one update
+     * per lock.
+     */
+    @Override
+    public void handOff(Collection<String> lockKeys) {
+        final long now = clock.millis();
+
+        for (String lockKey : lockKeys) {
+            final String environmentKey = getEnvironmentSpecificLockKey(lockKey);
+
+            try {
+                table.updateItem(
+                    new UpdateItemSpec()
+                        .withPrimaryKey(TABLE_KEY, environmentKey)
+                        .withUpdateExpression(HAND_OFF_UPDATE)
+                        .withConditionExpression(RELEASE_CONDITION)
+                        .withNameMap(HAND_OFF_NAMES)
+                        .withValueMap(ImmutableMap.of(
+                            ":released", 0L,
+                            ":createdAt", OffsetDateTime.now(clock).toString(),
+                            ":now", now,
+                            ":owner", ownerId
+                        ))
+                );
+                logger.info("Handed off lock [{}]", environmentKey);
+            } catch (ConditionalCheckFailedException e) { // thrown if the lock was taken over by another process
+                logger.info("Did not hand off lock [{}], it is held by another process", environmentKey);
+            } catch (Exception ex) {
+                logger.error("Failed to hand off lock [{}]", environmentKey, ex);
+            }
+        }
+    }
+
+    /**
+     * Reads the hand-off markers of the locks with as few consistent BatchGetItem requests as possible
+     */
+    @Override
+    public Set<String> findHandedOff(Collection<String> lockKeys) {
+        final Set<String> handedOff = new LinkedHashSet<>();
+
+        for (List<String> batch : Iterables.partition(new LinkedHashSet<>(lockKeys), MAX_BATCH_GET_KEYS)) {
+            for (Map.Entry<String, Item> lock : readLocks(batch, HANDED_OFF_AT).entrySet()) {
+                if (lock.getValue().isPresent(HANDED_OFF_AT)) {
+                    handedOff.add(lock.getKey());
+                }
+            }
+        }
+
+        return handedOff;
+    }
+
+    /**
+     * @return the number of acquisitions and claims which were throttled by DynamoDB or skipped while backing off
+     */
+    public long getThrottledCount() {
+        return throttledCount.sum();
+    }
+
     /**
      * Release a distributed lock, by setting its expiry to 0
      *
-     * This always succeeds. There should be no legitimate contention between processes for lock release, as long as
-     * this is only called when you're *certain* that the process already holds the lock.
+     * The update is conditional on this process being the owner of the lock, so releasing a lock which another
+     * process took over, or never acquiring it in the first place, leaves the lock alone.
      */
     @Override
     public void unlock(String lockKey) {
-        lockKey = getEnvironmentSpecificLockKey(lockKey);
+        release(getEnvironmentSpecificLockKey(lockKey));
+    }
 
-        logger.info("Releasing lock [{}]", lockKey);
+    /**
+     * @param attemptId the attempt the acquisition may be repeated for, null if it can't be repeated
+     * @param acquiredItem passed the lock item as it is after the acquisition, null if the item isn't needed
+     */
+    private LockOutcome acquire(
+        String environmentKey,
+        int expiryInSeconds,
+        String attemptId,
+        Consumer<Item> acquiredItem
+    ) {
+        if (isBackingOff(environmentKey)) {
+            logger.debug("Not trying to acquire lock [{}] while backing off from throttling", environmentKey);
+
+            return LockOutcome.THROTTLED;
+        }
+
+        try {
+            logger.info("Trying to acquire lock [{}]", environmentKey);
+
+            final long now = clock.millis();
+
+            final Map<String, Object> values = new HashMap<>();
+            values.put(":expiry", now + (expiryInSeconds * 1000L));
+            values.put(":owner", ownerId);
+            values.put(":createdAt", OffsetDateTime.now(clock).toString());
+            values.put(":now", now);
+
+            if (attemptId != null) {
+                values.put(":attempt", attemptId);
+            }
+
+            // create the lock if it doesn't exist, OR overwrite it if it's expired, OR repeat the same attempt
+            final UpdateItemOutcome outcome = table.updateItem(
+                new UpdateItemSpec()
+                    .withPrimaryKey(TABLE_KEY, environmentKey)
+                    .withUpdateExpression(attemptId != null ? IDEMPOTENT_ACQUIRE_UPDATE : ACQUIRE_UPDATE)
+                    .withConditionExpression(attemptId != null ? IDEMPOTENT_ACQUIRE_CONDITION : ACQUIRE_CONDITION)
+                    .withNameMap(attemptId != null ? IDEMPOTENT_ACQUIRE_NAMES : ACQUIRE_NAMES)
+                    .withValueMap(values)
+                    .withReturnValues(acquiredItem != null ? ReturnValue.ALL_NEW : ReturnValue.NONE)
+            );
+
+            logger.info("Acquired lock [{}]", environmentKey);
+            backoffs.remove(environmentKey);
+
+            if (acquiredItem != null) {
+                acquiredItem.accept(outcome.getItem());
+            }
+
+            return LockOutcome.ACQUIRED;
+        } catch (ConditionalCheckFailedException e) { // thrown if we tried to acquire a locked lock
+            logger.info("Could not acquire locked lock [{}]", environmentKey);
+            backoffs.remove(environmentKey);
 
-        Table table = dynamoDb.getTable(tableName);
+            return LockOutcome.CONTENDED;
+        } catch (Exception ex) { // thrown on any other, unexpected, error performing the request
+            if (isThrottling(ex)) {
+                backOff(environmentKey);
+
+                return LockOutcome.THROTTLED;
+            }
+
+            logger.error("Error when trying to aquire lock [{}]: ", environmentKey, ex);
+
+            return LockOutcome.ERROR;
+        }
+    }
 
+    private boolean renew(String environmentKey, int expiryInSeconds) {
         try {
-            Item item = new Item()
-                .withPrimaryKey(TABLE_KEY, lockKey)
-                .withLong(LOCK, 0) // setting an expiry of 0 means the lock is always expired, therefore released
-                .withString(TABLE_CREATED_AT, OffsetDateTime.now(clock).toString());
+            final long now = clock.millis();
+
+            table.updateItem(
+                TABLE_KEY,
+                environmentKey,
+                RENEW_UPDATE,
+                RENEW_CONDITION,
+                RENEW_NAMES,
+                ImmutableMap.of(
+                    ":expiry", now + (expiryInSeconds * 1000L),
+                    ":owner", ownerId,
+                    ":now", now
+                )
+            );
+
+            logger.debug("Renewed lock [{}]", environmentKey);
+
+            return true;
+        } catch (ConditionalCheckFailedException e) { // thrown if the lock expired or belongs to someone else
+            logger.warn("Could not renew lock [{}], it is no longer held", environmentKey);
+        } catch (Exception ex) {
+            logger.error("Error when trying to renew lock [{}]: ", environmentKey, ex);
+        }
+
+        return false;
+    }
 
-            table.putItem(item);
-            logger.info("Released lock [{}]", lockKey);
+    private void release(String environmentKey) {
+        logger.info("Releasing lock [{}]", environmentKey);
+
+        try {
+            // setting an expiry of 0 means the lock is always expired, therefore released
+            table.updateItem(
+                new UpdateItemSpec()
+                    .withPrimaryKey(TABLE_KEY, environmentKey)
+                    .withUpdateExpression(RELEASE_UPDATE)
+                    .withConditionExpression(RELEASE_CONDITION)
+                    .withNameMap(RELEASE_NAMES)
+                    .withValueMap(ImmutableMap.of(
+                        ":released", 0L,
+                        ":createdAt", OffsetDateTime.now(clock).toString(),
+                        ":owner", ownerId
+                    ))
+            );
+            logger.info("Released lock [{}]", environmentKey);
+        } catch (ConditionalCheckFailedException e) { // thrown if the lock is owned by another process
+            logger.info("Did not release lock [{}], it is held by another process", environmentKey);
         } catch (Exception ex) {
-            logger.error("Failed to release lock [{}]", lockKey);
+            logger.error("Failed to release lock [{}]", environmentKey);
+        }
+    }
+
+    private boolean isBackingOff(String environmentKey) {
+        final Backoff backoff = backoffs.get(environmentKey);
+
+        if (backoff == null || clock.millis() >= backoff.until) {
+            return false;
+        }
+
+        throttledCount.increment();
+
+        return true;
+    }
+
+    /**
+     * Stops acquiring the lock for a random time up to a backoff which doubles with every consecutive throttled
+     * request of the lock, so the whole fleet doesn't retry at the same time and lock traffic drops below the
+     * provisioned capacity
+     */
+    private void backOff(String environmentKey) {
+        throttledCount.increment();
+
+        final Backoff backoff = backoffs.compute(environmentKey, (key, previous) -> {
+            final int throttles = previous != null ? previous.throttles + 1 : 1;
+            final long maxMillis = Math.min(
+                MAX_THROTTLE_BACKOFF_MILLIS,
+                MIN_THROTTLE_BACKOFF_MILLIS << Math.min(throttles - 1, 20)
+            );
+            final long jittered = maxMillis / 2 + ThreadLocalRandom.current().nextLong(maxMillis / 2 + 1);
+
+            return new Backoff(throttles, clock.millis() + jittered);
+        });
+
+        logger.warn(
+            "Throttled when trying to acquire lock [{}], backing off for {}ms",
+            environmentKey,
+            backoff.until - clock.millis()
+        );
+    }
+
+    static boolean isThrottling(Exception ex) {
+        if (ex instanceof ProvisionedThroughputExceededException) {
+            return true;
+        }
+
+        if (ex instanceof AmazonServiceException) {
+            final String errorCode = ((AmazonServiceException) ex).getErrorCode();
+
+            return "ThrottlingException".equals(errorCode) || "RequestLimitExceeded".equals(errorCode);
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the keys of the locks which are not held at the moment
+     */
+    private Set<String> findUnlocked(List<String> lockKeys) {
+        Set<String> unlocked = new LinkedHashSet<>(lockKeys);
+        long now = clock.millis();
+
+        for (Map.Entry<String, Item> lock : readLocks(lockKeys, LOCK).entrySet()) {
+            if (lock.getValue().isPresent(LOCK) && lock.getValue().getLong(LOCK) >= now) {
+                unlocked.remove(lock.getKey());
+            }
+        }
+
+        return unlocked;
+    }
+
+    /**
+     * Reads an attribute of the passed locks in a single BatchGetItem request, plus retries of any unprocessed keys
+     *
+     * @return the items of the locks which exist, by lock key
+     */
+    private Map<String, Item> readLocks(List<String> lockKeys, String attributeName) {
+        Map<String, String> lockKeysByEnvironmentKey = new HashMap<>();
+        for (String lockKey : lockKeys) {
+            lockKeysByEnvironmentKey.put(getEnvironmentSpecificLockKey(lockKey), lockKey);
+        }
+
+        Map<String, Item> locks = new HashMap<>();
+
+        BatchGetItemOutcome outcome = dynamoDb.batchGetItem(
+            new TableKeysAndAttributes(tableName)
+                .withHashOnlyKeys(TABLE_KEY, lockKeysByEnvironmentKey.keySet().toArray())
+                .withAttributeNames(TABLE_KEY, attributeName)
+                .withConsistentRead(true)
+        );
+
+        while (true) {
+            List<Item> items = outcome.getTableItems().getOrDefault(tableName, Collections.emptyList());
+            for (Item item : items) {
+                locks.put(lockKeysByEnvironmentKey.get(item.getString(TABLE_KEY)), item);
+            }
+
+            Map<String, KeysAndAttributes> unprocessedKeys = outcome.getUnprocessedKeys();
+            if (unprocessedKeys == null || unprocessedKeys.isEmpty()) {
+                return locks;
+            }
+
+            outcome = dynamoDb.batchGetItemUnprocessed(unprocessedKeys);
         }
     }
 
@@ -121,10 +742,54 @@ public class DynamoDbLocker implements Locker {
      * @param lockKey the key for the lock
      * @return the key with the environment name appended, therefore unique to a (key,environment) pair
      */
-    private String getEnvironmentSpecificLockKey(String lockKey) {
-        String environment = System.getenv("ENV");
-        String environmentKey = environment != null ? environment : "dev";
+    static String getEnvironmentSpecificLockKey(String lockKey) {
+        return StringUtils.replace(lockKey + "_" + ENVIRONMENT, " ", "");
+    }
+
+    private final class DynamoDbLockHandle implements LockHandle {
+
+        private final String lockKey;
 
-        return StringUtils.replace(lockKey + "_" + environmentKey, " ", "");
+        private final String environmentKey;
+
+        private DynamoDbLockHandle(String lockKey, String environmentKey) {
+            this.lockKey = lockKey;
+            this.environmentKey = environmentKey;
+        }
+
+        @Override
+        public String getLockKey() {
+            return lockKey;
+        }
+
+        @Override
+        public LockOutcome tryAcquire(int expiryInSeconds) {
+            return acquire(environmentKey, expiryInSeconds, null, null);
+        }
+
+        @Override
+        public boolean renew(int expiryInSeconds) {
+            return DynamoDbLocker.this.renew(environmentKey, expiryInSeconds);
+        }
+
+        @Override
+        public void unlock() {
+            release(environmentKey);
+        }
+    }
+
+    private static final class Backoff {
+
+        private final int throttles;
+
+        /**
+         * Until when, in clock millis, acquiring the lock and claiming its periods is skipped
+         */
+        private final long until;
+
+        private Backoff(int throttles, long until) {
+            this.throttles = throttles;
+            this.until = until;
+        }
     }
 }
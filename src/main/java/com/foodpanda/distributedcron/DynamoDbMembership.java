@@ -0,0 +1,173 @@
+package com.foodpanda.distributedcron;
+
+import com.amazonaws.services.dynamodbv2.document.DynamoDB;
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.document.spec.ScanSpec;
+import com.amazonaws.services.dynamodbv2.document.spec.UpdateItemSpec;
+import com.amazonaws.services.dynamodbv2.document.utils.NameMap;
+import com.amazonaws.services.dynamodbv2.document.utils.ValueMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.OffsetDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Membership of the fleet stored in a DynamoDB table, next to the lock table and with the same key schema
+ *
+ * Every node keeps one item with the expiry of its last heartbeat. Reading the live members is a scan of the table,
+ * which only ever holds one item per node, filtered to the nodes of the current environment with unexpired heartbeats.
+ * A heartbeat can carry the load score of the node, which is read back along with the live members.
+ *
+ * Heartbeats update the item of the node in place, a plain heartbeat keeps the load score published last, so a job
+ * assigner and a load aware locker can share one membership table.
+ */
+public class DynamoDbMembership implements Membership {
+
+    private static final Logger logger = LoggerFactory.getLogger(DynamoDbMembership.class);
+
+    private static final String TABLE_KEY = "id";
+
+    private static final String TABLE_CREATED_AT = "created_at";
+
+    private static final String NODE = "node";
+
+    private static final String ENVIRONMENT = "environment";
+
+    private static final String HEARTBEAT_EXPIRY = "heartbeat_expiry";
+
+    private static final String LOAD = "load";
+
+    private final DynamoDB dynamoDb;
+
+    private final String tableName;
+
+    private final String nodeId;
+
+    private final int expiryInSeconds;
+
+    private final Clock clock;
+
+    public DynamoDbMembership(final DynamoDB dynamoDb, final String tableName, final int expiryInSeconds) {
+        this(dynamoDb, tableName, NodeId.local(), expiryInSeconds, Clock.systemUTC());
+    }
+
+    /**
+     * @param nodeId the id this node is known by to the rest of the fleet
+     * @param expiryInSeconds how long a node is considered alive after its last heartbeat
+     */
+    public DynamoDbMembership(
+        final DynamoDB dynamoDb,
+        final String tableName,
+        final String nodeId,
+        final int expiryInSeconds,
+        final Clock clock
+    ) {
+        this.dynamoDb = dynamoDb;
+        this.tableName = tableName;
+        this.nodeId = nodeId;
+        this.expiryInSeconds = expiryInSeconds;
+        this.clock = clock;
+    }
+
+    /**
+     * Extends the heartbeat of this node, keeping the load score it published last, if any
+     */
+    @Override
+    public void heartbeat() {
+        dynamoDb.getTable(tableName).updateItem(buildHeartbeat(
+            "",
+            new NameMap(),
+            new ValueMap()
+        ));
+
+        logger.debug("Published heartbeat of node [{}]", nodeId);
+    }
+
+    @Override
+    public void heartbeat(double load) {
+        dynamoDb.getTable(tableName).updateItem(buildHeartbeat(
+            ", #load = :load",
+            new NameMap().with("#load", LOAD),
+            new ValueMap().withNumber(":load", load)
+        ));
+
+        logger.debug("Published heartbeat of node [{}] with load {}", nodeId, load);
+    }
+
+    @Override
+    public Set<String> readLiveMembers() {
+        return new HashSet<>(readLiveLoads().keySet());
+    }
+
+    @Override
+    public Map<String, Double> readLiveLoads() {
+        Table table = dynamoDb.getTable(tableName);
+        Map<String, Double> loads = new HashMap<>();
+
+        Iterable<Item> items = table.scan(
+            new ScanSpec()
+                .withFilterExpression("#environment = :environment AND #heartbeatExpiry >= :now")
+                .withNameMap(new NameMap().with("#environment", ENVIRONMENT).with("#heartbeatExpiry", HEARTBEAT_EXPIRY))
+                .withValueMap(new ValueMap().withString(":environment", getEnvironment()).withLong(":now", clock.millis()))
+                .withConsistentRead(true)
+        );
+
+        for (Item item : items) {
+            loads.put(item.getString(NODE), item.isPresent(LOAD) ? item.getDouble(LOAD) : 0.0);
+        }
+
+        return loads;
+    }
+
+    @Override
+    public void leave() {
+        try {
+            dynamoDb.getTable(tableName).deleteItem(TABLE_KEY, getMemberKey());
+
+            logger.info("Node [{}] left the fleet", nodeId);
+        } catch (Exception ex) {
+            logger.error("Failed to remove node [{}] from the fleet", nodeId, ex);
+        }
+    }
+
+    /**
+     * @param extraUpdates more assignments appended to the SET clause, each starting with a comma
+     */
+    private UpdateItemSpec buildHeartbeat(String extraUpdates, NameMap extraNames, ValueMap extraValues) {
+        return new UpdateItemSpec()
+            .withPrimaryKey(TABLE_KEY, getMemberKey())
+            .withUpdateExpression(
+                "SET #node = :node, #environment = :environment, #heartbeatExpiry = :heartbeatExpiry, "
+                    + "#createdAt = :createdAt" + extraUpdates
+            )
+            .withNameMap(extraNames
+                .with("#node", NODE)
+                .with("#environment", ENVIRONMENT)
+                .with("#heartbeatExpiry", HEARTBEAT_EXPIRY)
+                .with("#createdAt", TABLE_CREATED_AT)
+            )
+            .withValueMap(extraValues
+                .withString(":node", nodeId)
+                .withString(":environment", getEnvironment())
+                .withLong(":heartbeatExpiry", clock.millis() + (expiryInSeconds * 1000L))
+                .withString(":createdAt", OffsetDateTime.now(clock).toString())
+            );
+    }
+
+    private String getMemberKey() {
+        return nodeId + "_" + getEnvironment();
+    }
+
+    private String getEnvironment() {
+        String environment = System.getenv("ENV");
+
+        return environment != null ? environment : "dev";
+    }
+}
@@ -0,0 +1,279 @@
+package com.foodpanda.distributedcron;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import com.amazonaws.services.dynamodbv2.document.BatchWriteItemOutcome;
+import com.amazonaws.services.dynamodbv2.document.DynamoDB;
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.TableWriteItems;
+import com.amazonaws.services.dynamodbv2.document.spec.QuerySpec;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Run history stored in a DynamoDB table, written behind the runs in batches
+ *
+ * Recording a run only puts it into a bounded ring buffer. A background flusher takes the buffered runs and writes
+ * them with BatchWriteItem requests of up to 25 runs. If the table can't keep up, the buffer fills up and the oldest
+ * runs are dropped to make room for the latest ones rather than slowing the jobs down, the same for batches which can't
+ * be written after a few retries. Dropped runs are counted, see getDroppedCount.
+ *
+ * The table has a string hash key "job", the job description with the environment appended like the lock keys, and
+ * a string range key "run", the start time zero-padded to 13 digits followed by the node id and a sequence number of
+ * the node, so a query on a job returns its runs in the order they started. The sequence number keeps runs of a job
+ * which started in the same millisecond on the same node apart, BatchWriteItem rejects a batch with a key twice.
+ */
+public class DynamoDbRunHistory implements RunHistory {
+
+    private static final Logger logger = LoggerFactory.getLogger(DynamoDbRunHistory.class);
+
+    static final String JOB = "job";
+
+    static final String RUN = "run";
+
+    private static final String JOB_DESCRIPTION = "job_description";
+
+    private static final String NODE = "node";
+
+    private static final String OUTCOME = "outcome";
+
+    private static final String STARTED_AT = "started_at";
+
+    private static final String FINISHED_AT = "finished_at";
+
+    private static final String DURATION = "duration";
+
+    private static final String EXCEPTION = "exception";
+
+    private static final String TABLE_CREATED_AT = "created_at";
+
+    /**
+     * The maximum number of items DynamoDB accepts in a single BatchWriteItem request
+     */
+    private static final int MAX_BATCH_WRITE_ITEMS = 25;
+
+    private static final int MAX_UNPROCESSED_RETRIES = 3;
+
+    private static final int DEFAULT_CAPACITY = 4096;
+
+    private static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+
+    private final DynamoDB dynamoDb;
+
+    private final String tableName;
+
+    private final String nodeId;
+
+    private final Clock clock;
+
+    private final long flushIntervalMillis;
+
+    private final BlockingQueue<RunRecord> buffer;
+
+    private final ScheduledExecutorService flushExecutor;
+
+    private final LongAdder droppedCount = new LongAdder();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    public DynamoDbRunHistory(final DynamoDB dynamoDb, final String tableName) {
+        this(dynamoDb, tableName, NodeId.local(), DEFAULT_CAPACITY, DEFAULT_FLUSH_INTERVAL_MILLIS, Clock.systemUTC());
+    }
+
+    /**
+     * @param nodeId the id this node is recorded by in its runs
+     * @param capacity the maximum number of runs buffered until the next flush, older runs are dropped beyond it
+     * @param flushIntervalMillis how long the flusher waits after writing the buffered runs, before writing again
+     */
+    public DynamoDbRunHistory(
+        final DynamoDB dynamoDb,
+        final String tableName,
+        final String nodeId,
+        final int capacity,
+        final long flushIntervalMillis,
+        final Clock clock
+    ) {
+        this.dynamoDb = dynamoDb;
+        this.tableName = tableName;
+        this.nodeId = nodeId;
+        this.clock = clock;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+        this.flushExecutor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("fleet-cron-history-%d").setDaemon(true).build()
+        );
+    }
+
+    /**
+     * Starts flushing the buffered runs in the background
+     */
+    public void start() {
+        flushExecutor.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+
+        logger.info("Started flushing the run history to [{}] every {}ms", tableName, flushIntervalMillis);
+    }
+
+    /**
+     * Stops the background flusher and writes the runs which are still buffered
+     */
+    public void stop() {
+        flushExecutor.shutdown();
+
+        try {
+            flushExecutor.awaitTermination(flushIntervalMillis + 5000, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        flush();
+    }
+
+    @Override
+    public void record(String jobDescription, RunOutcome outcome, long startedAt, long finishedAt, Throwable failure) {
+        final RunRecord run = new RunRecord(
+            jobDescription,
+            nodeId,
+            outcome,
+            startedAt,
+            finishedAt,
+            failure != null ? failure.getClass().getName() : null
+        );
+
+        // the latest runs are the most interesting ones, make room for them by dropping the oldest
+        while (!buffer.offer(run)) {
+            final RunRecord dropped = buffer.poll();
+
+            if (dropped != null) {
+                droppedCount.increment();
+                logger.debug("Run history buffer is full, dropped {}", dropped);
+            }
+        }
+    }
+
+    /**
+     * Queries the latest runs of the job, the runs still buffered on any node are not returned yet
+     */
+    @Override
+    public List<RunRecord> getRecentRuns(String jobDescription, int limit) {
+        final List<RunRecord> runs = new ArrayList<>();
+
+        Iterable<Item> items = dynamoDb.getTable(tableName).query(
+            new QuerySpec()
+                .withHashKey(JOB, DynamoDbLocker.getEnvironmentSpecificLockKey(jobDescription))
+                .withScanIndexForward(false)
+                .withMaxResultSize(limit)
+        );
+
+        for (Item item : items) {
+            final boolean failed = item.isPresent(EXCEPTION);
+
+            runs.add(new RunRecord(
+                item.getString(JOB_DESCRIPTION),
+                item.getString(NODE),
+                item.isPresent(OUTCOME)
+                    ? RunOutcome.valueOf(item.getString(OUTCOME))
+                    : failed ? RunOutcome.FAILED : RunOutcome.SUCCEEDED,
+                item.getLong(STARTED_AT),
+                item.getLong(FINISHED_AT),
+                failed ? item.getString(EXCEPTION) : null
+            ));
+        }
+
+        return runs;
+    }
+
+    /**
+     * Writes all buffered runs, on the calling thread
+     */
+    @Override
+    public synchronized void flush() {
+        final List<RunRecord> batch = new ArrayList<>(MAX_BATCH_WRITE_ITEMS);
+
+        while (buffer.drainTo(batch, MAX_BATCH_WRITE_ITEMS) > 0) {
+            try {
+                write(batch);
+            } catch (InterruptedException e) {
+                droppedCount.add(batch.size());
+                Thread.currentThread().interrupt();
+            } catch (Exception ex) {
+                droppedCount.add(batch.size());
+                logger.error("Failed to write {} runs to the run history [{}]: ", batch.size(), tableName, ex);
+            }
+
+            batch.clear();
+        }
+    }
+
+    /**
+     * @return the number of runs which were not written, because the buffer was full or the write failed
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception ex) { // never let an exception cancel the flusher
+            logger.error("Failed to flush the run history [{}]: ", tableName, ex);
+        }
+    }
+
+    private void write(List<RunRecord> runs) throws InterruptedException {
+        final String createdAt = OffsetDateTime.now(clock).toString();
+        final TableWriteItems writeItems = new TableWriteItems(tableName);
+
+        for (RunRecord run : runs) {
+            final Item item = new Item()
+                .withPrimaryKey(
+                    JOB, DynamoDbLocker.getEnvironmentSpecificLockKey(run.getJobDescription()),
+                    RUN, String.format("%013d#%s#%d", run.getStartedAt(), run.getNodeId(), sequence.getAndIncrement())
+                )
+                .withString(JOB_DESCRIPTION, run.getJobDescription())
+                .withString(NODE, run.getNodeId())
+                .withString(OUTCOME, run.getOutcome().name())
+                .withLong(STARTED_AT, run.getStartedAt())
+                .withLong(FINISHED_AT, run.getFinishedAt())
+                .withLong(DURATION, run.getDurationMillis())
+                .withString(TABLE_CREATED_AT, createdAt);
+
+            writeItems.addItemToPut(run.getExceptionClass() != null ? item.withString(EXCEPTION, run.getExceptionClass()) : item);
+        }
+
+        BatchWriteItemOutcome outcome = dynamoDb.batchWriteItem(writeItems);
+
+        for (int retry = 0; retry < MAX_UNPROCESSED_RETRIES; retry++) {
+            Map<String, List<WriteRequest>> unprocessedItems = outcome.getUnprocessedItems();
+            if (unprocessedItems == null || unprocessedItems.isEmpty()) {
+                logger.debug("Wrote {} runs to the run history [{}]", runs.size(), tableName);
+                return;
+            }
+
+            // unprocessed items mean the table is throttled, give it some time
+            Thread.sleep(50L << retry);
+            outcome = dynamoDb.batchWriteItemUnprocessed(unprocessedItems);
+        }
+
+        final Map<String, List<WriteRequest>> unprocessedItems = outcome.getUnprocessedItems();
+        final List<WriteRequest> unprocessed = unprocessedItems != null ? unprocessedItems.get(tableName) : null;
+        if (unprocessed != null && !unprocessed.isEmpty()) {
+            droppedCount.add(unprocessed.size());
+            logger.warn("Dropped {} runs the run history [{}] could not take", unprocessed.size(), tableName);
+        }
+    }
+}
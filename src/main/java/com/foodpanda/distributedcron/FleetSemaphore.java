@@ -0,0 +1,69 @@
+package com.foodpanda.distributedcron;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A counting semaphore shared by the whole fleet, so up to a number of holders can do something at the same time
+ *
+ * Each permit is a slot, stored as a lock of its own in the lock store, e.g. an item of the DynamoDB lock table.
+ * Acquiring a permit tries the slots one after another, starting at a random one so concurrent attempts mostly try
+ * different slots, until one is acquired. Every slot has its own expiry, so the permit of a holder which died is
+ * reclaimed as soon as its slot expires, without anyone having to clean up.
+ */
+public class FleetSemaphore {
+
+    private static final Logger logger = LoggerFactory.getLogger(FleetSemaphore.class);
+
+    private final String name;
+
+    private final LockHandle[] slots;
+
+    /**
+     * @param locker stores the slots
+     * @param name identifies the semaphore, the slots are stored under the name followed by _SLOT_ and their number
+     * @param permits how many holders the semaphore admits at the same time
+     */
+    public FleetSemaphore(final Locker locker, final String name, final int permits) {
+        if (permits < 1) {
+            throw new IllegalArgumentException("A semaphore needs at least one permit");
+        }
+
+        this.name = name;
+        this.slots = new LockHandle[permits];
+
+        for (int slot = 0; slot < permits; slot++) {
+            slots[slot] = locker.handle(name + "_SLOT_" + slot);
+        }
+    }
+
+    /**
+     * Acquires a permit if one is free, does not wait for one
+     *
+     * @param expiryInSeconds the expiry period of the permit, in seconds
+     * @return the slot of the acquired permit, to renew and release it, or null if all permits are held
+     */
+    public LockHandle tryAcquire(int expiryInSeconds) {
+        final int first = ThreadLocalRandom.current().nextInt(slots.length);
+
+        for (int i = 0; i < slots.length; i++) {
+            final LockHandle slot = slots[(first + i) % slots.length];
+
+            if (slot.tryLock(expiryInSeconds)) {
+                logger.debug("Acquired permit [{}] of semaphore [{}]", slot.getLockKey(), name);
+
+                return slot;
+            }
+        }
+
+        logger.info("All {} permits of semaphore [{}] are held", slots.length, name);
+
+        return null;
+    }
+
+    public int getPermits() {
+        return slots.length;
+    }
+}
@@ -0,0 +1,27 @@
+package com.foodpanda.distributedcron;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * A locker which can release locks as handed off, so other nodes waiting for them can retry right away
+ *
+ * A node which shuts down hands off the locks it still holds. Nodes whose attempt on one of those locks failed watch
+ * for the hand-off marker and retry immediately, instead of on their next run, see HandOffWatcher. The marker is
+ * cleared when the lock is acquired again.
+ */
+public interface HandOffLocker extends Locker {
+
+    /**
+     * Releases the locks and marks them as handed off
+     *
+     * @param lockKeys the keys of the locks, held by this process
+     */
+    void handOff(Collection<String> lockKeys);
+
+    /**
+     * @param lockKeys the keys of the locks
+     * @return the keys of the locks which were handed off and not acquired since
+     */
+    Set<String> findHandedOff(Collection<String> lockKeys);
+}
@@ -0,0 +1,108 @@
+package com.foodpanda.distributedcron;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retries runs right away when the lock they could not acquire is handed off by a node shutting down
+ *
+ * Schedulers register their lock whenever an attempt finds it held. The watcher polls the hand-off markers of all
+ * registered locks with a single call per poll, and runs the retry of each lock which was handed off, so the job
+ * fails over within one poll interval instead of waiting for the next run or the expiry of the lock.
+ */
+public class HandOffWatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(HandOffWatcher.class);
+
+    private final HandOffLocker locker;
+
+    private final long pollIntervalMillis;
+
+    private final ScheduledExecutorService pollExecutor;
+
+    private final Map<String, Runnable> retries = new ConcurrentHashMap<>();
+
+    public HandOffWatcher(final HandOffLocker locker, final long pollIntervalMillis) {
+        this(
+            locker,
+            pollIntervalMillis,
+            Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("fleet-cron-hand-off-%d").setDaemon(true).build()
+            )
+        );
+    }
+
+    public HandOffWatcher(
+        final HandOffLocker locker,
+        final long pollIntervalMillis,
+        final ScheduledExecutorService pollExecutor
+    ) {
+        this.locker = locker;
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.pollExecutor = pollExecutor;
+    }
+
+    public void start() {
+        pollExecutor.scheduleWithFixedDelay(this::poll, pollIntervalMillis, pollIntervalMillis, TimeUnit.MILLISECONDS);
+
+        logger.info("Started watching for handed off locks every {}ms", pollIntervalMillis);
+    }
+
+    public void stop() {
+        pollExecutor.shutdown();
+        retries.clear();
+    }
+
+    /**
+     * Runs the retry once, as soon as the lock is handed off. Only the retry registered last is kept for each lock.
+     *
+     * @param lockKey the key of the lock held by another node
+     * @param retry the retry of the run, called on the polling thread, so it should only hand the run over to the
+     * executor of its scheduler
+     */
+    public void watch(String lockKey, Runnable retry) {
+        retries.put(lockKey, retry);
+    }
+
+    /**
+     * Stops watching the lock, e.g. once it was acquired
+     *
+     * @param lockKey the key of the lock
+     */
+    public void unwatch(String lockKey) {
+        retries.remove(lockKey);
+    }
+
+    /**
+     * Runs the retries of all watched locks which were handed off
+     */
+    void poll() {
+        if (retries.isEmpty()) {
+            return;
+        }
+
+        try {
+            final Set<String> handedOff = locker.findHandedOff(retries.keySet());
+
+            for (String lockKey : handedOff) {
+                final Runnable retry = retries.remove(lockKey);
+
+                if (retry != null) {
+                    logger.info("Lock [{}] was handed off, retrying right away", lockKey);
+                    retry.run();
+                }
+            }
+        } catch (Exception ex) { // never let an exception cancel the polling
+            logger.error("Failed to check for handed off locks: ", ex);
+        }
+    }
+}
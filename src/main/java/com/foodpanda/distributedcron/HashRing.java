@@ -0,0 +1,48 @@
+package com.foodpanda.distributedcron;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent hash ring of the fleet members
+ *
+ * Each member is placed on the ring at a number of pseudo-random points, a key belongs to the member owning the first
+ * point at or after the key's hash. Adding or removing a member only moves the keys between that member and its
+ * neighbours, roughly 1/n of all keys, and the virtual points keep the share of each member close to even.
+ */
+class HashRing {
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private final TreeMap<Long, String> ring = new TreeMap<>();
+
+    HashRing(Collection<String> members, int virtualNodesPerMember) {
+        for (String member : members) {
+            for (int i = 0; i < virtualNodesPerMember; i++) {
+                ring.put(hash(member + "#" + i), member);
+            }
+        }
+    }
+
+    /**
+     * @return the member the key belongs to, null if the ring has no members
+     */
+    String ownerOf(String key) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+
+        Map.Entry<Long, String> owner = ring.ceilingEntry(hash(key));
+
+        return owner != null ? owner.getValue() : ring.firstEntry().getValue();
+    }
+
+    private static long hash(String value) {
+        return HASH_FUNCTION.hashString(value, StandardCharsets.UTF_8).asLong();
+    }
+}
@@ -0,0 +1,21 @@
+package com.foodpanda.distributedcron;
+
+/**
+ * A locker whose acquisitions can be repeated safely, e.g. to hedge a slow request with a second one
+ *
+ * An acquisition made with an attempt id succeeds again for the same attempt id, as long as the lock it acquired is
+ * still held, instead of finding the lock held by itself. Attempt ids must be unique per acquisition.
+ */
+public interface IdempotentLocker extends Locker {
+
+    /**
+     * Acquires a lock like tryAcquire, also succeeding if the lock was acquired by the same attempt and not
+     * released since
+     *
+     * @param lockKey the key for the lock
+     * @param expiryInSeconds the expiry period of the lock, in seconds, counted from the latest successful call
+     * @param attemptId identifies the acquisition, the same for all its requests
+     * @return the outcome of the attempt
+     */
+    LockOutcome tryAcquire(String lockKey, int expiryInSeconds, String attemptId);
+}
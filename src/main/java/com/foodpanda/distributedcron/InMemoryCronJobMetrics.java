@@ -0,0 +1,127 @@
+package com.foodpanda.distributedcron;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the metrics of cron jobs in memory, as histograms and counters per lock key and per job
+ *
+ * Meant to be read periodically, e.g. to log them or to publish them to a metrics system, or to be inspected in
+ * tests. The histograms and counters are created on the first measurement of a lock or job, every further
+ * measurement only updates them.
+ */
+public class InMemoryCronJobMetrics implements CronJobMetrics {
+
+    private final Map<String, LatencyHistogram> lockAcquireLatencies = new ConcurrentHashMap<>();
+
+    private final Map<String, Map<LockOutcome, LongAdder>> lockOutcomes = new ConcurrentHashMap<>();
+
+    private final Map<String, LatencyHistogram> unlockLatencies = new ConcurrentHashMap<>();
+
+    private final Map<String, LatencyHistogram> runDurations = new ConcurrentHashMap<>();
+
+    private final Map<String, LongAdder> failedRuns = new ConcurrentHashMap<>();
+
+    private final Map<String, LongAdder> skippedRuns = new ConcurrentHashMap<>();
+
+    private final Map<String, LatencyHistogram> scheduleDrifts = new ConcurrentHashMap<>();
+
+    @Override
+    public void recordLockAcquire(String lockKey, LockOutcome outcome, long latencyNanos) {
+        histogram(lockAcquireLatencies, lockKey).record(latencyNanos);
+
+        Map<LockOutcome, LongAdder> outcomes = lockOutcomes.get(lockKey);
+        if (outcomes == null) {
+            outcomes = lockOutcomes.computeIfAbsent(lockKey, key -> newOutcomeCounters());
+        }
+
+        outcomes.get(outcome).increment();
+    }
+
+    @Override
+    public void recordUnlock(String lockKey, long latencyNanos) {
+        histogram(unlockLatencies, lockKey).record(latencyNanos);
+    }
+
+    @Override
+    public void recordRun(String cronJobDescription, long durationNanos, boolean failed) {
+        histogram(runDurations, cronJobDescription).record(durationNanos);
+
+        if (failed) {
+            counter(failedRuns, cronJobDescription).increment();
+        }
+    }
+
+    @Override
+    public void recordSkippedRun(String cronJobDescription) {
+        counter(skippedRuns, cronJobDescription).increment();
+    }
+
+    @Override
+    public void recordScheduleDrift(String cronJobDescription, long driftNanos) {
+        histogram(scheduleDrifts, cronJobDescription).record(driftNanos);
+    }
+
+    /**
+     * @return the latencies of the attempts to acquire the lock, whatever their outcome
+     */
+    public LatencyHistogram getLockAcquireLatency(String lockKey) {
+        return histogram(lockAcquireLatencies, lockKey);
+    }
+
+    /**
+     * @return how many attempts to acquire the lock had the passed outcome
+     */
+    public long getLockOutcomeCount(String lockKey, LockOutcome outcome) {
+        Map<LockOutcome, LongAdder> outcomes = lockOutcomes.get(lockKey);
+
+        return outcomes == null ? 0 : outcomes.get(outcome).sum();
+    }
+
+    public LatencyHistogram getUnlockLatency(String lockKey) {
+        return histogram(unlockLatencies, lockKey);
+    }
+
+    /**
+     * @return the durations of the runs of the job, including the failed ones
+     */
+    public LatencyHistogram getRunDuration(String cronJobDescription) {
+        return histogram(runDurations, cronJobDescription);
+    }
+
+    public long getFailedRunCount(String cronJobDescription) {
+        return counter(failedRuns, cronJobDescription).sum();
+    }
+
+    public long getSkippedRunCount(String cronJobDescription) {
+        return counter(skippedRuns, cronJobDescription).sum();
+    }
+
+    public LatencyHistogram getScheduleDrift(String cronJobDescription) {
+        return histogram(scheduleDrifts, cronJobDescription);
+    }
+
+    private static LatencyHistogram histogram(Map<String, LatencyHistogram> histograms, String key) {
+        // get first, computeIfAbsent locks the bin of the key even if it's present
+        LatencyHistogram histogram = histograms.get(key);
+
+        return histogram != null ? histogram : histograms.computeIfAbsent(key, k -> new LatencyHistogram());
+    }
+
+    private static LongAdder counter(Map<String, LongAdder> counters, String key) {
+        LongAdder counter = counters.get(key);
+
+        return counter != null ? counter : counters.computeIfAbsent(key, k -> new LongAdder());
+    }
+
+    private static Map<LockOutcome, LongAdder> newOutcomeCounters() {
+        Map<LockOutcome, LongAdder> counters = new EnumMap<>(LockOutcome.class);
+        for (LockOutcome outcome : LockOutcome.values()) {
+            counters.put(outcome, new LongAdder());
+        }
+
+        return counters;
+    }
+}
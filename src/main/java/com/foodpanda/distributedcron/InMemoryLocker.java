@@ -0,0 +1,244 @@
+package com.foodpanda.distributedcron;
+
+import java.time.Clock;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the locks in memory, for a single node deployment, local development and load tests
+ *
+ * The locks are only shared within the JVM, all users of the same instance contend for them. Like with the
+ * DynamoDbLocker, a lock is free again once its expiry has passed, even if it was never released.
+ *
+ * Each lock is an entry of a ConcurrentHashMap, so acquiring and releasing locks only ever contends on the bin of
+ * the lock's key, and locks with different keys scale across cores. Expired locks nobody asks for again are swept
+ * incrementally: every so often an acquisition also checks a few entries, continuing where the previous sweep
+ * stopped, so the map only holds a bounded number of expired locks on top of the held ones and no call ever pays for
+ * a full scan.
+ */
+public class InMemoryLocker
+    implements InspectableLocker, SharedScheduleLocker, HandOffLocker, IdempotentLocker, CheckpointLocker {
+
+    /**
+     * On average, every SWEEP_INTERVAL-th acquisition sweeps
+     */
+    private static final int SWEEP_INTERVAL = 64;
+
+    /**
+     * How many entries a sweep checks, more than SWEEP_INTERVAL so sweeping outpaces the creation of entries
+     */
+    private static final int SWEEP_BATCH = 2 * SWEEP_INTERVAL;
+
+    /**
+     * A released lock which remembers it was handed off, until it is acquired again or swept
+     */
+    private static final Lock HANDED_OFF = new Lock(0, null);
+
+    private final Clock clock;
+
+    private final ConcurrentHashMap<String, Lock> locks = new ConcurrentHashMap<>();
+
+    /**
+     * The shared schedules, only ever changed while the bin of the lock with the same key is locked by a claim
+     */
+    private final Map<String, Long> nextDueAts = new ConcurrentHashMap<>();
+
+    /**
+     * The checkpoints, only ever committed while the bin of the lock with the same key is locked
+     */
+    private final Map<String, String> checkpoints = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+
+    /**
+     * Where the last sweep stopped, only used by the thread which is sweeping
+     */
+    private Iterator<Map.Entry<String, Lock>> sweepCursor;
+
+    public InMemoryLocker() {
+        this(Clock.systemUTC());
+    }
+
+    public InMemoryLocker(final Clock clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public boolean tryLock(String lockKey, int expiryInSeconds) {
+        return tryAcquire(lockKey, expiryInSeconds, null) == LockOutcome.ACQUIRED;
+    }
+
+    @Override
+    public LockOutcome tryAcquire(String lockKey, int expiryInSeconds, String attemptId) {
+        final long now = clock.millis();
+        final Lock requested = new Lock(now + expiryInSeconds * 1000L, attemptId);
+
+        // the requested lock ends up in the map only if no other lock is held, in one atomic step
+        final boolean acquired = locks.merge(
+            lockKey,
+            requested,
+            (held, free) -> held.expiry < now || (attemptId != null && attemptId.equals(held.attemptId)) ? free : held
+        ) == requested;
+
+        if (ThreadLocalRandom.current().nextInt(SWEEP_INTERVAL) == 0) {
+            sweepExpired(now);
+        }
+
+        return acquired ? LockOutcome.ACQUIRED : LockOutcome.CONTENDED;
+    }
+
+    /**
+     * Extends a lock which is still held, all users of this locker count as its owner
+     */
+    @Override
+    public boolean renewLock(String lockKey, int expiryInSeconds) {
+        final long now = clock.millis();
+        final Lock lock = locks.computeIfPresent(
+            lockKey,
+            (key, held) -> held.expiry < now ? held : new Lock(now + expiryInSeconds * 1000L, held.attemptId)
+        );
+
+        return lock != null && lock.expiry >= now;
+    }
+
+    @Override
+    public long getLockExpiry(String lockKey) {
+        final Lock lock = locks.get(lockKey);
+
+        return lock != null ? lock.expiry : 0;
+    }
+
+    @Override
+    public long getNextDueAt(String lockKey) {
+        return nextDueAts.getOrDefault(lockKey, 0L);
+    }
+
+    @Override
+    public LockOutcome claimPeriod(String lockKey, long dueAt, long nextDueAt, int expiryInSeconds) {
+        final long now = clock.millis();
+        final Lock claimed = new Lock(now + expiryInSeconds * 1000L, null);
+
+        final Lock lock = locks.compute(lockKey, (key, held) -> {
+            if ((held != null && held.expiry >= now) || nextDueAts.getOrDefault(key, 0L) != dueAt) {
+                return held;
+            }
+
+            nextDueAts.put(key, nextDueAt);
+
+            return claimed;
+        });
+
+        return lock == claimed ? LockOutcome.ACQUIRED : LockOutcome.CONTENDED;
+    }
+
+    @Override
+    public String readCheckpoint(String lockKey) {
+        return checkpoints.get(lockKey);
+    }
+
+    @Override
+    public Checkpoint tryLockWithCheckpoint(String lockKey, int expiryInSeconds) {
+        return tryLock(lockKey, expiryInSeconds) ? new Checkpoint(this, lockKey, checkpoints.get(lockKey)) : null;
+    }
+
+    /**
+     * Stores the checkpoint if the lock is held, all users of this locker count as its owner
+     */
+    @Override
+    public boolean commitCheckpoint(String lockKey, String checkpoint) {
+        final long now = clock.millis();
+        final AtomicBoolean committed = new AtomicBoolean();
+
+        locks.computeIfPresent(lockKey, (key, held) -> {
+            if (held.expiry >= now) {
+                checkpoints.put(key, checkpoint);
+                committed.set(true);
+            }
+
+            return held;
+        });
+
+        return committed.get();
+    }
+
+    @Override
+    public void unlock(String lockKey) {
+        locks.remove(lockKey);
+    }
+
+    @Override
+    public void handOff(Collection<String> lockKeys) {
+        for (String lockKey : lockKeys) {
+            locks.put(lockKey, HANDED_OFF);
+        }
+    }
+
+    @Override
+    public Set<String> findHandedOff(Collection<String> lockKeys) {
+        final Set<String> handedOff = new HashSet<>();
+
+        for (String lockKey : lockKeys) {
+            if (locks.get(lockKey) == HANDED_OFF) {
+                handedOff.add(lockKey);
+            }
+        }
+
+        return handedOff;
+    }
+
+    /**
+     * @return the number of locks in memory, held or expired but not swept yet
+     */
+    int size() {
+        return locks.size();
+    }
+
+    private void sweepExpired(long now) {
+        if (!sweeping.compareAndSet(false, true)) {
+            // another thread is already sweeping
+            return;
+        }
+
+        try {
+            for (int i = 0; i < SWEEP_BATCH; i++) {
+                if (sweepCursor == null || !sweepCursor.hasNext()) {
+                    sweepCursor = locks.entrySet().iterator();
+
+                    if (!sweepCursor.hasNext()) {
+                        return;
+                    }
+                }
+
+                final Map.Entry<String, Lock> entry = sweepCursor.next();
+
+                if (entry.getValue().expiry < now) {
+                    // only removes the lock if it wasn't acquired again in the meantime
+                    locks.remove(entry.getKey(), entry.getValue());
+                }
+            }
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    private static final class Lock {
+
+        private final long expiry;
+
+        /**
+         * The acquisition which acquired the lock, null if it can't be repeated
+         */
+        private final String attemptId;
+
+        private Lock(long expiry, String attemptId) {
+            this.expiry = expiry;
+            this.attemptId = attemptId;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.foodpanda.distributedcron;
+
+/**
+ * A locker which can tell until when a lock is held, without trying to acquire it
+ */
+public interface InspectableLocker extends Locker {
+
+    /**
+     * Reads the current expiry of a lock, regardless of who holds it
+     *
+     * @param lockKey the key for the lock
+     * @return the epoch millisecond the lock expires at, or 0 if the lock doesn't exist or was released
+     */
+    long getLockExpiry(String lockKey);
+}
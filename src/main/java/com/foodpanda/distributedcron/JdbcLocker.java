@@ -0,0 +1,336 @@
+package com.foodpanda.distributedcron;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import javax.sql.DataSource;
+
+/**
+ * Keeps the locks in a table of a relational database, for services which already have one
+ *
+ * The table has a row per lock, with the attributes of the items of the DynamoDbLocker. The expiry column is named
+ * lock_expiry, since LOCK is a reserved word in some databases:
+ *
+ * <pre>
+ * CREATE TABLE fleet_cron_lock (
+ *     id          VARCHAR(255) PRIMARY KEY,
+ *     lock_expiry BIGINT       NOT NULL,
+ *     owner       VARCHAR(255) NOT NULL,
+ *     created_at  VARCHAR(64)  NOT NULL
+ * )
+ * </pre>
+ *
+ * A lock is acquired with a single conditional UPDATE of its row, which only matches if the lock has expired or was
+ * released, so the database's row lock decides between contending processes, and a lock held by another process
+ * costs one statement which changes nothing. Only the first attempt of this process on a lock whose row it hasn't
+ * seen yet may also INSERT the row, if another process inserted it first, the duplicate key tells that the lock is
+ * held. Rows are never deleted, releasing a lock only resets its expiry, and they must not be deleted by hand while
+ * the fleet is running, since a process which already saw a row takes a missing one for a held lock.
+ *
+ * Each call borrows a connection from the data source and gives it back right away, so the data source should be a
+ * connection pool. Every statement must be committed on its own, so a connection handed out with auto-commit
+ * disabled is switched to auto-commit before it's used. All statements are built once from constant SQL, so pools
+ * caching prepared statements reuse them.
+ */
+public class JdbcLocker implements InspectableLocker {
+
+    private static final Logger logger = LoggerFactory.getLogger(JdbcLocker.class);
+
+    private static final Pattern TABLE_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_.]*");
+
+    /**
+     * SQLSTATE class of integrity constraint violations, which includes duplicate keys
+     */
+    private static final String INTEGRITY_CONSTRAINT_VIOLATION = "23";
+
+    private final DataSource dataSource;
+
+    private final Clock clock;
+
+    private final String ownerId;
+
+    private final String acquireSql;
+
+    private final String insertSql;
+
+    private final String renewSql;
+
+    private final String unlockSql;
+
+    private final String selectExpirySql;
+
+    /**
+     * The environment specific keys of the locks whose row is known to exist
+     */
+    private final Set<String> existingRows = ConcurrentHashMap.newKeySet();
+
+    public JdbcLocker(final DataSource dataSource, final String tableName) {
+        this(dataSource, tableName, Clock.systemUTC(), NodeId.local());
+    }
+
+    /**
+     * @param ownerId identifies this process as the holder of the locks it acquires, only the owner can renew a lock
+     */
+    public JdbcLocker(final DataSource dataSource, final String tableName, final Clock clock, final String ownerId) {
+        if (!TABLE_NAME.matcher(tableName).matches()) {
+            throw new IllegalArgumentException("Invalid lock table name '" + tableName + "'");
+        }
+
+        this.dataSource = dataSource;
+        this.clock = clock;
+        this.ownerId = ownerId;
+
+        this.acquireSql = "UPDATE " + tableName + " SET lock_expiry = ?, owner = ?, created_at = ? WHERE id = ? AND lock_expiry < ?";
+        this.insertSql = "INSERT INTO " + tableName + " (id, lock_expiry, owner, created_at) VALUES (?, ?, ?, ?)";
+        this.renewSql = "UPDATE " + tableName + " SET lock_expiry = ? WHERE id = ? AND owner = ? AND lock_expiry >= ?";
+        this.unlockSql = "UPDATE " + tableName + " SET lock_expiry = 0 WHERE id = ? AND owner = ?";
+        this.selectExpirySql = "SELECT lock_expiry FROM " + tableName + " WHERE id = ?";
+    }
+
+    /**
+     * Acquires a distributed lock, returning true if it was acquired, false otherwise
+     *
+     * @see DynamoDbLocker#tryLock(String, int)
+     */
+    @Override
+    public boolean tryLock(String lockKey, int expiryInSeconds) {
+        return tryAcquire(lockKey, expiryInSeconds) == LockOutcome.ACQUIRED;
+    }
+
+    @Override
+    public LockOutcome tryAcquire(String lockKey, int expiryInSeconds) {
+        lockKey = DynamoDbLocker.getEnvironmentSpecificLockKey(lockKey);
+
+        logger.info("Trying to acquire lock [{}]", lockKey);
+
+        try (
+            Connection connection = getConnection();
+            PreparedStatement statement = connection.prepareStatement(acquireSql)
+        ) {
+            return acquire(connection, statement, lockKey, expiryInSeconds);
+        } catch (Exception ex) { // thrown on any other, unexpected, error of the database or the pool
+            logger.error("Error when trying to aquire lock [{}]: ", lockKey, ex);
+
+            return LockOutcome.ERROR;
+        }
+    }
+
+    /**
+     * Acquires the locks one after another with the same connection and prepared statement
+     */
+    @Override
+    public Set<String> tryLockAll(Collection<String> lockKeys, int expiryInSeconds) {
+        final Set<String> acquired = new LinkedHashSet<>();
+
+        if (lockKeys.isEmpty()) {
+            return acquired;
+        }
+
+        try (
+            Connection connection = getConnection();
+            PreparedStatement statement = connection.prepareStatement(acquireSql)
+        ) {
+            for (String lockKey : lockKeys) {
+                final String environmentSpecificLockKey = DynamoDbLocker.getEnvironmentSpecificLockKey(lockKey);
+
+                if (acquire(connection, statement, environmentSpecificLockKey, expiryInSeconds) == LockOutcome.ACQUIRED) {
+                    acquired.add(lockKey);
+                }
+            }
+        } catch (Exception ex) {
+            logger.error("Error when trying to aquire locks {}: ", lockKeys, ex);
+        }
+
+        return acquired;
+    }
+
+    private LockOutcome acquire(
+        Connection connection,
+        PreparedStatement acquireStatement,
+        String lockKey,
+        int expiryInSeconds
+    ) throws SQLException {
+        final long now = clock.millis();
+        final long expiry = now + (expiryInSeconds * 1000L);
+        final String createdAt = OffsetDateTime.now(clock).toString();
+
+        // take over the lock if it's expired or released
+        acquireStatement.setLong(1, expiry);
+        acquireStatement.setString(2, ownerId);
+        acquireStatement.setString(3, createdAt);
+        acquireStatement.setString(4, lockKey);
+        acquireStatement.setLong(5, now);
+
+        if (acquireStatement.executeUpdate() == 1) {
+            existingRows.add(lockKey);
+            logger.info("Acquired lock [{}]", lockKey);
+
+            return LockOutcome.ACQUIRED;
+        }
+
+        if (existingRows.contains(lockKey)) {
+            logger.info("Could not acquire locked lock [{}]", lockKey);
+
+            return LockOutcome.CONTENDED;
+        }
+
+        // either the lock is held, or it was never acquired and has no row yet
+        try (PreparedStatement statement = connection.prepareStatement(insertSql)) {
+            statement.setString(1, lockKey);
+            statement.setLong(2, expiry);
+            statement.setString(3, ownerId);
+            statement.setString(4, createdAt);
+            statement.executeUpdate();
+            existingRows.add(lockKey);
+
+            logger.info("Acquired lock [{}]", lockKey);
+
+            return LockOutcome.ACQUIRED;
+        } catch (SQLException e) {
+            if (!isDuplicateKey(e)) {
+                throw e;
+            }
+        }
+
+        existingRows.add(lockKey);
+        logger.info("Could not acquire locked lock [{}]", lockKey);
+
+        return LockOutcome.CONTENDED;
+    }
+
+    /**
+     * Extends a lock held by this process, by moving its expiry to now + expiryInSeconds
+     *
+     * The update only matches the row if this process still owns an unexpired lock.
+     */
+    @Override
+    public boolean renewLock(String lockKey, int expiryInSeconds) {
+        lockKey = DynamoDbLocker.getEnvironmentSpecificLockKey(lockKey);
+
+        try (
+            Connection connection = getConnection();
+            PreparedStatement statement = connection.prepareStatement(renewSql)
+        ) {
+            statement.setLong(1, clock.millis() + (expiryInSeconds * 1000L));
+            statement.setString(2, lockKey);
+            statement.setString(3, ownerId);
+            statement.setLong(4, clock.millis());
+
+            if (statement.executeUpdate() == 1) {
+                logger.debug("Renewed lock [{}]", lockKey);
+
+                return true;
+            }
+
+            logger.warn("Could not renew lock [{}], it is no longer held", lockKey);
+        } catch (Exception ex) {
+            logger.error("Error when trying to renew lock [{}]: ", lockKey, ex);
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the epoch millisecond the lock expires at, or 0 if the lock doesn't exist, was released or its expiry
+     * could not be read
+     */
+    @Override
+    public long getLockExpiry(String lockKey) {
+        try (
+            Connection connection = getConnection();
+            PreparedStatement statement = connection.prepareStatement(selectExpirySql)
+        ) {
+            statement.setString(1, DynamoDbLocker.getEnvironmentSpecificLockKey(lockKey));
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getLong(1) : 0;
+            }
+        } catch (Exception ex) {
+            logger.error("Error when trying to read the expiry of lock [{}]: ", lockKey, ex);
+        }
+
+        return 0;
+    }
+
+    /**
+     * Releases the lock if this process owns it, keeping its row so the next acquisition is a single UPDATE
+     */
+    @Override
+    public void unlock(String lockKey) {
+        lockKey = DynamoDbLocker.getEnvironmentSpecificLockKey(lockKey);
+
+        try (
+            Connection connection = getConnection();
+            PreparedStatement statement = connection.prepareStatement(unlockSql)
+        ) {
+            statement.setString(1, lockKey);
+            statement.setString(2, ownerId);
+            statement.executeUpdate();
+
+            logger.info("Released lock [{}]", lockKey);
+        } catch (Exception ex) {
+            logger.error("Error when trying to release lock [{}]: ", lockKey, ex);
+        }
+    }
+
+    /**
+     * Releases the locks with a single JDBC batch
+     */
+    @Override
+    public void unlockAll(Collection<String> lockKeys) {
+        if (lockKeys.isEmpty()) {
+            return;
+        }
+
+        try (
+            Connection connection = getConnection();
+            PreparedStatement statement = connection.prepareStatement(unlockSql)
+        ) {
+            for (String lockKey : lockKeys) {
+                statement.setString(1, DynamoDbLocker.getEnvironmentSpecificLockKey(lockKey));
+                statement.setString(2, ownerId);
+                statement.addBatch();
+            }
+
+            statement.executeBatch();
+
+            logger.info("Released locks {}", lockKeys);
+        } catch (Exception ex) {
+            logger.error("Error when trying to release locks {}: ", lockKeys, ex);
+        }
+    }
+
+    /**
+     * Borrows a connection which commits every statement right away
+     */
+    private Connection getConnection() throws SQLException {
+        final Connection connection = dataSource.getConnection();
+
+        try {
+            if (!connection.getAutoCommit()) {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+
+        return connection;
+    }
+
+    private static boolean isDuplicateKey(SQLException e) {
+        return e.getSQLState() != null && e.getSQLState().startsWith(INTEGRITY_CONSTRAINT_VIOLATION);
+    }
+}
@@ -0,0 +1,15 @@
+package com.foodpanda.distributedcron;
+
+/**
+ * Decides up front which node of the fleet runs a cron job, so the runs themselves don't need to contend for locks
+ */
+public interface JobAssigner {
+
+    /**
+     * Called on every scheduled run, so it has to answer from local state without any remote calls
+     *
+     * @param cronJobDescription the description the scheduler of the job was created with
+     * @return true if this node should run the job now, false otherwise
+     */
+    boolean isAssignedToThisNode(String cronJobDescription);
+}
@@ -0,0 +1,41 @@
+package com.foodpanda.distributedcron;
+
+/**
+ * Handle which just passes its key to the locker on every call, for lockers with nothing to prepare
+ */
+class KeyedLockHandle implements LockHandle {
+
+    private final Locker locker;
+
+    private final String lockKey;
+
+    KeyedLockHandle(Locker locker, String lockKey) {
+        this.locker = locker;
+        this.lockKey = lockKey;
+    }
+
+    @Override
+    public String getLockKey() {
+        return lockKey;
+    }
+
+    @Override
+    public boolean tryLock(int expiryInSeconds) {
+        return locker.tryLock(lockKey, expiryInSeconds);
+    }
+
+    @Override
+    public LockOutcome tryAcquire(int expiryInSeconds) {
+        return locker.tryAcquire(lockKey, expiryInSeconds);
+    }
+
+    @Override
+    public boolean renew(int expiryInSeconds) {
+        return locker.renewLock(lockKey, expiryInSeconds);
+    }
+
+    @Override
+    public void unlock() {
+        locker.unlock(lockKey);
+    }
+}
@@ -0,0 +1,117 @@
+package com.foodpanda.distributedcron;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative values, e.g. latencies in nanoseconds
+ *
+ * Values are counted in log-linear buckets: every power of two range is split into 8 buckets of equal width, so a
+ * percentile is accurate to within 12.5% of the real value, over the whole range of long. Recording a value is a
+ * few bit operations and an atomic increment, it never allocates and never blocks.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder sum = new LongAdder();
+
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+    /**
+     * @param value the value to count, negative values are counted as 0
+     */
+    public void record(long value) {
+        final long nonNegative = Math.max(0L, value);
+
+        counts.incrementAndGet(bucketOf(nonNegative));
+        count.increment();
+        sum.add(nonNegative);
+        max.accumulate(nonNegative);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @return the mean of the recorded values, 0 if none were recorded
+     */
+    public double getMean() {
+        final long recorded = count.sum();
+
+        return recorded == 0 ? 0 : (double) sum.sum() / recorded;
+    }
+
+    /**
+     * Returns the value below or at which the passed percentage of the recorded values fall, e.g. 99 for the p99
+     *
+     * The result is the upper bound of the bucket holding the percentile, but never more than the maximum value
+     * recorded.
+     *
+     * @param percentile between 0 and 100
+     * @return the percentile, 0 if no values were recorded
+     */
+    public long getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("The percentile must be between 0 and 100");
+        }
+
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+
+        if (total == 0) {
+            return 0;
+        }
+
+        final long rank = Math.max(1L, (long) Math.ceil(total * percentile / 100));
+
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), max.get());
+            }
+        }
+
+        return max.get();
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+
+        final int shift = bucket / SUB_BUCKETS - 1;
+        final long lowerBound = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+
+        return lowerBound + (1L << shift) - 1;
+    }
+}
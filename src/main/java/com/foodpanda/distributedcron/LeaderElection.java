@@ -0,0 +1,131 @@
+package com.foodpanda.distributedcron;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Elects a single leader of the fleet, which runs all the cron jobs
+ *
+ * Leadership is a lease on a single fleet-wide lock. The leader renews it in the background, every other node tries
+ * to acquire it on the same heartbeat, so a new leader takes over at most one heartbeat after the lease lapses.
+ * The cost of coordination is one lock call per node per heartbeat, regardless of how many jobs there are and
+ * how often they run.
+ *
+ * A node stops considering itself the leader as soon as it can't be sure its lease is still valid, i.e. one lease
+ * period after the start of its last successful renewal, even before a failed renewal tells it so.
+ */
+public class LeaderElection implements JobAssigner {
+
+    private static final Logger logger = LoggerFactory.getLogger(LeaderElection.class);
+
+    private static final int HEARTBEATS_PER_LEASE = 3;
+
+    private final Locker locker;
+
+    private final String leaderLockKey;
+
+    private final int leaseInSeconds;
+
+    private final ScheduledExecutorService heartbeatExecutor;
+
+    private volatile boolean leader;
+
+    private volatile long leaseValidUntilNanos;
+
+    public LeaderElection(final Locker locker, final String fleetName, final int leaseInSeconds) {
+        this(
+            locker,
+            fleetName,
+            leaseInSeconds,
+            Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("fleet-cron-leader-%d").setDaemon(true).build()
+            )
+        );
+    }
+
+    public LeaderElection(
+        final Locker locker,
+        final String fleetName,
+        final int leaseInSeconds,
+        final ScheduledExecutorService heartbeatExecutor
+    ) {
+        this.locker = locker;
+        this.leaderLockKey = "LEADER_" + fleetName;
+        this.leaseInSeconds = leaseInSeconds;
+        this.heartbeatExecutor = heartbeatExecutor;
+    }
+
+    /**
+     * Starts taking part in the election, the first attempt to become the leader is made right away
+     */
+    public void start() {
+        final long heartbeatMillis = Math.max(1L, leaseInSeconds * 1000L / HEARTBEATS_PER_LEASE);
+
+        heartbeatExecutor.scheduleWithFixedDelay(this::heartbeat, 0, heartbeatMillis, TimeUnit.MILLISECONDS);
+
+        logger.info("Started leader election on [{}] with a lease of {} seconds", leaderLockKey, leaseInSeconds);
+    }
+
+    /**
+     * Stops taking part in the election, releasing the leadership if this node holds it so another node can take
+     * over immediately
+     */
+    public void stop() {
+        heartbeatExecutor.shutdown();
+
+        try {
+            heartbeatExecutor.awaitTermination(leaseInSeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (leader) {
+            leader = false;
+            locker.unlock(leaderLockKey);
+
+            logger.info("Gave up leadership of [{}]", leaderLockKey);
+        }
+    }
+
+    /**
+     * @return true if this node holds a valid leader lease
+     */
+    public boolean isLeader() {
+        return leader && System.nanoTime() - leaseValidUntilNanos < 0;
+    }
+
+    @Override
+    public boolean isAssignedToThisNode(String cronJobDescription) {
+        return isLeader();
+    }
+
+    private void heartbeat() {
+        final long attemptStartedAtNanos = System.nanoTime();
+
+        try {
+            if (leader && locker.renewLock(leaderLockKey, leaseInSeconds)) {
+                leaseValidUntilNanos = attemptStartedAtNanos + TimeUnit.SECONDS.toNanos(leaseInSeconds);
+                return;
+            }
+
+            if (leader) {
+                leader = false;
+                logger.warn("Lost leadership of [{}]", leaderLockKey);
+            }
+
+            if (locker.tryLock(leaderLockKey, leaseInSeconds)) {
+                leaseValidUntilNanos = attemptStartedAtNanos + TimeUnit.SECONDS.toNanos(leaseInSeconds);
+                leader = true;
+                logger.info("Became leader of [{}]", leaderLockKey);
+            }
+        } catch (Exception ex) {
+            logger.error("Error in leader election heartbeat of [{}]: ", leaderLockKey, ex);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.foodpanda.distributedcron;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps short lived locks alive while the work they guard is still running.
+ *
+ * A lock taken with a short expiry is renewed by a background heartbeat, so if the process holding it dies, another
+ * process can take over as soon as the lease lapses, instead of waiting for a worst-case expiry sized for the
+ * longest possible run. The heartbeat runs on its own executor, a long running job occupying the scheduler thread
+ * must not prevent its own lease from being renewed.
+ */
+public class LeaseRenewer {
+
+    private static final Logger logger = LoggerFactory.getLogger(LeaseRenewer.class);
+
+    /**
+     * How many renewals are attempted within one lease period, a single slow or failed heartbeat still leaves
+     * time for the next one before the lease lapses.
+     */
+    private static final int HEARTBEATS_PER_LEASE = 3;
+
+    private final Locker locker;
+
+    private final ScheduledExecutorService heartbeatExecutor;
+
+    public LeaseRenewer(final Locker locker) {
+        this(
+            locker,
+            Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("fleet-cron-lease-%d").setDaemon(true).build()
+            )
+        );
+    }
+
+    public LeaseRenewer(final Locker locker, final ScheduledExecutorService heartbeatExecutor) {
+        this.locker = locker;
+        this.heartbeatExecutor = heartbeatExecutor;
+    }
+
+    /**
+     * Starts renewing an already acquired lock until the returned lease is cancelled
+     *
+     * @param lockKey the key of the lock, which must already be held by this process
+     * @param leaseInSeconds the expiry the lock is renewed with on each heartbeat
+     * @param onLost called at most once, when a renewal fails and the lock can no longer be considered held
+     * @return the running lease
+     */
+    public Lease keepAlive(String lockKey, int leaseInSeconds, Runnable onLost) {
+        final Lease lease = new Lease(lockKey, onLost);
+        final long heartbeatMillis = Math.max(1L, leaseInSeconds * 1000L / HEARTBEATS_PER_LEASE);
+
+        synchronized (lease) {
+            lease.heartbeat = heartbeatExecutor.scheduleWithFixedDelay(
+                () -> lease.renew(leaseInSeconds),
+                heartbeatMillis,
+                heartbeatMillis,
+                TimeUnit.MILLISECONDS
+            );
+        }
+
+        return lease;
+    }
+
+    public void stop() {
+        heartbeatExecutor.shutdown();
+    }
+
+    /**
+     * A lock which is being kept alive by heartbeats
+     */
+    public class Lease {
+
+        private final String lockKey;
+
+        private final Runnable onLost;
+
+        private ScheduledFuture<?> heartbeat;
+
+        private boolean cancelled;
+
+        private volatile boolean lost;
+
+        private Lease(String lockKey, Runnable onLost) {
+            this.lockKey = lockKey;
+            this.onLost = onLost;
+        }
+
+        /**
+         * @return true if a renewal failed, meaning another process may have acquired the lock since
+         */
+        public boolean isLost() {
+            return lost;
+        }
+
+        /**
+         * Stops the heartbeat. Once this returns, the lost callback is guaranteed not to be called anymore.
+         */
+        public synchronized void cancel() {
+            cancelled = true;
+
+            if (heartbeat != null) {
+                heartbeat.cancel(false);
+            }
+        }
+
+        private void renew(int leaseInSeconds) {
+            boolean renewed;
+
+            try {
+                renewed = locker.renewLock(lockKey, leaseInSeconds);
+            } catch (Exception ex) {
+                logger.error("Error when renewing lease of lock [{}]: ", lockKey, ex);
+                renewed = false;
+            }
+
+            if (renewed) {
+                return;
+            }
+
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+
+                logger.warn("Lost lease of lock [{}]", lockKey);
+
+                lost = true;
+                cancel();
+                onLost.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.foodpanda.distributedcron;
+
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Lets the least busy live node of the fleet win the race for a lock, so heavy runs land where there is spare capacity
+ *
+ * Every node publishes a load score with its heartbeat and reads the scores of all live members on every refresh.
+ * Acquiring a lock is a short bidding window: the nodes rank themselves by their published load scores, and each node
+ * waits a share of the window matching its rank before trying the wrapped locker, so the least loaded node tries right
+ * away and usually wins. Nodes with the same score are ranked by a hash of their id and the lock key, so ties are
+ * broken differently for each lock. A node which isn't a live member yet ranks last. The least loaded node, and a node
+ * which sees no other live member, tries right away without waiting.
+ *
+ * The ranking only decides who tries first, the wrapped locker still decides who holds the lock. If the least loaded
+ * node has died, or its scores are stale, the next node acquires the lock at most one share of the window later. The
+ * scores are as old as the last refresh, so a node which won many locks within one refresh interval keeps winning until
+ * its next heartbeat publishes its higher load.
+ */
+public class LoadAwareLocker implements Locker {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadAwareLocker.class);
+
+    private final Locker locker;
+
+    private final Membership membership;
+
+    private final String nodeId;
+
+    private final DoubleSupplier loadScore;
+
+    private final long bidWindowMillis;
+
+    private final long refreshIntervalMillis;
+
+    private final ScheduledExecutorService refreshExecutor;
+
+    private volatile Map<String, Double> loads = Collections.emptyMap();
+
+    /**
+     * Scores the load of this node by its system load average per processor
+     *
+     * @param nodeId the id this node publishes its heartbeats under
+     * @param bidWindowMillis how long the most loaded node waits before trying to acquire a lock
+     * @param refreshIntervalMillis how often to publish the load score and read the scores of the fleet
+     */
+    public LoadAwareLocker(
+        final Locker locker,
+        final Membership membership,
+        final String nodeId,
+        final long bidWindowMillis,
+        final long refreshIntervalMillis
+    ) {
+        this(
+            locker,
+            membership,
+            nodeId,
+            LoadAwareLocker::systemLoadPerProcessor,
+            bidWindowMillis,
+            refreshIntervalMillis,
+            Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("fleet-cron-load-%d").setDaemon(true).build()
+            )
+        );
+    }
+
+    /**
+     * @param loadScore measures how busy this node is, lower means less busy, e.g. the number of runs in flight
+     */
+    public LoadAwareLocker(
+        final Locker locker,
+        final Membership membership,
+        final String nodeId,
+        final DoubleSupplier loadScore,
+        final long bidWindowMillis,
+        final long refreshIntervalMillis,
+        final ScheduledExecutorService refreshExecutor
+    ) {
+        this.locker = locker;
+        this.membership = membership;
+        this.nodeId = nodeId;
+        this.loadScore = loadScore;
+        this.bidWindowMillis = bidWindowMillis;
+        this.refreshIntervalMillis = refreshIntervalMillis;
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    /**
+     * Joins the bidding, the first load score is published and the scores of the fleet are read right away
+     */
+    public void start() {
+        refreshExecutor.scheduleWithFixedDelay(this::refresh, 0, refreshIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Leaves the fleet, so the other nodes stop waiting for this one on their next refresh
+     */
+    public void stop() {
+        refreshExecutor.shutdown();
+
+        try {
+            refreshExecutor.awaitTermination(refreshIntervalMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        loads = Collections.emptyMap();
+        membership.leave();
+    }
+
+    @Override
+    public boolean tryLock(String lockKey, int expiryInSeconds) {
+        return awaitTurn(lockKey) && locker.tryLock(lockKey, expiryInSeconds);
+    }
+
+    @Override
+    public LockOutcome tryAcquire(String lockKey, int expiryInSeconds) {
+        if (!awaitTurn(lockKey)) {
+            return LockOutcome.ERROR;
+        }
+
+        return locker.tryAcquire(lockKey, expiryInSeconds);
+    }
+
+    /**
+     * Waits once, for the turn of the first lock, and then tries all locks together
+     */
+    @Override
+    public Set<String> tryLockAll(Collection<String> lockKeys, int expiryInSeconds) {
+        if (lockKeys.isEmpty() || !awaitTurn(lockKeys.iterator().next())) {
+            return Collections.emptySet();
+        }
+
+        return locker.tryLockAll(lockKeys, expiryInSeconds);
+    }
+
+    @Override
+    public boolean renewLock(String lockKey, int expiryInSeconds) {
+        return locker.renewLock(lockKey, expiryInSeconds);
+    }
+
+    @Override
+    public void unlock(String lockKey) {
+        locker.unlock(lockKey);
+    }
+
+    @Override
+    public void unlockAll(Collection<String> lockKeys) {
+        locker.unlockAll(lockKeys);
+    }
+
+    /**
+     * Looks through to the wrapped locker, claims made through its capabilities don't wait for a bidding window
+     */
+    @Override
+    public <T> T unwrap(Class<T> capability) {
+        return capability.isInstance(this) ? capability.cast(this) : locker.unwrap(capability);
+    }
+
+    /**
+     * @return the load scores of the live members as of the last refresh
+     */
+    public Map<String, Double> getLoads() {
+        return loads;
+    }
+
+    /**
+     * @return how long this node waits before trying to acquire the lock, a share of the bidding window matching the
+     *         rank of this node among the live members, 0 if there is no other live member to let go first
+     */
+    long bidDelayMillis(String lockKey) {
+        final Map<String, Double> currentLoads = loads;
+        final Double ownLoad = currentLoads.get(nodeId);
+        final int otherMembers = currentLoads.size() - (ownLoad != null ? 1 : 0);
+
+        if (otherMembers == 0) {
+            return 0;
+        }
+
+        if (ownLoad == null) {
+            return bidWindowMillis;
+        }
+
+        final long ownTieBreak = tieBreak(nodeId, lockKey);
+        int rank = 0;
+
+        for (Map.Entry<String, Double> member : currentLoads.entrySet()) {
+            final int comparison = Double.compare(member.getValue(), ownLoad);
+
+            if (comparison < 0 || (comparison == 0 && tieBreak(member.getKey(), lockKey) < ownTieBreak)) {
+                rank++;
+            }
+        }
+
+        return bidWindowMillis * rank / otherMembers;
+    }
+
+    void refresh() {
+        try {
+            membership.heartbeat(loadScore.getAsDouble());
+            loads = Collections.unmodifiableMap(membership.readLiveLoads());
+        } catch (Exception ex) {
+            logger.error("Error when refreshing load scores of node [{}]: ", nodeId, ex);
+        }
+    }
+
+    private boolean awaitTurn(String lockKey) {
+        final long delayMillis = bidDelayMillis(lockKey);
+
+        if (delayMillis <= 0) {
+            return true;
+        }
+
+        try {
+            Thread.sleep(delayMillis);
+
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.info("Interrupted while waiting {}ms to bid for lock [{}]", delayMillis, lockKey);
+
+            return false;
+        }
+    }
+
+    private static long tieBreak(String member, String lockKey) {
+        return Hashing.murmur3_128().hashString(member + "/" + lockKey, StandardCharsets.UTF_8).asLong();
+    }
+
+    private static double systemLoadPerProcessor() {
+        final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        final double loadAverage = os.getSystemLoadAverage();
+
+        return loadAverage >= 0 ? loadAverage / os.getAvailableProcessors() : 0.0;
+    }
+}
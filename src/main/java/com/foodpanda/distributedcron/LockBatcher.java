@@ -0,0 +1,135 @@
+package com.foodpanda.distributedcron;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Coalesces lock acquisitions of cron jobs which become due at the same time into a single Locker.tryLockAll call.
+ *
+ * The first acquisition request opens a short collection window, every request arriving within the window joins the
+ * same batch. Jobs firing on the same tick, e.g. on round minutes, therefore share the round-trips to the lock store.
+ *
+ * The batch is acquired on the flush executor, which then completes the future of every request. Whoever waits on a
+ * future should hand the work over to an executor of its own, so one slow job doesn't hold up the rest of the batch.
+ *
+ * A lock key queued more than once in the same window is only acquired for the first request, the others complete as
+ * not acquired, so a single lock never guards two runs.
+ */
+class LockBatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(LockBatcher.class);
+
+    private final Locker locker;
+
+    private final ScheduledExecutorService executorService;
+
+    private final Executor flushExecutor;
+
+    private final long windowMillis;
+
+    private List<Request> pending = new ArrayList<>();
+
+    /**
+     * @param executorService closes the collection windows
+     * @param flushExecutor acquires the batches
+     */
+    LockBatcher(Locker locker, ScheduledExecutorService executorService, Executor flushExecutor, long windowMillis) {
+        this.locker = locker;
+        this.executorService = executorService;
+        this.flushExecutor = flushExecutor;
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * Queues the lock for acquisition in the current batch
+     *
+     * @param lockKey the key for the lock
+     * @param expiryInSeconds the expiry period of the lock, in seconds
+     * @return completes with true once the lock was acquired, whoever continues with it is responsible for releasing
+     * it, with false if it wasn't, or exceptionally if the batch could not be acquired
+     */
+    CompletableFuture<Boolean> acquire(String lockKey, int expiryInSeconds) {
+        final Request request = new Request(lockKey, expiryInSeconds);
+        boolean opensWindow;
+
+        synchronized (this) {
+            opensWindow = pending.isEmpty();
+            pending.add(request);
+        }
+
+        if (opensWindow) {
+            executorService.schedule(() -> flushExecutor.execute(this::flush), windowMillis, TimeUnit.MILLISECONDS);
+        }
+
+        return request.acquired;
+    }
+
+    private void flush() {
+        List<Request> batch;
+
+        synchronized (this) {
+            batch = pending;
+            pending = new ArrayList<>();
+        }
+
+        final Map<String, Request> requestsByKey = new LinkedHashMap<>();
+        for (Request request : batch) {
+            if (requestsByKey.putIfAbsent(request.lockKey, request) != null) {
+                logger.info("Lock [{}] is already queued in this batch", request.lockKey);
+                request.acquired.complete(false);
+            }
+        }
+
+        Map<Integer, List<Request>> requestsByExpiry = requestsByKey.values().stream().collect(
+            Collectors.groupingBy(request -> request.expiryInSeconds, LinkedHashMap::new, Collectors.toList())
+        );
+
+        for (Map.Entry<Integer, List<Request>> entry : requestsByExpiry.entrySet()) {
+            Set<String> acquired;
+
+            try {
+                acquired = locker.tryLockAll(
+                    entry.getValue().stream().map(request -> request.lockKey).collect(Collectors.toList()),
+                    entry.getKey()
+                );
+            } catch (Exception ex) {
+                logger.error("Error when acquiring a batch of {} locks: ", entry.getValue().size(), ex);
+                entry.getValue().forEach(request -> request.acquired.completeExceptionally(ex));
+                continue;
+            }
+
+            for (Request request : entry.getValue()) {
+                if (!acquired.contains(request.lockKey)) {
+                    logger.info("Could not acquire lock [{}] in batch", request.lockKey);
+                }
+
+                request.acquired.complete(acquired.contains(request.lockKey));
+            }
+        }
+    }
+
+    private static class Request {
+
+        private final String lockKey;
+
+        private final int expiryInSeconds;
+
+        private final CompletableFuture<Boolean> acquired = new CompletableFuture<>();
+
+        private Request(String lockKey, int expiryInSeconds) {
+            this.lockKey = lockKey;
+            this.expiryInSeconds = expiryInSeconds;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.foodpanda.distributedcron;
+
+/**
+ * A single lock of a locker, resolved once and then acquired and released over and over, e.g. on every run of a job
+ *
+ * Lockers can prepare whatever doesn't change between calls when the handle is created, like the key the lock is
+ * stored under, so each call only has to fill in what does change, like the current time.
+ *
+ * @see Locker#handle(String)
+ */
+public interface LockHandle {
+
+    /**
+     * @return the key of the lock, as passed to Locker.handle
+     */
+    String getLockKey();
+
+    /**
+     * @see Locker#tryLock(String, int)
+     */
+    default boolean tryLock(int expiryInSeconds) {
+        return tryAcquire(expiryInSeconds) == LockOutcome.ACQUIRED;
+    }
+
+    /**
+     * @see Locker#tryAcquire(String, int)
+     */
+    LockOutcome tryAcquire(int expiryInSeconds);
+
+    /**
+     * @see Locker#renewLock(String, int)
+     */
+    boolean renew(int expiryInSeconds);
+
+    /**
+     * @see Locker#unlock(String)
+     */
+    void unlock();
+}
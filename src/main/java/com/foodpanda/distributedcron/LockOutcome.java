@@ -0,0 +1,28 @@
+package com.foodpanda.distributedcron;
+
+/**
+ * Outcome of an attempt to acquire a lock
+ */
+public enum LockOutcome {
+
+    /**
+     * The lock was acquired
+     */
+    ACQUIRED,
+
+    /**
+     * The lock is held by someone else
+     */
+    CONTENDED,
+
+    /**
+     * The lock store failed to answer, whether the lock is held is unknown
+     */
+    ERROR,
+
+    /**
+     * The lock store rejected the attempt for exceeding its capacity, or it was not made while backing off from that,
+     * whether the lock is held is unknown
+     */
+    THROTTLED
+}
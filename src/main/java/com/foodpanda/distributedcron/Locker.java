@@ -1,5 +1,9 @@
 package com.foodpanda.distributedcron;
 
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
 public interface Locker {
 
     /**
@@ -12,10 +16,95 @@ public interface Locker {
      */
     boolean tryLock(String lockKey, int expiryInSeconds);
 
+    /**
+     * Acquires a lock like tryLock, but tells apart a lock held by someone else from a failure of the lock store
+     *
+     * @param lockKey the key for the lock
+     * @param expiryInSeconds the expiry period of the lock, in seconds
+     * @return the outcome of the attempt
+     */
+    default LockOutcome tryAcquire(String lockKey, int expiryInSeconds) {
+        return tryLock(lockKey, expiryInSeconds) ? LockOutcome.ACQUIRED : LockOutcome.CONTENDED;
+    }
+
+    /**
+     * Acquires as many of the passed locks as possible, all with the same expiry period in seconds. Each lock is
+     * acquired or not independently of the others, exactly as if tryLock was called for each of them.
+     *
+     * Lockers backed by a remote store should override this to save round-trips when many locks are due at once.
+     *
+     * @param lockKeys the keys of the locks
+     * @param expiryInSeconds the expiry period of the locks, in seconds
+     * @return the keys of the locks which were acquired
+     */
+    default Set<String> tryLockAll(Collection<String> lockKeys, int expiryInSeconds) {
+        Set<String> acquired = new LinkedHashSet<>();
+
+        for (String lockKey : lockKeys) {
+            if (tryLock(lockKey, expiryInSeconds)) {
+                acquired.add(lockKey);
+            }
+        }
+
+        return acquired;
+    }
+
+    /**
+     * Extends the expiry of a lock which is still held by this process, returning true if it was extended,
+     * false otherwise. A lock which has already expired, or was taken over by another process, is never extended.
+     *
+     * Lockers which can't tell who holds a lock don't support renewal and always return false.
+     *
+     * @param lockKey the key for the lock
+     * @param expiryInSeconds the new expiry period of the lock, in seconds, counted from now
+     * @return true if the lock is still held and its expiry was extended, false otherwise
+     */
+    default boolean renewLock(String lockKey, int expiryInSeconds) {
+        return false;
+    }
+
+    /**
+     * Resolves a lock which is going to be acquired and released repeatedly, so work which is the same on every call
+     * is only done once
+     *
+     * @param lockKey the key for the lock
+     * @return the handle of the lock
+     */
+    default LockHandle handle(String lockKey) {
+        return new KeyedLockHandle(this, lockKey);
+    }
+
+    /**
+     * Looks up an optional capability, e.g. SharedScheduleLocker, of this locker or of the locker it decorates
+     *
+     * Decorators override this to look through to the locker they wrap, so wrapping a locker doesn't hide what it
+     * supports. Calls made through the returned capability go straight to the locker implementing it, bypassing the
+     * decorators in between.
+     *
+     * @param capability the interface of the capability
+     * @return the locker implementing the capability, or null if none does
+     */
+    default <T> T unwrap(Class<T> capability) {
+        return capability.isInstance(this) ? capability.cast(this) : null;
+    }
+
     /**
      * Release a distributed lock
      *
      * @param lockKey the key for the lock
      */
     void unlock(String lockKey);
+
+    /**
+     * Releases all the passed locks, exactly as if unlock was called for each of them
+     *
+     * Lockers backed by a remote store should override this to release the locks in as few round-trips as possible.
+     *
+     * @param lockKeys the keys of the locks
+     */
+    default void unlockAll(Collection<String> lockKeys) {
+        for (String lockKey : lockKeys) {
+            unlock(lockKey);
+        }
+    }
 }
@@ -0,0 +1,51 @@
+package com.foodpanda.distributedcron;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps track of the nodes of the fleet which are alive, each node announces itself by heartbeats
+ */
+public interface Membership {
+
+    /**
+     * Announces this node as alive for another membership expiry period
+     */
+    void heartbeat();
+
+    /**
+     * Announces this node as alive like heartbeat, publishing how busy it is along with it
+     *
+     * Memberships which don't keep load scores publish a plain heartbeat.
+     *
+     * @param load the load score of this node, lower means less busy
+     */
+    default void heartbeat(double load) {
+        heartbeat();
+    }
+
+    /**
+     * @return the ids of all nodes whose last heartbeat hasn't expired yet
+     */
+    Set<String> readLiveMembers();
+
+    /**
+     * @return the ids of all live nodes with the load score of their last heartbeat, 0 for nodes which didn't publish
+     *         one
+     */
+    default Map<String, Double> readLiveLoads() {
+        Map<String, Double> loads = new HashMap<>();
+
+        for (String member : readLiveMembers()) {
+            loads.put(member, 0.0);
+        }
+
+        return loads;
+    }
+
+    /**
+     * Removes this node from the live members right away, instead of letting its last heartbeat expire
+     */
+    void leave();
+}
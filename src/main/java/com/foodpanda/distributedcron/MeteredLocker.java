@@ -0,0 +1,141 @@
+package com.foodpanda.distributedcron;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Measures the latency and outcome of every lock acquisition and release of the wrapped locker
+ *
+ * Acquisitions are made with Locker.tryAcquire, so lockers able to tell a held lock from a failed request, like the
+ * DynamoDbLocker, report both outcomes separately. For tryLockAll, every lock of the batch is reported with the
+ * latency of the whole batch.
+ */
+public class MeteredLocker implements Locker {
+
+    private final Locker locker;
+
+    private final CronJobMetrics metrics;
+
+    public MeteredLocker(final Locker locker, final CronJobMetrics metrics) {
+        this.locker = locker;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public boolean tryLock(String lockKey, int expiryInSeconds) {
+        return tryAcquire(lockKey, expiryInSeconds) == LockOutcome.ACQUIRED;
+    }
+
+    @Override
+    public LockOutcome tryAcquire(String lockKey, int expiryInSeconds) {
+        final long start = System.nanoTime();
+        LockOutcome outcome = LockOutcome.ERROR;
+
+        try {
+            outcome = locker.tryAcquire(lockKey, expiryInSeconds);
+
+            return outcome;
+        } finally {
+            metrics.recordLockAcquire(lockKey, outcome, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Set<String> tryLockAll(Collection<String> lockKeys, int expiryInSeconds) {
+        final long start = System.nanoTime();
+        Set<String> acquired = null;
+
+        try {
+            acquired = locker.tryLockAll(lockKeys, expiryInSeconds);
+
+            return acquired;
+        } finally {
+            final long latencyNanos = System.nanoTime() - start;
+
+            for (String lockKey : new LinkedHashSet<>(lockKeys)) {
+                final LockOutcome outcome = acquired == null
+                    ? LockOutcome.ERROR
+                    : acquired.contains(lockKey) ? LockOutcome.ACQUIRED : LockOutcome.CONTENDED;
+
+                metrics.recordLockAcquire(lockKey, outcome, latencyNanos);
+            }
+        }
+    }
+
+    /**
+     * Measures the calls of the wrapped locker's own handle, so whatever it prepared up front is kept
+     */
+    @Override
+    public LockHandle handle(String lockKey) {
+        return new MeteredLockHandle(locker.handle(lockKey));
+    }
+
+    @Override
+    public boolean renewLock(String lockKey, int expiryInSeconds) {
+        return locker.renewLock(lockKey, expiryInSeconds);
+    }
+
+    /**
+     * Looks through to the wrapped locker, calls made through its capabilities are not measured
+     */
+    @Override
+    public <T> T unwrap(Class<T> capability) {
+        return capability.isInstance(this) ? capability.cast(this) : locker.unwrap(capability);
+    }
+
+    @Override
+    public void unlock(String lockKey) {
+        final long start = System.nanoTime();
+
+        try {
+            locker.unlock(lockKey);
+        } finally {
+            metrics.recordUnlock(lockKey, System.nanoTime() - start);
+        }
+    }
+
+    private final class MeteredLockHandle implements LockHandle {
+
+        private final LockHandle handle;
+
+        private MeteredLockHandle(LockHandle handle) {
+            this.handle = handle;
+        }
+
+        @Override
+        public String getLockKey() {
+            return handle.getLockKey();
+        }
+
+        @Override
+        public LockOutcome tryAcquire(int expiryInSeconds) {
+            final long start = System.nanoTime();
+            LockOutcome outcome = LockOutcome.ERROR;
+
+            try {
+                outcome = handle.tryAcquire(expiryInSeconds);
+
+                return outcome;
+            } finally {
+                metrics.recordLockAcquire(handle.getLockKey(), outcome, System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public boolean renew(int expiryInSeconds) {
+            return handle.renew(expiryInSeconds);
+        }
+
+        @Override
+        public void unlock() {
+            final long start = System.nanoTime();
+
+            try {
+                handle.unlock();
+            } finally {
+                metrics.recordUnlock(handle.getLockKey(), System.nanoTime() - start);
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.foodpanda.distributedcron;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Identifies the process running the cron jobs within the fleet.
+ *
+ * The default identity is the JVM name, which is in the form of "pid@hostname" on common JVMs. It is stable for the
+ * lifetime of the process and unique across the fleet, which is all the lock owner tracking needs.
+ */
+public final class NodeId {
+
+    private static final String LOCAL = ManagementFactory.getRuntimeMXBean().getName();
+
+    private NodeId() {
+    }
+
+    /**
+     * @return the identity of the current process
+     */
+    public static String local() {
+        return LOCAL;
+    }
+}
@@ -0,0 +1,17 @@
+package com.foodpanda.distributedcron;
+
+/**
+ * A job whose work is split into a fixed number of partitions, which can be processed independently of each other,
+ * e.g. by different nodes of the fleet
+ */
+@FunctionalInterface
+public interface PartitionedJob {
+
+    /**
+     * Processes one partition of the work, e.g. the rows whose id modulo partitionCount is partition
+     *
+     * @param partition the partition to process, from 0 to partitionCount - 1
+     * @param partitionCount the number of partitions the work is split into
+     */
+    void run(int partition, int partitionCount);
+}
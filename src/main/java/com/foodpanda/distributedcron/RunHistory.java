@@ -0,0 +1,36 @@
+package com.foodpanda.distributedcron;
+
+import java.util.List;
+
+/**
+ * Keeps an audit trail of the runs of the jobs of the fleet
+ *
+ * Recording is called on the thread of every run, so it must be cheap, e.g. by only buffering the record and
+ * persisting it in the background.
+ */
+public interface RunHistory {
+
+    /**
+     * Records a run of a job on this node, including the runs which were due but did not run
+     *
+     * @param jobDescription the description of the job
+     * @param outcome whether the job ran, and if so whether it succeeded
+     * @param startedAt when the run started, in epoch millis, or when it was skipped or contended
+     * @param finishedAt when the run finished, in epoch millis, the same as startedAt if the job did not run
+     * @param failure the exception the run failed with, null if it didn't fail
+     */
+    void record(String jobDescription, RunOutcome outcome, long startedAt, long finishedAt, Throwable failure);
+
+    /**
+     * @param jobDescription the description of the job
+     * @param limit the maximum number of runs returned
+     * @return the latest runs of the job on any node, latest first
+     */
+    List<RunRecord> getRecentRuns(String jobDescription, int limit);
+
+    /**
+     * Persists the runs recorded so far, before returning
+     */
+    default void flush() {
+    }
+}
@@ -0,0 +1,27 @@
+package com.foodpanda.distributedcron;
+
+/**
+ * Outcome of a run of a job on one node, as kept by a RunHistory
+ */
+public enum RunOutcome {
+
+    /**
+     * The job ran and returned normally
+     */
+    SUCCEEDED,
+
+    /**
+     * The job ran and threw an exception
+     */
+    FAILED,
+
+    /**
+     * The job did not run, because its previous run on this node was still going or there was no capacity to run it
+     */
+    SKIPPED,
+
+    /**
+     * The job did not run, because another node held its lock
+     */
+    CONTENDED
+}
@@ -0,0 +1,81 @@
+package com.foodpanda.distributedcron;
+
+/**
+ * One run of a job on one node, as kept by a RunHistory
+ */
+public final class RunRecord {
+
+    private final String jobDescription;
+
+    private final String nodeId;
+
+    private final RunOutcome outcome;
+
+    private final long startedAt;
+
+    private final long finishedAt;
+
+    private final String exceptionClass;
+
+    /**
+     * @param startedAt when the run started, in epoch millis, or when it was skipped or contended
+     * @param finishedAt when the run finished, in epoch millis, the same as startedAt if the job did not run
+     * @param exceptionClass the class of the exception the run failed with, null if it didn't fail
+     */
+    public RunRecord(
+        String jobDescription,
+        String nodeId,
+        RunOutcome outcome,
+        long startedAt,
+        long finishedAt,
+        String exceptionClass
+    ) {
+        this.jobDescription = jobDescription;
+        this.nodeId = nodeId;
+        this.outcome = outcome;
+        this.startedAt = startedAt;
+        this.finishedAt = finishedAt;
+        this.exceptionClass = exceptionClass;
+    }
+
+    public String getJobDescription() {
+        return jobDescription;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public RunOutcome getOutcome() {
+        return outcome;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+
+    public long getDurationMillis() {
+        return finishedAt - startedAt;
+    }
+
+    public boolean isFailed() {
+        return outcome == RunOutcome.FAILED;
+    }
+
+    /**
+     * @return the class of the exception the run failed with, null if it didn't fail
+     */
+    public String getExceptionClass() {
+        return exceptionClass;
+    }
+
+    @Override
+    public String toString() {
+        return "RunRecord{job='" + jobDescription + "', node='" + nodeId + "', outcome=" + outcome + ", startedAt=" + startedAt
+            + ", finishedAt=" + finishedAt + ", exceptionClass=" + exceptionClass + "}";
+    }
+}
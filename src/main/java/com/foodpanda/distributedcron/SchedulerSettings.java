@@ -0,0 +1,53 @@
+package com.foodpanda.distributedcron;
+
+import java.time.Clock;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * What the schedulers of a factory share, filled in by the factory for every scheduler it creates
+ *
+ * Only locker and scheduledExecutorService are required, every other setting left null turns its feature off.
+ */
+final class SchedulerSettings {
+
+    final Locker locker;
+
+    final ScheduledExecutorService scheduledExecutorService;
+
+    /**
+     * Tells the time of the lock store, to compare against the expiries and due times stored with the locks
+     */
+    Clock clock = Clock.systemUTC();
+
+    LeaseRenewer leaseRenewer;
+
+    LockBatcher lockBatcher;
+
+    JobAssigner jobAssigner;
+
+    Executor runExecutor;
+
+    AsyncLocker asyncLocker;
+
+    CronJobMetrics metrics = CronJobMetrics.NONE;
+
+    /**
+     * The upper bound of the delay added to the runs of each job, 0 for no jitter
+     */
+    long maxJitterMillis;
+
+    /**
+     * Identifies this node to derive the jitter of its jobs from
+     */
+    String jitterNodeId = NodeId.local();
+
+    RunHistory runHistory;
+
+    HandOffWatcher handOffWatcher;
+
+    SchedulerSettings(Locker locker, ScheduledExecutorService scheduledExecutorService) {
+        this.locker = locker;
+        this.scheduledExecutorService = scheduledExecutorService;
+    }
+}
@@ -0,0 +1,34 @@
+package com.foodpanda.distributedcron;
+
+/**
+ * A locker which also stores when a job is due next, so the whole fleet follows one schedule per job
+ *
+ * Instead of every node trying to lock the job on its own timer, nodes read when the job is due, wait until then, and
+ * claim that one period. The claim atomically acquires the lock and moves the due time on to the next period, so a
+ * period is claimed by exactly one node, no matter how far the timers of the nodes drift apart.
+ *
+ * The schedule is kept next to the lock itself, locking and unlocking it with the other methods leaves it alone.
+ */
+public interface SharedScheduleLocker extends Locker {
+
+    /**
+     * Reads when the job guarded by the lock is due next
+     *
+     * @param lockKey the key for the lock
+     * @return the epoch millisecond of the next due time, or 0 if no period was ever claimed
+     */
+    long getNextDueAt(String lockKey);
+
+    /**
+     * Claims the period due at dueAt: acquires the lock and moves the due time to nextDueAt, but only if the due time
+     * is still dueAt and the lock is free
+     *
+     * @param lockKey the key for the lock
+     * @param dueAt the due time read with getNextDueAt, 0 to claim the very first period
+     * @param nextDueAt the epoch millisecond the period after this one is due at
+     * @param expiryInSeconds the expiry period of the lock, in seconds
+     * @return ACQUIRED if this process claimed the period, CONTENDED if it was claimed by another process or the
+     * lock is held, ERROR if the lock store failed
+     */
+    LockOutcome claimPeriod(String lockKey, long dueAt, long nextDueAt, int expiryInSeconds);
+}
@@ -0,0 +1,454 @@
+package com.foodpanda.distributedcron;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounds the latency of every call to the wrapped locker, so a slow lock store can't hold up the scheduling of jobs
+ *
+ * Every call is made on a separate thread and waited for at most the timeout. An acquisition which times out counts
+ * as not acquired, and is released as soon as it completes in the background, should it have acquired the lock after
+ * all. A renewal which times out counts as failed, a release which times out is left to complete in the background.
+ * The calls are made by a bounded pool, so a lock store which stops answering can't pile up threads. A call the pool
+ * has no room for fails right away.
+ *
+ * With a hedge delay, an acquisition which hasn't completed after the delay is hedged with a second request, and the
+ * first answer wins. Both requests use the same attempt id, so the second one succeeds if the first one acquired the
+ * lock, which requires the wrapped locker to be an IdempotentLocker.
+ *
+ * A circuit breaker counts consecutive failed calls, i.e. errors, throttling and timeouts. After failureThreshold of
+ * them, it opens and all acquisitions and renewals fail fast, until openMillis passed. A single trial call is then
+ * let through, which closes the breaker again if it succeeds, or opens it again if not. Releases are always made, a
+ * lock which isn't released holds up its job on every node until it expires, but they only count towards the
+ * breaker while it's closed.
+ */
+public class TimeLimitedLocker implements Locker {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimeLimitedLocker.class);
+
+    private static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+    private static final long DEFAULT_OPEN_MILLIS = 10000;
+
+    private static final int DEFAULT_CALL_THREADS = 16;
+
+    /**
+     * How many calls wait for a thread of the default pool, beyond that calls fail right away
+     */
+    private static final int DEFAULT_CALL_QUEUE_CAPACITY = 64;
+
+    public enum State {
+
+        /**
+         * Calls are made to the wrapped locker
+         */
+        CLOSED,
+
+        /**
+         * Calls fail fast, without calling the wrapped locker
+         */
+        OPEN,
+
+        /**
+         * A single trial call is made to the wrapped locker, others fail fast
+         */
+        HALF_OPEN
+    }
+
+    private final Locker locker;
+
+    private final long timeoutMillis;
+
+    private final long hedgeDelayMillis;
+
+    private final int failureThreshold;
+
+    private final long openMillis;
+
+    private final ExecutorService callExecutor;
+
+    private final Clock clock;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    private volatile long openUntil;
+
+    private final Map<State, LongAdder> callCounts = new EnumMap<>(State.class);
+
+    private final LongAdder timeoutCount = new LongAdder();
+
+    private final LongAdder hedgeCount = new LongAdder();
+
+    private final LongAdder rejectedCount = new LongAdder();
+
+    public TimeLimitedLocker(final Locker locker, final long timeoutMillis) {
+        this(locker, timeoutMillis, 0);
+    }
+
+    /**
+     * @param hedgeDelayMillis how long an acquisition waits before hedging with a second request, 0 to never hedge
+     */
+    public TimeLimitedLocker(final Locker locker, final long timeoutMillis, final long hedgeDelayMillis) {
+        this(
+            locker,
+            timeoutMillis,
+            hedgeDelayMillis,
+            DEFAULT_FAILURE_THRESHOLD,
+            DEFAULT_OPEN_MILLIS,
+            newBoundedCallPool(),
+            Clock.systemUTC()
+        );
+    }
+
+    /**
+     * @param timeoutMillis how long a call is waited for
+     * @param hedgeDelayMillis how long an acquisition waits before hedging with a second request, 0 to never hedge
+     * @param failureThreshold how many consecutive failed calls open the circuit breaker
+     * @param openMillis how long the circuit breaker stays open before a trial call
+     * @param callExecutor makes the calls to the wrapped locker, up to a thread per concurrent call, should be bounded
+     * @throws IllegalArgumentException if hedging is enabled but the locker is not an IdempotentLocker
+     */
+    public TimeLimitedLocker(
+        final Locker locker,
+        final long timeoutMillis,
+        final long hedgeDelayMillis,
+        final int failureThreshold,
+        final long openMillis,
+        final ExecutorService callExecutor,
+        final Clock clock
+    ) {
+        if (hedgeDelayMillis > 0 && !(locker instanceof IdempotentLocker)) {
+            throw new IllegalArgumentException("Hedging requires an IdempotentLocker");
+        }
+
+        this.locker = locker;
+        this.timeoutMillis = timeoutMillis;
+        this.hedgeDelayMillis = hedgeDelayMillis;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+        this.callExecutor = callExecutor;
+        this.clock = clock;
+
+        for (State callState : State.values()) {
+            callCounts.put(callState, new LongAdder());
+        }
+    }
+
+    @Override
+    public boolean tryLock(String lockKey, int expiryInSeconds) {
+        return tryAcquire(lockKey, expiryInSeconds) == LockOutcome.ACQUIRED;
+    }
+
+    @Override
+    public LockOutcome tryAcquire(String lockKey, int expiryInSeconds) {
+        final State callState = admit();
+        if (callState == null) {
+            logger.debug("Not trying to acquire lock [{}] while the lock store is unhealthy", lockKey);
+
+            return LockOutcome.ERROR;
+        }
+
+        final LockOutcome outcome = new Acquisition(lockKey, expiryInSeconds).run();
+        recordResult(callState, outcome == LockOutcome.ACQUIRED || outcome == LockOutcome.CONTENDED);
+
+        return outcome;
+    }
+
+    @Override
+    public boolean renewLock(String lockKey, int expiryInSeconds) {
+        final State callState = admit();
+        if (callState == null) {
+            return false;
+        }
+
+        try {
+            final boolean renewed = CompletableFuture
+                .supplyAsync(() -> locker.renewLock(lockKey, expiryInSeconds), callExecutor)
+                .get(timeoutMillis, TimeUnit.MILLISECONDS);
+            recordResult(callState, true);
+
+            return renewed;
+        } catch (TimeoutException e) {
+            timeoutCount.increment();
+            logger.warn("Renewing lock [{}] timed out after {}ms", lockKey, timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception ex) {
+            logger.error("Error when trying to renew lock [{}]: ", lockKey, ex);
+        }
+
+        recordResult(callState, false);
+
+        return false;
+    }
+
+    /**
+     * Releases the lock even while the circuit breaker is open, without the release being the trial call
+     */
+    @Override
+    public void unlock(String lockKey) {
+        final State callState = state.get() == State.CLOSED ? admit() : null;
+
+        try {
+            CompletableFuture
+                .runAsync(() -> locker.unlock(lockKey), callExecutor)
+                .get(timeoutMillis, TimeUnit.MILLISECONDS);
+            recordUnlockResult(callState, true);
+
+            return;
+        } catch (TimeoutException e) {
+            timeoutCount.increment();
+            logger.warn("Releasing lock [{}] timed out after {}ms, still trying in the background", lockKey, timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception ex) {
+            logger.error("Error when trying to release lock [{}]: ", lockKey, ex);
+        }
+
+        recordUnlockResult(callState, false);
+    }
+
+    /**
+     * Looks through to the wrapped locker, the calls of its capabilities are not time limited
+     */
+    @Override
+    public <T> T unwrap(Class<T> capability) {
+        return capability.isInstance(this) ? capability.cast(this) : locker.unwrap(capability);
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    /**
+     * @return the number of calls made to the wrapped locker while the circuit breaker was in the state
+     */
+    public long getCallCount(State callState) {
+        return callCounts.get(callState).sum();
+    }
+
+    /**
+     * @return the number of calls which failed fast because the circuit breaker was open
+     */
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.sum();
+    }
+
+    /**
+     * @return the number of acquisitions which were hedged with a second request
+     */
+    public long getHedgeCount() {
+        return hedgeCount.sum();
+    }
+
+    /**
+     * Decides whether a call is made to the wrapped locker
+     *
+     * @return the state of the circuit breaker the call is made in, null if the call must fail fast
+     */
+    private State admit() {
+        final State current = state.get();
+
+        if (current == State.OPEN && clock.millis() >= openUntil && state.compareAndSet(State.OPEN, State.HALF_OPEN)) {
+            logger.info("Trying the lock store again after the circuit breaker was open for {}ms", openMillis);
+            callCounts.get(State.HALF_OPEN).increment();
+
+            return State.HALF_OPEN;
+        }
+
+        if (current != State.CLOSED) {
+            rejectedCount.increment();
+
+            return null;
+        }
+
+        callCounts.get(State.CLOSED).increment();
+
+        return State.CLOSED;
+    }
+
+    private void recordUnlockResult(State callState, boolean succeeded) {
+        if (callState != null) {
+            recordResult(callState, succeeded);
+        }
+    }
+
+    private void recordResult(State callState, boolean succeeded) {
+        if (succeeded) {
+            consecutiveFailures.set(0);
+
+            if (callState == State.HALF_OPEN && state.compareAndSet(State.HALF_OPEN, State.CLOSED)) {
+                logger.info("Closed the circuit breaker, the lock store is healthy again");
+            }
+
+            return;
+        }
+
+        if (callState == State.HALF_OPEN || consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            openUntil = clock.millis() + openMillis;
+
+            if (state.getAndSet(State.OPEN) != State.OPEN) {
+                logger.warn("Opened the circuit breaker after {} failed lock calls, failing fast for {}ms",
+                    consecutiveFailures.get(),
+                    openMillis
+                );
+            }
+        }
+    }
+
+    private static ExecutorService newBoundedCallPool() {
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(
+            DEFAULT_CALL_THREADS,
+            DEFAULT_CALL_THREADS,
+            60L,
+            TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(DEFAULT_CALL_QUEUE_CAPACITY),
+            new ThreadFactoryBuilder().setNameFormat("fleet-cron-lock-call-%d").setDaemon(true).build()
+        );
+        pool.allowCoreThreadTimeOut(true);
+
+        return pool;
+    }
+
+    /**
+     * One acquisition, made of one or two requests with the same attempt id
+     */
+    private final class Acquisition {
+
+        private final String lockKey;
+
+        private final int expiryInSeconds;
+
+        private final String attemptId = UUID.randomUUID().toString();
+
+        private final CompletableFuture<LockOutcome> firstAnswer = new CompletableFuture<>();
+
+        private int pendingRequests;
+
+        private boolean acquired;
+
+        /**
+         * The outcome returned to the caller, null until it was returned
+         */
+        private LockOutcome returned;
+
+        private Acquisition(String lockKey, int expiryInSeconds) {
+            this.lockKey = lockKey;
+            this.expiryInSeconds = expiryInSeconds;
+        }
+
+        private LockOutcome run() {
+            return settle(awaitFirstAnswer());
+        }
+
+        private LockOutcome awaitFirstAnswer() {
+            final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+            try {
+                request();
+
+                if (hedgeDelayMillis > 0 && hedgeDelayMillis < timeoutMillis) {
+                    try {
+                        return firstAnswer.get(hedgeDelayMillis, TimeUnit.MILLISECONDS);
+                    } catch (TimeoutException e) {
+                        hedgeCount.increment();
+                        logger.info("Acquiring lock [{}] takes longer than {}ms, hedging", lockKey, hedgeDelayMillis);
+                        request();
+                    }
+                }
+
+                return firstAnswer.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                timeoutCount.increment();
+                logger.warn("Acquiring lock [{}] timed out after {}ms", lockKey, timeoutMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                logger.error("Error when trying to acquire lock [{}]: ", lockKey, e.getCause());
+            }
+
+            return LockOutcome.ERROR;
+        }
+
+        private void request() {
+            synchronized (this) {
+                pendingRequests++;
+            }
+
+            try {
+                CompletableFuture
+                    .supplyAsync(
+                        () -> hedgeDelayMillis > 0
+                            ? ((IdempotentLocker) locker).tryAcquire(lockKey, expiryInSeconds, attemptId)
+                            : locker.tryAcquire(lockKey, expiryInSeconds),
+                        callExecutor
+                    )
+                    .whenComplete((outcome, ex) -> answered(ex == null ? outcome : LockOutcome.ERROR));
+            } catch (RejectedExecutionException e) {
+                logger.warn("No capacity to call the lock store for lock [{}]", lockKey);
+                answered(LockOutcome.ERROR);
+            }
+        }
+
+        private synchronized void answered(LockOutcome outcome) {
+            pendingRequests--;
+
+            if (outcome == LockOutcome.ACQUIRED) {
+                acquired = true;
+
+                if (returned != null && returned != LockOutcome.ACQUIRED) {
+                    releaseLateAcquisition();
+                    return;
+                }
+            }
+
+            // an error only answers if the other request failed as well
+            if (outcome != LockOutcome.ERROR || pendingRequests == 0) {
+                firstAnswer.complete(outcome);
+            }
+        }
+
+        /**
+         * Settles the outcome returned to the caller, an acquisition which succeeded in the meantime counts
+         */
+        private synchronized LockOutcome settle(LockOutcome outcome) {
+            returned = acquired ? LockOutcome.ACQUIRED : outcome;
+
+            return returned;
+        }
+
+        private void releaseLateAcquisition() {
+            logger.warn("Acquired lock [{}] after giving up on it, releasing it", lockKey);
+
+            try {
+                locker.unlock(lockKey);
+            } catch (Exception ex) {
+                logger.error("Failed to release lock [{}] acquired after giving up on it", lockKey, ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.foodpanda.distributedcron;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel, holding timeouts in buckets by their deadline
+ *
+ * The lowest wheel has wheelSize buckets of tickMillis each, every higher wheel has buckets as wide as the whole
+ * wheel below it. A timeout is put in the lowest wheel whose range covers its deadline, so adding and cancelling a
+ * timeout is O(1) regardless of how many timeouts there are. Advancing by one tick empties one bucket of the lowest
+ * wheel, and whenever a boundary of a higher wheel is crossed, the matching bucket of that wheel is cascaded down.
+ *
+ * Timeouts are reported as expired once the whole tick their deadline falls into has passed, so never early and at
+ * most one tick late.
+ *
+ * This class is not thread-safe, callers must synchronize access to it.
+ */
+class TimingWheel {
+
+    private final long tickMillis;
+
+    private final int wheelSize;
+
+    private final List<Wheel> wheels = new ArrayList<>();
+
+    /**
+     * Start of the current tick of the lowest wheel, whose bucket is the next one to expire
+     */
+    private long currentTime;
+
+    TimingWheel(long tickMillis, int wheelSize, long startMillis) {
+        if (tickMillis < 1 || wheelSize < 2) {
+            throw new IllegalArgumentException("The tick must be at least 1ms and the wheel must have at least 2 buckets");
+        }
+
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.currentTime = startMillis - (startMillis % tickMillis);
+        this.wheels.add(new Wheel(tickMillis));
+    }
+
+    /**
+     * @return the time of the next tick, when advancing the wheel expires another bucket
+     */
+    long nextTickMillis() {
+        return currentTime + tickMillis;
+    }
+
+    /**
+     * Adds a timeout to the bucket its deadline falls into
+     *
+     * @return false if the deadline has already passed and the timeout was not added, true otherwise
+     */
+    boolean add(Timeout timeout) {
+        if (timeout.deadlineMillis < currentTime) {
+            return false;
+        }
+
+        for (int level = 0; ; level++) {
+            Wheel wheel = getWheel(level);
+            long wheelTime = currentTime - (currentTime % wheel.tickMillis);
+
+            if (timeout.deadlineMillis < wheelTime + wheel.tickMillis * wheelSize) {
+                wheel.buckets[(int) ((timeout.deadlineMillis / wheel.tickMillis) % wheelSize)].add(timeout);
+
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Removes a timeout from its bucket, if it's still in one
+     */
+    void remove(Timeout timeout) {
+        if (timeout.bucket != null) {
+            timeout.bucket.remove(timeout);
+        }
+    }
+
+    /**
+     * Advances the wheel by all the ticks which completely passed by the passed time
+     *
+     * @param nowMillis the current time
+     * @param onExpired receives each timeout whose deadline passed, in no particular order
+     */
+    void advanceTo(long nowMillis, Consumer<Timeout> onExpired) {
+        while (currentTime + tickMillis <= nowMillis) {
+            Wheel lowest = wheels.get(0);
+            lowest.buckets[(int) ((currentTime / tickMillis) % wheelSize)].drainTo(onExpired);
+
+            currentTime += tickMillis;
+
+            // higher wheels first, so cascaded timeouts end up in the lowest wheel in one pass
+            for (int level = wheels.size() - 1; level > 0; level--) {
+                Wheel wheel = wheels.get(level);
+
+                if (currentTime % wheel.tickMillis == 0) {
+                    wheel.buckets[(int) ((currentTime / wheel.tickMillis) % wheelSize)].drainTo(timeout -> {
+                        if (!add(timeout)) {
+                            onExpired.accept(timeout);
+                        }
+                    });
+                }
+            }
+        }
+    }
+
+    private Wheel getWheel(int level) {
+        while (wheels.size() <= level) {
+            wheels.add(new Wheel(wheels.get(wheels.size() - 1).tickMillis * wheelSize));
+        }
+
+        return wheels.get(level);
+    }
+
+    /**
+     * An entry of the wheel, linked into the list of its bucket
+     */
+    abstract static class Timeout {
+
+        long deadlineMillis;
+
+        private Bucket bucket;
+
+        private Timeout previous;
+
+        private Timeout next;
+    }
+
+    private class Wheel {
+
+        private final long tickMillis;
+
+        private final Bucket[] buckets;
+
+        private Wheel(long tickMillis) {
+            this.tickMillis = tickMillis;
+            this.buckets = new Bucket[wheelSize];
+
+            for (int i = 0; i < wheelSize; i++) {
+                buckets[i] = new Bucket();
+            }
+        }
+    }
+
+    /**
+     * Doubly linked list of timeouts, so any timeout can be removed in O(1)
+     */
+    private static class Bucket {
+
+        private Timeout head;
+
+        private void add(Timeout timeout) {
+            timeout.bucket = this;
+            timeout.previous = null;
+            timeout.next = head;
+
+            if (head != null) {
+                head.previous = timeout;
+            }
+
+            head = timeout;
+        }
+
+        private void remove(Timeout timeout) {
+            if (timeout.previous != null) {
+                timeout.previous.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+
+            if (timeout.next != null) {
+                timeout.next.previous = timeout.previous;
+            }
+
+            timeout.bucket = null;
+            timeout.previous = null;
+            timeout.next = null;
+        }
+
+        private void drainTo(Consumer<Timeout> consumer) {
+            Timeout timeout = head;
+            head = null;
+
+            while (timeout != null) {
+                Timeout next = timeout.next;
+
+                timeout.bucket = null;
+                timeout.previous = null;
+                timeout.next = null;
+                consumer.accept(timeout);
+
+                timeout = next;
+            }
+        }
+    }
+}
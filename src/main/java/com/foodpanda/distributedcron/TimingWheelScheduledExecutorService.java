@@ -0,0 +1,335 @@
+package com.foodpanda.distributedcron;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ScheduledExecutorService backed by a hierarchical timing wheel, built for many thousands of scheduled jobs
+ *
+ * Scheduling, rescheduling and cancelling a task are O(1), and so is the work per tick, unlike the heap of a
+ * ScheduledThreadPoolExecutor which costs O(log n) per operation. The price is precision: tasks run up to one tick
+ * after their due time. It can be passed to CronJobSchedulerFactory wherever a ScheduledExecutorService is accepted.
+ *
+ * A single ticker thread advances the wheel. Due tasks are run on the task executor, which by default is the ticker
+ * thread itself, matching a single threaded ScheduledExecutorService.
+ *
+ * On shutdown, all tasks which haven't started yet are cancelled.
+ */
+public class TimingWheelScheduledExecutorService extends AbstractExecutorService implements ScheduledExecutorService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimingWheelScheduledExecutorService.class);
+
+    private static final long DEFAULT_TICK_MILLIS = 10;
+
+    private static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private final Clock clock;
+
+    private final TimingWheel wheel;
+
+    private final Executor taskExecutor;
+
+    private final Set<WheelTask<?>> pendingTasks = ConcurrentHashMap.newKeySet();
+
+    private final CountDownLatch terminated = new CountDownLatch(1);
+
+    private final Thread ticker;
+
+    private volatile boolean shutdown;
+
+    public TimingWheelScheduledExecutorService() {
+        this(DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * @param tickMillis the resolution of the wheel, tasks run up to one tick late
+     * @param wheelSize the number of buckets of each level of the wheel
+     */
+    public TimingWheelScheduledExecutorService(long tickMillis, int wheelSize) {
+        this(Clock.systemUTC(), tickMillis, wheelSize, null, new ThreadFactoryBuilder().setNameFormat("fleet-cron-wheel-%d").build());
+    }
+
+    /**
+     * @param taskExecutor runs the due tasks, null to run them on the ticker thread
+     */
+    public TimingWheelScheduledExecutorService(long tickMillis, int wheelSize, Executor taskExecutor) {
+        this(Clock.systemUTC(), tickMillis, wheelSize, taskExecutor, new ThreadFactoryBuilder().setNameFormat("fleet-cron-wheel-%d").build());
+    }
+
+    /**
+     * @param tickerThreadFactory creates the ticker thread, null to not start one and advance the wheel by calling
+     *                            advanceTo instead, which is how simulations drive it with a virtual clock
+     */
+    TimingWheelScheduledExecutorService(
+        Clock clock,
+        long tickMillis,
+        int wheelSize,
+        Executor taskExecutor,
+        ThreadFactory tickerThreadFactory
+    ) {
+        this.clock = clock;
+        this.wheel = new TimingWheel(tickMillis, wheelSize, clock.millis());
+        this.taskExecutor = taskExecutor != null ? taskExecutor : Runnable::run;
+
+        if (tickerThreadFactory != null) {
+            this.ticker = tickerThreadFactory.newThread(this::tick);
+            this.ticker.start();
+        } else {
+            this.ticker = null;
+        }
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        return enqueue(new WheelTask<Void>(Executors.callable(command, null), triggerTime(delay, unit), 0));
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        return enqueue(new WheelTask<>(callable, triggerTime(delay, unit), 0));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("The period must be positive");
+        }
+
+        return enqueue(new WheelTask<Void>(Executors.callable(command, null), triggerTime(initialDelay, unit), periodMillis(period, unit)));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        if (delay <= 0) {
+            throw new IllegalArgumentException("The delay must be positive");
+        }
+
+        return enqueue(new WheelTask<Void>(Executors.callable(command, null), triggerTime(initialDelay, unit), -periodMillis(delay, unit)));
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        schedule(command, 0, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+
+        for (WheelTask<?> task : pendingTasks) {
+            task.cancel(false);
+        }
+
+        if (ticker != null) {
+            ticker.interrupt();
+        } else {
+            terminated.countDown();
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> notStarted = new ArrayList<>(pendingTasks);
+
+        shutdown();
+
+        return notStarted;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return terminated.getCount() == 0;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return terminated.await(timeout, unit);
+    }
+
+    /**
+     * Runs all tasks which became due by the passed time. Called by the ticker thread, or by the owner of the
+     * executor when there is no ticker thread.
+     */
+    void advanceTo(long nowMillis) {
+        List<WheelTask<?>> due = new ArrayList<>();
+
+        synchronized (wheel) {
+            wheel.advanceTo(nowMillis, timeout -> due.add(((TaskTimeout) timeout).task));
+        }
+
+        for (WheelTask<?> task : due) {
+            pendingTasks.remove(task);
+
+            if (!task.isCancelled()) {
+                taskExecutor.execute(task);
+            }
+        }
+    }
+
+    /**
+     * @return the number of tasks waiting in the wheel
+     */
+    public int getPendingTaskCount() {
+        return pendingTasks.size();
+    }
+
+    private void tick() {
+        try {
+            while (!shutdown) {
+                long sleepMillis;
+                synchronized (wheel) {
+                    sleepMillis = wheel.nextTickMillis() - clock.millis();
+                }
+
+                if (sleepMillis > 0) {
+                    Thread.sleep(sleepMillis);
+                }
+
+                advanceTo(clock.millis());
+            }
+        } catch (InterruptedException e) {
+            // interrupted by shutdown
+        } catch (RuntimeException ex) {
+            logger.error("Timing wheel ticker thread failed: ", ex);
+        } finally {
+            terminated.countDown();
+        }
+    }
+
+    /**
+     * @return the positive period in whole milliseconds, rounded up, so a period below a millisecond doesn't turn the
+     * task into a one-shot task
+     */
+    private static long periodMillis(long period, TimeUnit unit) {
+        final long millis = unit.toMillis(period);
+
+        return unit.toNanos(period) > TimeUnit.MILLISECONDS.toNanos(millis) ? millis + 1 : millis;
+    }
+
+    private long triggerTime(long delay, TimeUnit unit) {
+        return clock.millis() + Math.max(0L, unit.toMillis(delay));
+    }
+
+    private <V> WheelTask<V> enqueue(WheelTask<V> task) {
+        if (shutdown) {
+            throw new RejectedExecutionException("The executor has been shut down");
+        }
+
+        pendingTasks.add(task);
+
+        boolean added;
+        synchronized (wheel) {
+            added = wheel.add(task.timeout);
+        }
+
+        if (!added) {
+            pendingTasks.remove(task);
+            taskExecutor.execute(task);
+        }
+
+        return task;
+    }
+
+    private class WheelTask<V> extends FutureTask<V> implements RunnableScheduledFuture<V> {
+
+        private final TaskTimeout timeout = new TaskTimeout(this);
+
+        /**
+         * Positive for fixed rate, negative for fixed delay and 0 for one-shot tasks
+         */
+        private final long periodMillis;
+
+        private WheelTask(Callable<V> callable, long triggerTimeMillis, long periodMillis) {
+            super(callable);
+            this.timeout.deadlineMillis = triggerTimeMillis;
+            this.periodMillis = periodMillis;
+        }
+
+        @Override
+        public boolean isPeriodic() {
+            return periodMillis != 0;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(timeout.deadlineMillis - clock.millis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
+        }
+
+        @Override
+        public void run() {
+            if (!isPeriodic()) {
+                super.run();
+            } else if (super.runAndReset() && !shutdown) {
+                timeout.deadlineMillis = periodMillis > 0
+                    ? timeout.deadlineMillis + periodMillis
+                    : clock.millis() - periodMillis;
+
+                try {
+                    enqueue(this);
+                } catch (RejectedExecutionException e) {
+                    cancel(false);
+                }
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+
+            if (cancelled) {
+                synchronized (wheel) {
+                    wheel.remove(timeout);
+                }
+
+                pendingTasks.remove(this);
+            }
+
+            return cancelled;
+        }
+
+        @Override
+        public String toString() {
+            return "WheelTask due at " + timeout.deadlineMillis + (isPeriodic() ? ", every " + Math.abs(periodMillis) + "ms" : "");
+        }
+    }
+
+    private static class TaskTimeout extends TimingWheel.Timeout {
+
+        private final WheelTask<?> task;
+
+        private TaskTimeout(WheelTask<?> task) {
+            this.task = task;
+        }
+    }
+}
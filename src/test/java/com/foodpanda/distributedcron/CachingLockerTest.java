@@ -0,0 +1,100 @@
+package com.foodpanda.distributedcron;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CachingLockerTest {
+
+    private static final String LOCK_KEY = "lock";
+
+    private InspectableLocker locker;
+
+    private MutableClock clock;
+
+    private CachingLocker cachingLocker;
+
+    @Before
+    public void setUp() {
+        locker = mock(InspectableLocker.class);
+        clock = new MutableClock(1000L);
+        cachingLocker = new CachingLocker(locker, clock, 100L);
+    }
+
+    @Test
+    public void itShouldNotCallTheLockerWhileForeignLockIsHeld() {
+        when(locker.tryAcquire(LOCK_KEY, 10)).thenReturn(LockOutcome.CONTENDED);
+        when(locker.getLockExpiry(LOCK_KEY)).thenReturn(11000L);
+
+        assertFalse(cachingLocker.tryLock(LOCK_KEY, 10));
+        assertFalse(cachingLocker.tryLock(LOCK_KEY, 10));
+        assertFalse(cachingLocker.tryLock(LOCK_KEY, 10));
+
+        verify(locker, times(1)).tryAcquire(LOCK_KEY, 10);
+        assertEquals(2, cachingLocker.getHitCount());
+        assertEquals(1, cachingLocker.getMissCount());
+    }
+
+    @Test
+    public void itShouldRetryOnceTheExpiryMinusSkewPassed() {
+        when(locker.tryAcquire(LOCK_KEY, 10)).thenReturn(LockOutcome.CONTENDED, LockOutcome.ACQUIRED);
+        when(locker.getLockExpiry(LOCK_KEY)).thenReturn(11000L);
+
+        assertFalse(cachingLocker.tryLock(LOCK_KEY, 10));
+
+        clock.setMillis(10900L);
+        assertTrue(cachingLocker.tryLock(LOCK_KEY, 10));
+
+        verify(locker, times(2)).tryAcquire(LOCK_KEY, 10);
+        assertEquals(0, cachingLocker.getHitCount());
+    }
+
+    @Test
+    public void itShouldRetryAfterTheMaxCachedTimeEvenIfTheLockExpiresLater() {
+        cachingLocker = new CachingLocker(locker, clock, 100L, 5000L);
+        when(locker.tryAcquire(LOCK_KEY, 600)).thenReturn(LockOutcome.CONTENDED, LockOutcome.ACQUIRED);
+        when(locker.getLockExpiry(LOCK_KEY)).thenReturn(601000L);
+
+        assertFalse(cachingLocker.tryLock(LOCK_KEY, 600));
+
+        clock.setMillis(5999L);
+        assertFalse(cachingLocker.tryLock(LOCK_KEY, 600));
+
+        // the holder may have released the lock early, so it is looked up again long before it expires
+        clock.setMillis(6000L);
+        assertTrue(cachingLocker.tryLock(LOCK_KEY, 600));
+
+        verify(locker, times(2)).tryAcquire(LOCK_KEY, 600);
+    }
+
+    @Test
+    public void itShouldNotCacheReleasedLocks() {
+        when(locker.tryAcquire(LOCK_KEY, 10)).thenReturn(LockOutcome.CONTENDED);
+        when(locker.getLockExpiry(LOCK_KEY)).thenReturn(0L);
+
+        assertFalse(cachingLocker.tryLock(LOCK_KEY, 10));
+        assertFalse(cachingLocker.tryLock(LOCK_KEY, 10));
+
+        verify(locker, times(2)).tryAcquire(LOCK_KEY, 10);
+    }
+
+    @Test
+    public void itShouldNotCacheFailedOrThrottledAttempts() {
+        when(locker.tryAcquire(LOCK_KEY, 10)).thenReturn(LockOutcome.ERROR, LockOutcome.THROTTLED, LockOutcome.ACQUIRED);
+
+        assertEquals(LockOutcome.ERROR, cachingLocker.tryAcquire(LOCK_KEY, 10));
+        assertEquals(LockOutcome.THROTTLED, cachingLocker.tryAcquire(LOCK_KEY, 10));
+        assertEquals(LockOutcome.ACQUIRED, cachingLocker.tryAcquire(LOCK_KEY, 10));
+
+        verify(locker, never()).getLockExpiry(LOCK_KEY);
+        assertEquals(0, cachingLocker.getHitCount());
+    }
+}
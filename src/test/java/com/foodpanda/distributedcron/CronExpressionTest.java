@@ -0,0 +1,74 @@
+package com.foodpanda.distributedcron;
+
+import org.junit.Test;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import static org.junit.Assert.assertEquals;
+
+public class CronExpressionTest {
+
+    private static final ZoneId BERLIN = ZoneId.of("Europe/Berlin");
+
+    @Test
+    public void itShouldFireOnWeekdaysOnly() {
+        final CronExpression cron = CronExpression.parse("15 2 * * MON-FRI");
+
+        // Friday 2016-12-16 03:00, next run is on Monday
+        assertEquals(
+            ZonedDateTime.of(2016, 12, 19, 2, 15, 0, 0, BERLIN),
+            cron.nextAfter(ZonedDateTime.of(2016, 12, 16, 3, 0, 0, 0, BERLIN))
+        );
+    }
+
+    @Test
+    public void itShouldSupportStepsListsAndSeconds() {
+        final CronExpression cron = CronExpression.parse("30 */15 8,20 * * *");
+
+        assertEquals(
+            ZonedDateTime.of(2016, 12, 16, 8, 15, 30, 0, BERLIN),
+            cron.nextAfter(ZonedDateTime.of(2016, 12, 16, 8, 0, 30, 0, BERLIN))
+        );
+        assertEquals(
+            ZonedDateTime.of(2016, 12, 16, 20, 0, 30, 0, BERLIN),
+            cron.nextAfter(ZonedDateTime.of(2016, 12, 16, 8, 45, 30, 0, BERLIN))
+        );
+    }
+
+    @Test
+    public void itShouldMatchEitherRestrictedDayField() {
+        // the 1st of the month or any Sunday
+        final CronExpression cron = CronExpression.parse("0 0 1 * 0");
+
+        assertEquals(
+            ZonedDateTime.of(2016, 12, 18, 0, 0, 0, 0, BERLIN),
+            cron.nextAfter(ZonedDateTime.of(2016, 12, 16, 0, 0, 0, 0, BERLIN))
+        );
+        assertEquals(
+            ZonedDateTime.of(2017, 1, 1, 0, 0, 0, 0, BERLIN),
+            cron.nextAfter(ZonedDateTime.of(2016, 12, 25, 0, 0, 0, 0, BERLIN))
+        );
+    }
+
+    @Test
+    public void itShouldEvaluateInTheTimeZoneAcrossDaylightSavingTime() {
+        final CronExpression cron = CronExpression.parse("0 12 * * *");
+
+        // the last Sunday of March 2017 is 23 hours long in Berlin
+        assertEquals(
+            ZonedDateTime.of(2017, 3, 26, 12, 0, 0, 0, BERLIN),
+            cron.nextAfter(ZonedDateTime.of(2017, 3, 25, 12, 0, 0, 0, BERLIN))
+        );
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void itShouldRejectOutOfRangeValues() {
+        CronExpression.parse("60 * * * *");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void itShouldRejectWrongNumberOfFields() {
+        CronExpression.parse("* * * *");
+    }
+}
@@ -1,12 +1,32 @@
 package com.foodpanda.distributedcron;
 
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class CronJobSchedulerFactoryTest {
 
@@ -14,7 +34,7 @@ public class CronJobSchedulerFactoryTest {
     public void testShutdownScheduler() {
         final ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
         final CronJobSchedulerFactory schedulerFactory = new CronJobSchedulerFactory(
-            mock(Locker.class),
+            LockerMocks.mockLocker(),
             executorService
         );
 
@@ -23,4 +43,97 @@ public class CronJobSchedulerFactoryTest {
         assertTrue(executorService.isShutdown());
     }
 
+    @Test
+    public void testBatchesLocksOfCoincidingRuns() throws InterruptedException {
+        final Locker locker = LockerMocks.mockLocker();
+        when(locker.tryLockAll(anyCollectionOf(String.class), anyInt())).thenReturn(ImmutableSet.of("LOCK_first"));
+
+        final CronJobSchedulerFactory schedulerFactory = new CronJobSchedulerFactory(locker).withBatchedLocking(50);
+        final Runnable first = mock(Runnable.class);
+        final Runnable second = mock(Runnable.class);
+
+        schedulerFactory.createScheduler("first").scheduleAtFixedRate(first, 0, 1, TimeUnit.HOURS);
+        schedulerFactory.createScheduler("second").scheduleAtFixedRate(second, 0, 1, TimeUnit.HOURS);
+
+        Thread.sleep(200);
+
+        // the runs are dispatched on a pool, so they may join the batch in any order
+        @SuppressWarnings("unchecked")
+        final ArgumentCaptor<Collection<String>> lockKeys = ArgumentCaptor.forClass((Class<Collection<String>>) (Class<?>) Collection.class);
+        verify(locker).tryLockAll(lockKeys.capture(), eq(600));
+        assertEquals(2, lockKeys.getValue().size());
+        assertEquals(ImmutableSet.of("LOCK_first", "LOCK_second"), ImmutableSet.copyOf(lockKeys.getValue()));
+        verify(locker, never()).tryLock(anyString(), anyInt());
+        verify(first, times(1)).run();
+        verify(second, never()).run();
+        verify(locker).unlock("LOCK_first");
+        verify(locker, never()).unlock("LOCK_second");
+    }
+
+    @Test
+    public void testRunsOfABatchDoNotWaitForEachOther() throws InterruptedException {
+        final CronJobSchedulerFactory schedulerFactory = new CronJobSchedulerFactory(new InMemoryLocker())
+            .withExecutionPool(Executors.newFixedThreadPool(2))
+            .withBatchedLocking(50);
+        final CountDownLatch slowStarted = new CountDownLatch(1);
+        final CountDownLatch fastDone = new CountDownLatch(1);
+
+        schedulerFactory.createScheduler("slow").scheduleAtFixedRate(
+            () -> {
+                slowStarted.countDown();
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            },
+            0,
+            1,
+            TimeUnit.HOURS
+        );
+        schedulerFactory.createScheduler("fast").scheduleAtFixedRate(fastDone::countDown, 0, 1, TimeUnit.HOURS);
+
+        assertTrue(slowStarted.await(500, TimeUnit.MILLISECONDS));
+        assertTrue(fastDone.await(500, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testFindsTheCapabilitiesOfADecoratedLocker() {
+        final InMemoryLocker inMemoryLocker = new InMemoryLocker();
+        final Locker decorated = new TimeLimitedLocker(new CachingLocker(inMemoryLocker), 1000);
+
+        assertSame(inMemoryLocker, decorated.unwrap(SharedScheduleLocker.class));
+        assertSame(inMemoryLocker, new MeteredLocker(decorated, CronJobMetrics.NONE).unwrap(CheckpointLocker.class));
+        assertNull(new MeteredLocker(LockerMocks.mockLocker(), CronJobMetrics.NONE).unwrap(HandOffLocker.class));
+
+        final CronJobSchedulerFactory schedulerFactory = new CronJobSchedulerFactory(decorated)
+            .withMetrics(new InMemoryCronJobMetrics())
+            .withHandOffWatching(1, TimeUnit.SECONDS);
+
+        schedulerFactory.createScheduler("shared").scheduleAtFixedRateWithSharedSchedule(mock(Runnable.class), 1, TimeUnit.HOURS, 10);
+        schedulerFactory.createScheduler("checkpointed").scheduleAtFixedRateWithCheckpoint(checkpoint -> { }, 1, 1, TimeUnit.HOURS, 10);
+    }
+
+    @Test
+    public void testJitterIsStablePerNodeAndJobAndWithinBounds() {
+        assertEquals(0, CronJobSchedulerFactory.jitterMillis("node", "job", 0));
+        assertEquals(
+            CronJobSchedulerFactory.jitterMillis("node", "job", 1000),
+            CronJobSchedulerFactory.jitterMillis("node", "job", 1000)
+        );
+
+        final Set<Long> jitters = new HashSet<>();
+        for (int node = 0; node < 100; node++) {
+            final long jitter = CronJobSchedulerFactory.jitterMillis("node" + node, "job", 1000);
+            assertTrue(jitter >= 0 && jitter <= 1000);
+            jitters.add(jitter);
+        }
+
+        // the fleet is spread over the jitter window instead of all starting at once
+        assertTrue(jitters.size() > 50);
+        assertNotEquals(
+            CronJobSchedulerFactory.jitterMillis("node", "first job", 1000),
+            CronJobSchedulerFactory.jitterMillis("node", "second job", 1000)
+        );
+    }
 }
@@ -1,14 +1,39 @@
 package com.foodpanda.distributedcron;
 
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 
-import java.util.HashMap;
-import java.util.Map;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
 import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 
 public class CronJobSchedulerTest {
@@ -85,26 +110,531 @@ public class CronJobSchedulerTest {
         verify(cronJobThatThrowsException, atLeast(25)).run();
     }
 
+    /**
+     * This is an integration test with a real instance
+     */
+    @Test
+    public void itShouldNotDelayOtherJobsWhileOneJobIsSlow() throws InterruptedException {
+        final CronJobSchedulerFactory factory = buildRealTestFactory().withExecutionPool(Executors.newFixedThreadPool(2));
+        final Runnable slowCronJob = mock(Runnable.class);
+        final Runnable fastCronJob = mock(Runnable.class);
+        doAnswer(invocation -> {
+            Thread.sleep(1000);
+            return null;
+        }).when(slowCronJob).run();
+
+        factory.createScheduler("slow cron job").scheduleAtFixedRate(slowCronJob, 0, 1, TimeUnit.MILLISECONDS);
+        factory.createScheduler("fast cron job").scheduleAtFixedRate(fastCronJob, 0, 1, TimeUnit.MILLISECONDS);
 
-    private CronJobScheduler buildRealTestObj() {
-        final Locker locker = new Locker() {
-            private Map<String, Boolean> map = new HashMap<>();
+        Thread.sleep(100);
 
-            @Override
-            public boolean tryLock(String lockKey, int expiryInSeconds) {
-                Boolean isLocked = map.get(lockKey);
+        // overlapping runs of the slow job are skipped instead of queueing up
+        verify(slowCronJob, atMost(1)).run();
+        verify(fastCronJob, atLeast(25)).run();
+    }
 
-                return isLocked == null || !isLocked;
-            }
+    /**
+     * This is an integration test with a real instance
+     */
+    @Test
+    public void itShouldCountTheFixedDelayFromTheEndOfARunOnTheExecutionPool() throws InterruptedException {
+        final InMemoryCronJobMetrics metrics = new InMemoryCronJobMetrics();
+        final AtomicInteger runs = new AtomicInteger();
+        final CronJobScheduler scheduler = buildRealTestFactory()
+            .withExecutionPool(Executors.newFixedThreadPool(2))
+            .withMetrics(metrics)
+            .createScheduler("fixed delay cron job");
+
+        scheduler.scheduleWithFixedDelay(
+            () -> {
+                runs.incrementAndGet();
+                sleep(200);
+            },
+            0L,
+            100,
+            TimeUnit.MILLISECONDS
+        );
+        Thread.sleep(650);
+        scheduler.stop();
+
+        // runs start at 0, 300 and 600 millis, none comes due while another is going
+        assertTrue("ran " + runs.get() + " times", runs.get() >= 2 && runs.get() <= 3);
+        assertEquals(0, metrics.getSkippedRunCount("fixed delay cron job"));
+    }
+
+    @Test
+    public void itShouldDelayTheStartOfTheRunsByTheJitterOfTheNodeAndJob() {
+        final ScheduledExecutorService executorService = mock(ScheduledExecutorService.class);
+        final long jitterMillis = CronJobSchedulerFactory.jitterMillis(NodeId.local(), "jittered cron job", 1000);
+
+        new CronJobSchedulerFactory(new InMemoryLocker(), executorService)
+            .withJitter(1, TimeUnit.SECONDS)
+            .createScheduler("jittered cron job")
+            .scheduleAtFixedRate(mock(Runnable.class), 10, 60, TimeUnit.MILLISECONDS);
+
+        assertTrue(jitterMillis > 0);
+        verify(executorService).scheduleAtFixedRate(
+            any(Runnable.class),
+            eq(TimeUnit.MILLISECONDS.toNanos(10 + jitterMillis)),
+            eq(TimeUnit.MILLISECONDS.toNanos(60)),
+            eq(TimeUnit.NANOSECONDS)
+        );
+    }
+
+    @Test
+    public void itShouldDeriveTheJitterFromThePassedNodeId() {
+        final ScheduledExecutorService executorService = mock(ScheduledExecutorService.class);
+        final long jitterMillis = CronJobSchedulerFactory.jitterMillis("node-a", "jittered cron job", 1000);
+
+        new CronJobSchedulerFactory(new InMemoryLocker(), executorService)
+            .withJitter(1, TimeUnit.SECONDS, "node-a")
+            .createScheduler("jittered cron job")
+            .scheduleAtFixedRate(mock(Runnable.class), 10, 60, TimeUnit.MILLISECONDS);
+
+        verify(executorService).scheduleAtFixedRate(
+            any(Runnable.class),
+            eq(TimeUnit.MILLISECONDS.toNanos(10 + jitterMillis)),
+            eq(TimeUnit.MILLISECONDS.toNanos(60)),
+            eq(TimeUnit.NANOSECONDS)
+        );
+    }
+
+    /**
+     * This is an integration test with a real instance
+     */
+    @Test
+    public void itShouldRecordMetricsOfTheRuns() throws InterruptedException {
+        final InMemoryCronJobMetrics metrics = new InMemoryCronJobMetrics();
+        final Runnable cronJobThatThrowsException = mock(Runnable.class);
+        doThrow(new RuntimeException("oh noes")).when(cronJobThatThrowsException).run();
+
+        buildRealTestFactory()
+            .withMetrics(metrics)
+            .createScheduler("test cron job")
+            .scheduleAtFixedRate(cronJobThatThrowsException, 0, 1, TimeUnit.MILLISECONDS);
+
+        Thread.sleep(100);
+
+        assertTrue(metrics.getRunDuration("test cron job").getCount() >= 25);
+        assertTrue(metrics.getFailedRunCount("test cron job") >= 25);
+        assertTrue(metrics.getScheduleDrift("test cron job").getCount() >= 25);
+        assertTrue(metrics.getLockOutcomeCount("LOCK_test cron job", LockOutcome.ACQUIRED) >= 25);
+        assertTrue(metrics.getUnlockLatency("LOCK_test cron job").getCount() >= 25);
+    }
+
+    /**
+     * This is an integration test with a real instance
+     */
+    @Test
+    public void itShouldRunOncePerPeriodAcrossNodesFollowingTheSharedSchedule() throws InterruptedException {
+        final InMemoryLocker sharedLocker = new InMemoryLocker();
+        final AtomicInteger runs = new AtomicInteger();
+
+        // three nodes, started out of phase
+        for (int node = 0; node < 3; node++) {
+            new CronJobSchedulerFactory(sharedLocker)
+                .createScheduler("shared cron job")
+                .scheduleAtFixedRateWithSharedSchedule(runs::incrementAndGet, 100, TimeUnit.MILLISECONDS, 10);
+
+            Thread.sleep(30);
+        }
+
+        Thread.sleep(1000);
+
+        assertTrue("ran " + runs.get() + " times", runs.get() >= 8 && runs.get() <= 12);
+    }
+
+    @Test
+    public void itShouldFireCronSchedulesOnTheClockOfTheScheduler() {
+        // half a minute past a full minute
+        final MutableClock clock = new MutableClock(1_500_000_030_000L);
+        final TimingWheelScheduledExecutorService wheel = new TimingWheelScheduledExecutorService(clock, 100, 64, null, null);
+        final List<Long> firedAt = new ArrayList<>();
+
+        new CronJobSchedulerFactory(new InMemoryLocker(clock), wheel)
+            .withClock(clock)
+            .createScheduler("cron job")
+            .scheduleWithCron(() -> firedAt.add(clock.millis()), "* * * * *", ZoneId.of("Europe/Berlin"));
+
+        for (int tick = 0; tick < 1500; tick++) {
+            clock.advance(100);
+            wheel.advanceTo(clock.millis());
+        }
+
+        // at the full minutes, up to a tick late
+        assertEquals(2, firedAt.size());
+        assertTrue(firedAt.get(0) >= 1_500_000_060_000L && firedAt.get(0) <= 1_500_000_060_100L);
+        assertTrue(firedAt.get(1) >= 1_500_000_120_000L && firedAt.get(1) <= 1_500_000_120_100L);
+    }
+
+    @Test
+    public void itShouldNotReleaseALockItCouldNotAcquire() {
+        final ScheduledExecutorService executorService = mock(ScheduledExecutorService.class);
+        final Locker locker = LockerMocks.mockLocker();
+
+        new CronJobSchedulerFactory(locker, executorService)
+            .createScheduler("contended cron job")
+            .scheduleAtFixedRate(mock(Runnable.class), 0, 1, TimeUnit.HOURS);
+
+        final ArgumentCaptor<Runnable> run = ArgumentCaptor.forClass(Runnable.class);
+        verify(executorService).scheduleAtFixedRate(run.capture(), anyLong(), anyLong(), eq(TimeUnit.NANOSECONDS));
+        run.getValue().run();
+
+        verify(locker).tryLock("LOCK_contended cron job", 600);
+        verify(locker, never()).unlock(anyString());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void itShouldRequireASharedScheduleLockerForASharedSchedule() {
+        new CronJobSchedulerFactory(LockerMocks.mockLocker())
+            .createScheduler("shared cron job")
+            .scheduleAtFixedRateWithSharedSchedule(mock(Runnable.class), 100, TimeUnit.MILLISECONDS, 10);
+    }
+
+    /**
+     * This is an integration test with a real instance
+     */
+    @Test
+    public void itShouldResumeFromTheCheckpointOfThePreviousRunAcrossNodes() throws InterruptedException {
+        final InMemoryLocker sharedLocker = new InMemoryLocker();
+        final List<Integer> resumedFrom = Collections.synchronizedList(new ArrayList<>());
+
+        for (int node = 0; node < 2; node++) {
+            new CronJobSchedulerFactory(sharedLocker)
+                .createScheduler("checkpointed cron job")
+                .scheduleAtFixedRateWithCheckpoint(
+                    checkpoint -> {
+                        final int processed = checkpoint.getValue() != null ? Integer.parseInt(checkpoint.getValue()) : 0;
+                        resumedFrom.add(processed);
+
+                        assertTrue(checkpoint.commit(String.valueOf(processed + 10)));
+                    },
+                    0,
+                    1100,
+                    TimeUnit.MILLISECONDS,
+                    1
+                );
+        }
+
+        Thread.sleep(3000);
+
+        assertEquals(Arrays.asList(0, 10, 20), resumedFrom);
+        assertEquals("30", sharedLocker.readCheckpoint("LOCK_checkpointed cron job"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void itShouldRequireACheckpointLockerForACheckpointedJob() {
+        new CronJobSchedulerFactory(LockerMocks.mockLocker())
+            .createScheduler("checkpointed cron job")
+            .scheduleAtFixedRateWithCheckpoint(checkpoint -> { }, 0, 1, TimeUnit.MINUTES, 10);
+    }
 
-            @Override
-            public void unlock(String lockKey) {
-                map.put(lockKey, false);
+    @Test
+    public void itShouldProcessEachPartitionOncePerPeriodAcrossNodes() throws InterruptedException {
+        final InMemoryLocker sharedLocker = new InMemoryLocker();
+        final AtomicIntegerArray runs = new AtomicIntegerArray(20);
+        final Set<String> nodes = ConcurrentHashMap.newKeySet();
+        final Set<Integer> partitionCounts = ConcurrentHashMap.newKeySet();
+
+        for (int node = 0; node < 3; node++) {
+            final String nodeName = "node" + node;
+
+            new CronJobSchedulerFactory(sharedLocker)
+                .createScheduler("partitioned cron job")
+                .scheduleAtFixedRatePartitioned(
+                    (partition, partitionCount) -> {
+                        partitionCounts.add(partitionCount);
+                        runs.incrementAndGet(partition);
+                        nodes.add(nodeName);
+                        sleep(20);
+                    },
+                    20,
+                    0,
+                    1,
+                    TimeUnit.HOURS,
+                    60
+                );
+        }
+
+        Thread.sleep(1000);
+
+        for (int partition = 0; partition < 20; partition++) {
+            assertEquals("runs of partition " + partition, 1, runs.get(partition));
+            // done partitions stay locked until the end of the period
+            assertTrue(sharedLocker.getLockExpiry("LOCK_partitioned cron job_PARTITION_" + partition) > System.currentTimeMillis() + 60000);
+        }
+        assertTrue(nodes.size() > 1);
+        assertEquals(Collections.singleton(20), partitionCounts);
+    }
+
+    @Test
+    public void itShouldKeepThePartitionLockedWhileItIsProcessed() throws InterruptedException {
+        final InMemoryLocker sharedLocker = new InMemoryLocker();
+        final AtomicInteger runs = new AtomicInteger();
+        final PartitionedJob job = (partition, partitionCount) -> {
+            runs.incrementAndGet();
+            sleep(2500);
+        };
+
+        new CronJobSchedulerFactory(sharedLocker)
+            .createScheduler("partitioned cron job")
+            .scheduleAtFixedRatePartitioned(job, 1, 0, 1, TimeUnit.HOURS, 1);
+        Thread.sleep(1500);
+
+        // the partition outlives the expiry of its lock
+        new CronJobSchedulerFactory(sharedLocker)
+            .createScheduler("partitioned cron job")
+            .scheduleAtFixedRatePartitioned(job, 1, 0, 1, TimeUnit.HOURS, 1);
+        Thread.sleep(200);
+
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    public void itShouldLeaveFailedPartitionsToOtherNodes() throws InterruptedException {
+        final InMemoryLocker sharedLocker = new InMemoryLocker();
+        final AtomicIntegerArray runs = new AtomicIntegerArray(4);
+        final AtomicInteger failures = new AtomicInteger();
+
+        final PartitionedJob job = (partition, partitionCount) -> {
+            if (partition == 2 && failures.getAndIncrement() == 0) {
+                throw new IllegalStateException("partition failed");
             }
 
+            runs.incrementAndGet(partition);
         };
 
-        return new CronJobSchedulerFactory(locker)
+        new CronJobSchedulerFactory(sharedLocker)
+            .createScheduler("partitioned cron job")
+            .scheduleAtFixedRatePartitioned(job, 4, 0, 1, TimeUnit.HOURS, 60);
+        Thread.sleep(200);
+        assertEquals(0, runs.get(2));
+
+        new CronJobSchedulerFactory(sharedLocker)
+            .createScheduler("partitioned cron job")
+            .scheduleAtFixedRatePartitioned(job, 4, 0, 1, TimeUnit.HOURS, 60);
+        Thread.sleep(200);
+
+        for (int partition = 0; partition < 4; partition++) {
+            assertEquals("runs of partition " + partition, 1, runs.get(partition));
+        }
+    }
+
+    @Test
+    public void itShouldRecordTheRunsToTheRunHistoryAndFlushItOnStop() throws InterruptedException {
+        final RunHistory history = mock(RunHistory.class);
+        final CronJobScheduler scheduler = buildRealTestFactory()
+            .withRunHistory(history)
+            .createScheduler("test cron job");
+
+        scheduler.scheduleAtFixedRate(
+            () -> {
+                throw new IllegalStateException("boom");
+            },
+            0,
+            1,
+            TimeUnit.HOURS
+        );
+        Thread.sleep(200);
+        scheduler.stop();
+
+        verify(history).record(
+            eq("test cron job"),
+            eq(RunOutcome.FAILED),
+            anyLong(),
+            anyLong(),
+            any(IllegalStateException.class)
+        );
+        verify(history).flush();
+    }
+
+    @Test
+    public void itShouldRecordTheRunsWhichDidNotRunToTheRunHistory() throws InterruptedException {
+        final InMemoryLocker sharedLocker = new InMemoryLocker();
+        final RunHistory history = mock(RunHistory.class);
+
+        new CronJobSchedulerFactory(sharedLocker)
+            .createScheduler("test cron job")
+            .scheduleAtFixedRateWithLock(() -> { }, 0, 1, TimeUnit.HOURS, 600);
+        Thread.sleep(50);
+
+        new CronJobSchedulerFactory(sharedLocker)
+            .withRunHistory(history)
+            .createScheduler("test cron job")
+            .scheduleAtFixedRateWithLock(() -> { }, 0, 1, TimeUnit.HOURS, 600);
+        new CronJobSchedulerFactory(new InMemoryLocker())
+            .withExecutionPool(Executors.newFixedThreadPool(2))
+            .withRunHistory(history)
+            .createScheduler("slow cron job")
+            .scheduleAtFixedRate(() -> sleep(1000), 0, 10, TimeUnit.MILLISECONDS);
+        Thread.sleep(100);
+
+        verify(history).record(eq("test cron job"), eq(RunOutcome.CONTENDED), anyLong(), anyLong(), isNull(Throwable.class));
+        verify(history, atLeast(1)).record(eq("slow cron job"), eq(RunOutcome.SKIPPED), anyLong(), anyLong(), isNull(Throwable.class));
+    }
+
+    @Test
+    public void itShouldDrainRunsAndHandOffTheLocksOnAGracefulStop() throws InterruptedException {
+        final InMemoryLocker sharedLocker = new InMemoryLocker();
+        final AtomicInteger finished = new AtomicInteger();
+        final CronJobScheduler scheduler = new CronJobSchedulerFactory(sharedLocker).createScheduler("graceful cron job");
+
+        scheduler.scheduleAtFixedRateWithLock(
+            () -> {
+                sleep(200);
+                finished.incrementAndGet();
+            },
+            0,
+            1,
+            TimeUnit.HOURS,
+            600
+        );
+        Thread.sleep(50);
+
+        assertTrue(scheduler.stop(1, TimeUnit.SECONDS));
+        assertEquals(1, finished.get());
+        assertEquals(Collections.singleton("LOCK_graceful cron job"), sharedLocker.findHandedOff(Collections.singletonList("LOCK_graceful cron job")));
+    }
+
+    @Test
+    public void itShouldAbandonRunsOutlastingTheStopTimeout() throws InterruptedException {
+        final InMemoryLocker sharedLocker = new InMemoryLocker();
+        final CronJobScheduler scheduler = new CronJobSchedulerFactory(sharedLocker).createScheduler("slow cron job");
+
+        scheduler.scheduleAtFixedRate(() -> sleep(1000), 0, 1, TimeUnit.HOURS);
+        Thread.sleep(50);
+
+        assertFalse(scheduler.stop(100, TimeUnit.MILLISECONDS));
+        // the abandoned run may still be going, its lock is left to expire
+        assertTrue(sharedLocker.getLockExpiry("LOCK_slow cron job") > System.currentTimeMillis());
+        assertTrue(sharedLocker.findHandedOff(Collections.singletonList("LOCK_slow cron job")).isEmpty());
+    }
+
+    @Test
+    public void itShouldFlushTheRunHistoryAfterDrainingTheRuns() throws InterruptedException {
+        final RunHistory history = mock(RunHistory.class);
+        final CronJobScheduler scheduler = buildRealTestFactory()
+            .withRunHistory(history)
             .createScheduler("test cron job");
+
+        scheduler.scheduleAtFixedRate(() -> sleep(200), 0, 1, TimeUnit.HOURS);
+        Thread.sleep(50);
+
+        assertTrue(scheduler.stop(1, TimeUnit.SECONDS));
+
+        final InOrder inOrder = inOrder(history);
+        inOrder.verify(history).record(eq("test cron job"), eq(RunOutcome.SUCCEEDED), anyLong(), anyLong(), isNull(Throwable.class));
+        inOrder.verify(history).flush();
+    }
+
+    @Test
+    public void itShouldRetryRightAwayWhenTheLockIsHandedOff() throws InterruptedException {
+        final InMemoryLocker sharedLocker = new InMemoryLocker();
+        final AtomicInteger runs = new AtomicInteger();
+
+        final CronJobScheduler leaving = new CronJobSchedulerFactory(sharedLocker).createScheduler("failover cron job");
+        leaving.scheduleAtFixedRateWithLock(runs::incrementAndGet, 0, 1, TimeUnit.HOURS, 600);
+        Thread.sleep(50);
+
+        final List<String> threads = Collections.synchronizedList(new ArrayList<>());
+        final ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("taking-over-%d").build()
+        );
+        final CronJobScheduler takingOver = new CronJobSchedulerFactory(sharedLocker, executorService)
+            .withHandOffWatching(20, TimeUnit.MILLISECONDS)
+            .createScheduler("failover cron job");
+        takingOver.scheduleAtFixedRateWithLock(
+            () -> {
+                runs.incrementAndGet();
+                threads.add(Thread.currentThread().getName());
+            },
+            0,
+            1,
+            TimeUnit.HOURS,
+            600
+        );
+        Thread.sleep(50);
+        assertEquals(1, runs.get());
+
+        leaving.stop(1, TimeUnit.SECONDS);
+        Thread.sleep(200);
+
+        assertEquals(2, runs.get());
+        assertTrue(sharedLocker.getLockExpiry("LOCK_failover cron job") > System.currentTimeMillis());
+        // the retry runs on the executor of the scheduler, not on the thread polling for hand-offs
+        assertEquals(Collections.singletonList("taking-over-0"), threads);
+        takingOver.stop();
+    }
+
+    @Test
+    public void itShouldRetryTheScheduleWhichFoundTheLockHeld() throws InterruptedException {
+        final InMemoryLocker sharedLocker = new InMemoryLocker();
+        final AtomicInteger firstRuns = new AtomicInteger();
+        final AtomicInteger secondRuns = new AtomicInteger();
+
+        final CronJobScheduler leaving = new CronJobSchedulerFactory(sharedLocker).createScheduler("failover cron job");
+        leaving.scheduleAtFixedRateWithLock(() -> { }, 0, 1, TimeUnit.HOURS, 600);
+        Thread.sleep(50);
+
+        final CronJobScheduler takingOver = new CronJobSchedulerFactory(sharedLocker)
+            .withHandOffWatching(20, TimeUnit.MILLISECONDS)
+            .createScheduler("failover cron job");
+        takingOver.scheduleAtFixedRateWithLock(firstRuns::incrementAndGet, 0, 1, TimeUnit.HOURS, 600);
+        Thread.sleep(50);
+        // prepared last, but not contended yet
+        takingOver.scheduleAtFixedRateWithLock(secondRuns::incrementAndGet, 1, 1, TimeUnit.HOURS, 600);
+
+        leaving.stop(1, TimeUnit.SECONDS);
+        Thread.sleep(200);
+
+        assertEquals(1, firstRuns.get());
+        assertEquals(0, secondRuns.get());
+    }
+
+    @Test
+    public void itShouldRunOnUpToTheConcurrencyLimitOfNodes() throws InterruptedException {
+        final InMemoryLocker sharedLocker = new InMemoryLocker();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final AtomicInteger runs = new AtomicInteger();
+
+        for (int node = 0; node < 5; node++) {
+            new CronJobSchedulerFactory(sharedLocker)
+                .createScheduler("concurrent cron job")
+                .scheduleAtFixedRateWithConcurrency(
+                    () -> {
+                        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                        runs.incrementAndGet();
+                        sleep(300);
+                        running.decrementAndGet();
+                    },
+                    2,
+                    0,
+                    1,
+                    TimeUnit.HOURS,
+                    60
+                );
+        }
+
+        Thread.sleep(200);
+
+        assertEquals(2, runs.get());
+        assertEquals(2, maxRunning.get());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private CronJobScheduler buildRealTestObj() {
+        return buildRealTestFactory().createScheduler("test cron job");
+    }
+
+    private CronJobSchedulerFactory buildRealTestFactory() {
+        return new CronJobSchedulerFactory(new InMemoryLocker());
     }
 }
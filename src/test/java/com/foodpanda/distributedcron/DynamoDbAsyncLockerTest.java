@@ -0,0 +1,95 @@
+package com.foodpanda.distributedcron;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.model.AmazonDynamoDBException;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Clock;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DynamoDbAsyncLockerTest {
+
+    private AmazonDynamoDBAsync dynamoDb;
+
+    private AsyncLocker locker;
+
+    @Before
+    public void setUp() {
+        dynamoDb = mock(AmazonDynamoDBAsync.class);
+        locker = new DynamoDbAsyncLocker(dynamoDb, "table", Clock.systemUTC(), "node");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void itShouldCompleteWithTrueWhenTheConditionalUpdateSucceeds() {
+        when(dynamoDb.updateItemAsync(any(UpdateItemRequest.class), any(AsyncHandler.class))).thenAnswer(invocation -> {
+            ((AsyncHandler<UpdateItemRequest, UpdateItemResult>) invocation.getArguments()[1])
+                .onSuccess((UpdateItemRequest) invocation.getArguments()[0], new UpdateItemResult());
+            return null;
+        });
+
+        assertTrue(locker.tryLockAsync("lock", 10).join());
+
+        ArgumentCaptor<UpdateItemRequest> request = ArgumentCaptor.forClass(UpdateItemRequest.class);
+        verify(dynamoDb).updateItemAsync(request.capture(), any(AsyncHandler.class));
+        assertEquals("lock_dev", request.getValue().getKey().get("id").getS());
+        assertEquals("node", request.getValue().getExpressionAttributeValues().get(":owner").getS());
+        assertEquals("attribute_not_exists(#id) OR #lockExpiry < :now", request.getValue().getConditionExpression());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void itShouldCompleteWithFalseWhenTheLockIsHeldOrOnErrors() {
+        when(dynamoDb.updateItemAsync(any(UpdateItemRequest.class), any(AsyncHandler.class))).thenAnswer(invocation -> {
+            ((AsyncHandler<UpdateItemRequest, UpdateItemResult>) invocation.getArguments()[1])
+                .onError(new ConditionalCheckFailedException("held"));
+            return null;
+        }).thenAnswer(invocation -> {
+            ((AsyncHandler<UpdateItemRequest, UpdateItemResult>) invocation.getArguments()[1])
+                .onError(new AmazonDynamoDBException("boom"));
+            return null;
+        });
+
+        assertFalse(locker.tryLockAsync("lock", 10).join());
+        assertFalse(locker.tryLockAsync("lock", 10).join());
+    }
+
+    @Test
+    public void itShouldChainLockRunAndUnlockInTheScheduler() throws InterruptedException {
+        final AsyncLocker asyncLocker = mock(AsyncLocker.class);
+        when(asyncLocker.tryLockAsync("LOCK_async job", 600)).thenReturn(CompletableFuture.completedFuture(true));
+        when(asyncLocker.unlockAsync("LOCK_async job")).thenReturn(CompletableFuture.completedFuture(null));
+
+        final CountDownLatch ran = new CountDownLatch(1);
+        final Locker syncLocker = LockerMocks.mockLocker();
+
+        new CronJobSchedulerFactory(syncLocker)
+            .withAsyncLocker(asyncLocker)
+            .createScheduler("async job")
+            .scheduleAtFixedRate(ran::countDown, 0, 1, TimeUnit.HOURS);
+
+        assertTrue(ran.await(1, TimeUnit.SECONDS));
+        Thread.sleep(50);
+
+        verify(asyncLocker).unlockAsync("LOCK_async job");
+        verify(syncLocker, never()).tryLock("LOCK_async job", 600);
+    }
+}
@@ -1,10 +1,14 @@
 package com.foodpanda.distributedcron;
 
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.dynamodbv2.document.DynamoDB;
+import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.document.spec.UpdateItemSpec;
 import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
 import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
 import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
 import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
 
 import org.junit.After;
 import org.junit.Before;
@@ -12,9 +16,18 @@ import org.junit.ClassRule;
 import org.junit.Test;
 
 import java.time.Clock;
+import java.util.Arrays;
+import java.util.Collections;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class DynamoDbLockerTest {
 
@@ -85,4 +98,251 @@ public class DynamoDbLockerTest {
         assertTrue(locker.tryLock(LOCK_KEY, 20));
     }
 
+    @Test
+    public void testRenewKeepsLockPastOriginalExpiry() throws InterruptedException {
+        assertTrue(locker.tryLock(LOCK_KEY, 1));
+        assertTrue(locker.renewLock(LOCK_KEY, 20));
+        Thread.sleep(1500L);
+        assertFalse(buildLockerOwnedBy("other node").tryLock(LOCK_KEY, 20));
+    }
+
+    @Test
+    public void testRenewFailsForLockHeldByAnotherOwner() {
+        assertTrue(locker.tryLock(LOCK_KEY, 20));
+        assertFalse(buildLockerOwnedBy("other node").renewLock(LOCK_KEY, 20));
+    }
+
+    @Test
+    public void testReleaseLeavesLockHeldByAnotherOwner() {
+        assertTrue(locker.tryLock(LOCK_KEY, 20));
+
+        buildLockerOwnedBy("other node").unlock(LOCK_KEY);
+        ((HandOffLocker) buildLockerOwnedBy("other node")).handOff(Collections.singletonList(LOCK_KEY));
+
+        assertFalse(buildLockerOwnedBy("third node").tryLock(LOCK_KEY, 20));
+    }
+
+    @Test
+    public void testRenewFailsForExpiredLock() throws InterruptedException {
+        assertTrue(locker.tryLock(LOCK_KEY, 1));
+        Thread.sleep(1500L);
+        assertFalse(locker.renewLock(LOCK_KEY, 20));
+    }
+
+    @Test
+    public void testTryLockAllSkipsHeldLocks() {
+        assertTrue(locker.tryLock(LOCK_KEY, 20));
+
+        assertEquals(
+            Arrays.asList(LOCK_KEY + "1", LOCK_KEY + "2"),
+            Arrays.asList(
+                buildLockerOwnedBy("other node")
+                    .tryLockAll(Arrays.asList(LOCK_KEY, LOCK_KEY + "1", LOCK_KEY + "2"), 20)
+                    .toArray()
+            )
+        );
+        assertFalse(locker.tryLock(LOCK_KEY + "1", 20));
+    }
+
+    @Test
+    public void testGetLockExpiry() {
+        assertEquals(0L, ((DynamoDbLocker) locker).getLockExpiry(LOCK_KEY));
+
+        long now = System.currentTimeMillis();
+        assertTrue(locker.tryLock(LOCK_KEY, 20));
+        assertTrue(((DynamoDbLocker) locker).getLockExpiry(LOCK_KEY) >= now + 20000L);
+
+        locker.unlock(LOCK_KEY);
+        assertEquals(0L, ((DynamoDbLocker) locker).getLockExpiry(LOCK_KEY));
+    }
+
+    @Test
+    public void testTryAcquireTellsContendedFromError() {
+        assertEquals(LockOutcome.ACQUIRED, locker.tryAcquire(LOCK_KEY, 20));
+        assertEquals(LockOutcome.CONTENDED, locker.tryAcquire(LOCK_KEY, 20));
+
+        Locker lockerOfMissingTable = new DynamoDbLocker(
+            new DynamoDB(dynamoDB.getDynamoDbClient()),
+            "missing" + tableName,
+            Clock.systemUTC()
+        );
+        assertEquals(LockOutcome.ERROR, lockerOfMissingTable.tryAcquire(LOCK_KEY, 20));
+    }
+
+    @Test
+    public void testHandleSharesTheLockWithTheLocker() {
+        LockHandle handle = locker.handle(LOCK_KEY);
+
+        assertTrue(handle.tryLock(20));
+        assertFalse(locker.tryLock(LOCK_KEY, 20));
+        assertTrue(handle.renew(20));
+
+        handle.unlock();
+        assertEquals(0L, ((DynamoDbLocker) locker).getLockExpiry(LOCK_KEY));
+        assertTrue(locker.tryLock(LOCK_KEY, 20));
+        assertEquals(LockOutcome.CONTENDED, handle.tryAcquire(20));
+    }
+
+    @Test
+    public void testClaimPeriodOnlyOncePerDueTime() {
+        SharedScheduleLocker scheduleLocker = (SharedScheduleLocker) locker;
+        SharedScheduleLocker otherNode = (SharedScheduleLocker) buildLockerOwnedBy("other");
+
+        assertEquals(0L, scheduleLocker.getNextDueAt(LOCK_KEY));
+        assertEquals(LockOutcome.ACQUIRED, scheduleLocker.claimPeriod(LOCK_KEY, 0L, 5000L, 20));
+        assertEquals(LockOutcome.CONTENDED, otherNode.claimPeriod(LOCK_KEY, 0L, 5000L, 20));
+
+        scheduleLocker.unlock(LOCK_KEY);
+        assertEquals(5000L, otherNode.getNextDueAt(LOCK_KEY));
+        assertEquals(LockOutcome.CONTENDED, otherNode.claimPeriod(LOCK_KEY, 0L, 5000L, 20));
+        assertEquals(LockOutcome.ACQUIRED, otherNode.claimPeriod(LOCK_KEY, 5000L, 10000L, 20));
+        assertEquals(LockOutcome.CONTENDED, scheduleLocker.claimPeriod(LOCK_KEY, 5000L, 10000L, 20));
+    }
+
+    @Test
+    public void testClaimPeriodNotWhileLockIsHeld() {
+        SharedScheduleLocker scheduleLocker = (SharedScheduleLocker) locker;
+
+        assertEquals(LockOutcome.ACQUIRED, scheduleLocker.claimPeriod(LOCK_KEY, 0L, 5000L, 20));
+        scheduleLocker.unlock(LOCK_KEY);
+
+        assertTrue(locker.tryLock(LOCK_KEY, 20));
+        assertEquals(LockOutcome.CONTENDED, scheduleLocker.claimPeriod(LOCK_KEY, 5000L, 10000L, 20));
+
+        // locking and unlocking keeps the schedule
+        locker.unlock(LOCK_KEY);
+        assertEquals(5000L, scheduleLocker.getNextDueAt(LOCK_KEY));
+        assertEquals(LockOutcome.ACQUIRED, scheduleLocker.claimPeriod(LOCK_KEY, 5000L, 10000L, 20));
+    }
+
+    @Test
+    public void testHandOffKeepsTheScheduleUntilAcquired() {
+        final DynamoDbLocker dynamoDbLocker = (DynamoDbLocker) locker;
+
+        assertEquals(LockOutcome.ACQUIRED, dynamoDbLocker.claimPeriod(LOCK_KEY, 0L, 5000L, 20));
+        assertTrue(locker.tryLock("other", 20));
+        dynamoDbLocker.handOff(Collections.singletonList(LOCK_KEY));
+
+        assertEquals(
+            Collections.singleton(LOCK_KEY),
+            dynamoDbLocker.findHandedOff(Arrays.asList(LOCK_KEY, "other", "missing"))
+        );
+        assertEquals(0L, dynamoDbLocker.getLockExpiry(LOCK_KEY));
+        assertEquals(5000L, dynamoDbLocker.getNextDueAt(LOCK_KEY));
+
+        assertTrue(buildLockerOwnedBy("other node").tryLock(LOCK_KEY, 20));
+        assertTrue(dynamoDbLocker.findHandedOff(Collections.singletonList(LOCK_KEY)).isEmpty());
+    }
+
+    @Test
+    public void testFencesCheckpointCommitsByTheLock() {
+        final CheckpointLocker checkpointLocker = (CheckpointLocker) locker;
+        final CheckpointLocker otherNode = (CheckpointLocker) buildLockerOwnedBy("other node");
+
+        assertFalse(checkpointLocker.commitCheckpoint(LOCK_KEY, "1"));
+        assertNull(checkpointLocker.readCheckpoint(LOCK_KEY));
+
+        assertTrue(locker.tryLock(LOCK_KEY, 20));
+        assertTrue(checkpointLocker.commitCheckpoint(LOCK_KEY, "2"));
+        assertFalse(otherNode.commitCheckpoint(LOCK_KEY, "3"));
+        assertEquals("2", otherNode.readCheckpoint(LOCK_KEY));
+
+        // the checkpoint survives releasing and acquiring the lock, and the previous holder can't commit anymore
+        locker.unlock(LOCK_KEY);
+        assertTrue(otherNode.tryLock(LOCK_KEY, 20));
+        assertFalse(checkpointLocker.commitCheckpoint(LOCK_KEY, "4"));
+        assertTrue(otherNode.commitCheckpoint(LOCK_KEY, "5"));
+        assertEquals("5", checkpointLocker.readCheckpoint(LOCK_KEY));
+    }
+
+    @Test
+    public void testReturnsTheCheckpointWhenAcquiringTheLock() {
+        final CheckpointLocker checkpointLocker = (CheckpointLocker) locker;
+        final CheckpointLocker otherNode = (CheckpointLocker) buildLockerOwnedBy("other node");
+
+        final Checkpoint first = checkpointLocker.tryLockWithCheckpoint(LOCK_KEY, 20);
+        assertNull(first.getValue());
+        assertTrue(first.commit("1"));
+        assertNull(otherNode.tryLockWithCheckpoint(LOCK_KEY, 20));
+
+        locker.unlock(LOCK_KEY);
+        assertEquals("1", otherNode.tryLockWithCheckpoint(LOCK_KEY, 20).getValue());
+    }
+
+    @Test
+    public void testRepeatsTheSameAttempt() {
+        final IdempotentLocker idempotentLocker = (IdempotentLocker) locker;
+
+        assertEquals(LockOutcome.ACQUIRED, idempotentLocker.tryAcquire(LOCK_KEY, 20, "attempt"));
+        assertEquals(LockOutcome.ACQUIRED, idempotentLocker.tryAcquire(LOCK_KEY, 20, "attempt"));
+        assertEquals(LockOutcome.CONTENDED, idempotentLocker.tryAcquire(LOCK_KEY, 20, "other attempt"));
+        assertEquals(
+            LockOutcome.CONTENDED,
+            ((IdempotentLocker) buildLockerOwnedBy("other node")).tryAcquire(LOCK_KEY, 20, "attempt")
+        );
+        assertFalse(locker.tryLock(LOCK_KEY, 20));
+    }
+
+    @Test
+    public void testBacksOffWhenThrottled() {
+        final DynamoDB dynamoDb = mock(DynamoDB.class);
+        final Table table = mock(Table.class);
+        when(dynamoDb.getTable("throttled")).thenReturn(table);
+        when(table.updateItem(any(UpdateItemSpec.class)))
+            .thenThrow(new ProvisionedThroughputExceededException("slow down"))
+            .thenReturn(null);
+
+        final MutableClock clock = new MutableClock(1000L);
+        final DynamoDbLocker throttledLocker = new DynamoDbLocker(dynamoDb, "throttled", clock, "node");
+
+        assertEquals(LockOutcome.THROTTLED, throttledLocker.tryAcquire(LOCK_KEY, 20));
+        // no requests while backing off
+        assertEquals(LockOutcome.THROTTLED, throttledLocker.tryAcquire(LOCK_KEY, 20));
+        assertEquals(LockOutcome.THROTTLED, throttledLocker.claimPeriod(LOCK_KEY, 0L, 5000L, 20));
+        assertEquals(3, throttledLocker.getThrottledCount());
+
+        clock.advance(DynamoDbLocker.MIN_THROTTLE_BACKOFF_MILLIS);
+        assertEquals(LockOutcome.ACQUIRED, throttledLocker.tryAcquire(LOCK_KEY, 20));
+        verify(table, times(2)).updateItem(any(UpdateItemSpec.class));
+    }
+
+    @Test
+    public void testBacksOffOnlyTheThrottledLock() {
+        final DynamoDB dynamoDb = mock(DynamoDB.class);
+        final Table table = mock(Table.class);
+        when(dynamoDb.getTable("throttled")).thenReturn(table);
+        when(table.updateItem(any(UpdateItemSpec.class)))
+            .thenThrow(new ProvisionedThroughputExceededException("slow down"))
+            .thenReturn(null);
+
+        final DynamoDbLocker throttledLocker = new DynamoDbLocker(dynamoDb, "throttled", new MutableClock(1000L), "node");
+
+        assertEquals(LockOutcome.THROTTLED, throttledLocker.tryAcquire(LOCK_KEY, 20));
+        assertEquals(LockOutcome.ACQUIRED, throttledLocker.tryAcquire("OTHER_" + LOCK_KEY, 20));
+        assertEquals(LockOutcome.THROTTLED, throttledLocker.tryAcquire(LOCK_KEY, 20));
+        assertEquals(2, throttledLocker.getThrottledCount());
+    }
+
+    @Test
+    public void testRecognizesThrottlingErrorCodes() {
+        final AmazonServiceException throttling = new AmazonServiceException("slow down");
+        throttling.setErrorCode("ThrottlingException");
+        final AmazonServiceException other = new AmazonServiceException("boom");
+        other.setErrorCode("InternalServerError");
+
+        assertTrue(DynamoDbLocker.isThrottling(new ProvisionedThroughputExceededException("slow down")));
+        assertTrue(DynamoDbLocker.isThrottling(throttling));
+        assertFalse(DynamoDbLocker.isThrottling(other));
+        assertFalse(DynamoDbLocker.isThrottling(new IllegalStateException()));
+    }
+
+    private Locker buildLockerOwnedBy(String ownerId) {
+        return new DynamoDbLocker(
+            new DynamoDB(dynamoDB.getDynamoDbClient()),
+            tableName,
+            Clock.systemUTC(),
+            ownerId
+        );
+    }
+
 }
@@ -0,0 +1,146 @@
+package com.foodpanda.distributedcron;
+
+import com.amazonaws.services.dynamodbv2.document.DynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
+import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+
+public class DynamoDbMembershipTest {
+
+    @ClassRule
+    public static final LocalDynamoDbRule dynamoDB = new LocalDynamoDbRule();
+
+    private static final String TABLE_NAME = "membership";
+
+    private MutableClock clock;
+
+    @Before
+    public void setUp() {
+        dynamoDB.getDynamoDbClient().createTable(
+            new CreateTableRequest()
+                .withTableName(TABLE_NAME)
+                .withKeySchema(new KeySchemaElement("id", "HASH"))
+                .withAttributeDefinitions(
+                    new AttributeDefinition("id", "S")
+                )
+                .withProvisionedThroughput(
+                    new ProvisionedThroughput(1L, 1L)
+                )
+        );
+
+        clock = new MutableClock(System.currentTimeMillis());
+    }
+
+    @After
+    public void tearDown() {
+        dynamoDB.getDynamoDbClient().deleteTable(TABLE_NAME);
+    }
+
+    @Test
+    public void testLiveMembers() {
+        final Membership first = buildMembership("first");
+        final Membership second = buildMembership("second");
+
+        first.heartbeat();
+        second.heartbeat();
+
+        assertEquals(ImmutableSet.of("first", "second"), first.readLiveMembers());
+    }
+
+    @Test
+    public void testExpiredHeartbeat() {
+        final Membership first = buildMembership("first");
+        final Membership second = buildMembership("second");
+
+        first.heartbeat();
+        clock.advance(5000L);
+        second.heartbeat();
+        clock.advance(6000L);
+
+        assertEquals(ImmutableSet.of("second"), first.readLiveMembers());
+    }
+
+    @Test
+    public void testLeave() {
+        final Membership first = buildMembership("first");
+        final Membership second = buildMembership("second");
+
+        first.heartbeat();
+        second.heartbeat();
+        second.leave();
+
+        assertEquals(ImmutableSet.of("first"), first.readLiveMembers());
+    }
+
+    @Test
+    public void testLiveLoads() {
+        final Membership first = buildMembership("first");
+        final Membership second = buildMembership("second");
+
+        first.heartbeat(0.5);
+        second.heartbeat();
+
+        assertEquals(ImmutableMap.of("first", 0.5, "second", 0.0), first.readLiveLoads());
+    }
+
+    @Test
+    public void testPlainHeartbeatKeepsTheLoad() {
+        final Membership first = buildMembership("first");
+
+        first.heartbeat(0.5);
+        clock.advance(8000L);
+        first.heartbeat();
+        clock.advance(8000L);
+
+        assertEquals(ImmutableMap.of("first", 0.5), first.readLiveLoads());
+    }
+
+    @Test
+    public void testJobAssignerAndLoadAwareLockerOnOneTable() {
+        final Membership membership = buildMembership("first");
+        buildMembership("second").heartbeat(0.9);
+
+        final ConsistentHashJobAssigner assigner = new ConsistentHashJobAssigner(
+            membership,
+            "first",
+            1000,
+            10000,
+            16,
+            Executors.newSingleThreadScheduledExecutor()
+        );
+        final LoadAwareLocker locker = new LoadAwareLocker(
+            new InMemoryLocker(),
+            membership,
+            "first",
+            () -> 0.1,
+            200,
+            1000,
+            Executors.newSingleThreadScheduledExecutor()
+        );
+
+        locker.refresh();
+        // the heartbeat of the assigner must not wipe the load published by the locker
+        assigner.refresh();
+
+        assertEquals(ImmutableSet.of("first", "second"), assigner.getMembers());
+        assertEquals(ImmutableMap.of("first", 0.1, "second", 0.9), membership.readLiveLoads());
+        assertEquals(0, locker.bidDelayMillis("LOCK_job"));
+    }
+
+    private Membership buildMembership(String nodeId) {
+        return new DynamoDbMembership(new DynamoDB(dynamoDB.getDynamoDbClient()), TABLE_NAME, nodeId, 10, clock);
+    }
+}
@@ -0,0 +1,140 @@
+package com.foodpanda.distributedcron;
+
+import com.amazonaws.services.dynamodbv2.document.DynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
+import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DynamoDbRunHistoryTest {
+
+    @ClassRule
+    public static final LocalDynamoDbRule dynamoDB = new LocalDynamoDbRule();
+
+    private static final String TABLE_NAME = "history";
+
+    @Before
+    public void setUp() {
+        dynamoDB.getDynamoDbClient().createTable(
+            new CreateTableRequest()
+                .withTableName(TABLE_NAME)
+                .withKeySchema(new KeySchemaElement("job", "HASH"), new KeySchemaElement("run", "RANGE"))
+                .withAttributeDefinitions(
+                    new AttributeDefinition("job", "S"),
+                    new AttributeDefinition("run", "S")
+                )
+                .withProvisionedThroughput(
+                    new ProvisionedThroughput(1L, 1L)
+                )
+        );
+    }
+
+    @After
+    public void tearDown() {
+        dynamoDB.getDynamoDbClient().deleteTable(TABLE_NAME);
+    }
+
+    @Test
+    public void testRecentRunsAfterFlush() {
+        final DynamoDbRunHistory history = buildHistory("node", 100);
+
+        for (int run = 0; run < 30; run++) {
+            history.record("job", RunOutcome.SUCCEEDED, 1000L * run, 1000L * run + 10, null);
+        }
+        history.record("job", RunOutcome.FAILED, 30000L, 30500L, new IllegalStateException("boom"));
+        history.record("other job", RunOutcome.SUCCEEDED, 40000L, 40010L, null);
+
+        assertTrue(history.getRecentRuns("job", 10).isEmpty());
+
+        history.flush();
+
+        final List<RunRecord> runs = history.getRecentRuns("job", 3);
+        assertEquals(3, runs.size());
+        assertEquals(30000L, runs.get(0).getStartedAt());
+        assertEquals(500L, runs.get(0).getDurationMillis());
+        assertEquals(RunOutcome.FAILED, runs.get(0).getOutcome());
+        assertTrue(runs.get(0).isFailed());
+        assertEquals(IllegalStateException.class.getName(), runs.get(0).getExceptionClass());
+        assertEquals("job", runs.get(0).getJobDescription());
+        assertEquals("node", runs.get(0).getNodeId());
+        assertEquals(29000L, runs.get(1).getStartedAt());
+        assertEquals(RunOutcome.SUCCEEDED, runs.get(1).getOutcome());
+        assertFalse(runs.get(1).isFailed());
+        assertNull(runs.get(1).getExceptionClass());
+        assertEquals(31, history.getRecentRuns("job", 100).size());
+    }
+
+    @Test
+    public void testRunsOfDifferentNodesStartingAtOnce() {
+        final DynamoDbRunHistory first = buildHistory("first", 10);
+        final DynamoDbRunHistory second = buildHistory("second", 10);
+
+        first.record("job", RunOutcome.SUCCEEDED, 1000L, 1010L, null);
+        second.record("job", RunOutcome.CONTENDED, 1000L, 1000L, null);
+        first.flush();
+        second.flush();
+
+        final List<RunRecord> runs = first.getRecentRuns("job", 10);
+        assertEquals(2, runs.size());
+        assertEquals("second", runs.get(0).getNodeId());
+        assertEquals(RunOutcome.CONTENDED, runs.get(0).getOutcome());
+        assertFalse(runs.get(0).isFailed());
+        assertEquals(RunOutcome.SUCCEEDED, runs.get(1).getOutcome());
+    }
+
+    @Test
+    public void testRunsOfOneNodeStartingInTheSameMillisecond() {
+        final DynamoDbRunHistory history = buildHistory("node", 10);
+
+        history.record("job", RunOutcome.SUCCEEDED, 1000L, 1010L, null);
+        history.record("job", RunOutcome.CONTENDED, 1000L, 1000L, null);
+        history.record("job", RunOutcome.SKIPPED, 1000L, 1000L, null);
+        history.flush();
+
+        assertEquals(0, history.getDroppedCount());
+        assertEquals(3, history.getRecentRuns("job", 10).size());
+    }
+
+    @Test
+    public void testDropsTheOldestRunsWhenTheBufferIsFull() {
+        final DynamoDbRunHistory history = buildHistory("node", 2);
+
+        history.record("job", RunOutcome.SUCCEEDED, 1000L, 1010L, null);
+        history.record("job", RunOutcome.SUCCEEDED, 2000L, 2010L, null);
+        history.record("job", RunOutcome.SKIPPED, 3000L, 3000L, null);
+
+        assertEquals(1, history.getDroppedCount());
+
+        history.stop();
+
+        final List<RunRecord> runs = history.getRecentRuns("job", 10);
+        assertEquals(2, runs.size());
+        assertEquals(3000L, runs.get(0).getStartedAt());
+        assertEquals(RunOutcome.SKIPPED, runs.get(0).getOutcome());
+        assertEquals(2000L, runs.get(1).getStartedAt());
+    }
+
+    private DynamoDbRunHistory buildHistory(String nodeId, int capacity) {
+        return new DynamoDbRunHistory(
+            new DynamoDB(dynamoDB.getDynamoDbClient()),
+            TABLE_NAME,
+            nodeId,
+            capacity,
+            1000,
+            Clock.systemUTC()
+        );
+    }
+}
@@ -0,0 +1,65 @@
+package com.foodpanda.distributedcron;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class FleetSemaphoreTest {
+
+    private MutableClock clock;
+
+    private FleetSemaphore semaphore;
+
+    @Before
+    public void setUp() {
+        clock = new MutableClock(0L);
+        semaphore = new FleetSemaphore(new InMemoryLocker(clock), "semaphore", 3);
+    }
+
+    @Test
+    public void itShouldAdmitUpToThePermits() {
+        final Set<String> slots = new HashSet<>();
+
+        for (int i = 0; i < 3; i++) {
+            slots.add(semaphore.tryAcquire(20).getLockKey());
+        }
+
+        assertEquals(3, slots.size());
+        assertNull(semaphore.tryAcquire(20));
+    }
+
+    @Test
+    public void itShouldReuseReleasedPermits() {
+        final LockHandle permit = semaphore.tryAcquire(20);
+        semaphore.tryAcquire(20);
+        semaphore.tryAcquire(20);
+
+        permit.unlock();
+
+        assertEquals(permit.getLockKey(), semaphore.tryAcquire(20).getLockKey());
+        assertNull(semaphore.tryAcquire(20));
+    }
+
+    @Test
+    public void itShouldReclaimExpiredPermits() {
+        semaphore.tryAcquire(1);
+        semaphore.tryAcquire(20);
+        semaphore.tryAcquire(20);
+
+        clock.advance(1001L);
+
+        assertNotNull(semaphore.tryAcquire(20));
+        assertNull(semaphore.tryAcquire(20));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void itShouldRequireAPermit() {
+        new FleetSemaphore(new InMemoryLocker(), "semaphore", 0);
+    }
+}
@@ -0,0 +1,378 @@
+package com.foodpanda.distributedcron;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a whole fleet of schedulers in one thread on a virtual clock, to measure how a scheduling change behaves at
+ * scale before it ships
+ *
+ * Every node gets its own CronJobSchedulerFactory with a timing wheel executor without a ticker thread, and schedules
+ * every job at a fixed rate with a lock. The simulation advances the clock tick by tick and advances the wheels of all
+ * live nodes, in a shuffled order on every tick so no node always gets to the locks first. The locks are kept in a
+ * SimulatedLockStore, which adds latency and throttling to the lock calls, and nodes can crash at a given time, after
+ * which their wheels are never advanced again. The same seed always gives the same report.
+ *
+ * A run starts once its lock call returned, so the latency of the call counts towards the drift of the run. The
+ * call itself takes effect at the tick it was made in.
+ */
+class FleetSimulator {
+
+    /**
+     * A fixed start, so reports don't depend on when the simulation runs
+     */
+    private static final long START_MILLIS = 1_500_000_000_000L;
+
+    private static final int WHEEL_SIZE = 512;
+
+    private final int nodeCount;
+
+    private final int jobCount;
+
+    private final long periodMillis;
+
+    private final int expiryInSeconds;
+
+    private long tickMillis = 100;
+
+    private long seed = 42;
+
+    private long minLatencyMillis = 0;
+
+    private long maxLatencyMillis = 0;
+
+    private double throttleRate = 0;
+
+    private final Map<Integer, Long> crashes = new TreeMap<>();
+
+    /**
+     * @param nodeCount how many nodes the fleet has
+     * @param jobCount how many jobs every node schedules, their first runs are spread evenly over the first period
+     * @param periodMillis the fixed rate of all jobs
+     * @param expiryInSeconds the expiry of the lock acquired by each run
+     */
+    FleetSimulator(int nodeCount, int jobCount, long periodMillis, int expiryInSeconds) {
+        this.nodeCount = nodeCount;
+        this.jobCount = jobCount;
+        this.periodMillis = periodMillis;
+        this.expiryInSeconds = expiryInSeconds;
+    }
+
+    /**
+     * @param tickMillis how far the clock moves on each step, also the resolution of the timing wheels
+     */
+    FleetSimulator withTick(long tickMillis) {
+        this.tickMillis = tickMillis;
+
+        return this;
+    }
+
+    FleetSimulator withSeed(long seed) {
+        this.seed = seed;
+
+        return this;
+    }
+
+    FleetSimulator withLockLatency(long minLatencyMillis, long maxLatencyMillis) {
+        this.minLatencyMillis = minLatencyMillis;
+        this.maxLatencyMillis = maxLatencyMillis;
+
+        return this;
+    }
+
+    /**
+     * @param throttleRate the share of lock calls which are throttled, between 0 and 1
+     */
+    FleetSimulator withThrottling(double throttleRate) {
+        this.throttleRate = throttleRate;
+
+        return this;
+    }
+
+    /**
+     * @param node the number of the node, from 0
+     * @param atMillis when the node crashes, counted from the start of the simulation
+     */
+    FleetSimulator withCrash(int node, long atMillis) {
+        crashes.put(node, atMillis);
+
+        return this;
+    }
+
+    /**
+     * @param durationMillis how much virtual time to simulate
+     * @return what happened to the runs of the jobs
+     */
+    Report run(long durationMillis) {
+        final MutableClock clock = new MutableClock(START_MILLIS);
+        final Random random = new Random(seed);
+        final SimulatedLockStore store = new SimulatedLockStore(clock, random);
+        store.setLatency(minLatencyMillis, maxLatencyMillis);
+        store.setThrottleRate(throttleRate);
+
+        final Report report = new Report(jobCount, periodMillis, durationMillis);
+        final List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < nodeCount; i++) {
+            final Node node = new Node("node-" + i, clock, store);
+
+            for (int job = 0; job < jobCount; job++) {
+                final int jobNumber = job;
+
+                node.factory.createScheduler("job " + job).scheduleAtFixedRateWithLock(
+                    () -> report.recordRun(jobNumber, node.nodeId, clock.millis() + node.locker.getLastLatencyMillis()),
+                    report.firstDueOffsetMillis(job),
+                    periodMillis,
+                    TimeUnit.MILLISECONDS,
+                    expiryInSeconds
+                );
+            }
+
+            nodes.add(node);
+        }
+
+        final List<Node> order = new ArrayList<>(nodes);
+
+        while (clock.millis() < START_MILLIS + durationMillis) {
+            clock.advance(tickMillis);
+
+            for (Map.Entry<Integer, Long> crash : crashes.entrySet()) {
+                final Node node = nodes.get(crash.getKey());
+
+                if (!node.crashed && clock.millis() >= START_MILLIS + crash.getValue()) {
+                    node.crash();
+                    report.recordCrash(node.nodeId, clock.millis(), store.countHeldBy(node.nodeId));
+                }
+            }
+
+            Collections.shuffle(order, random);
+
+            for (Node node : order) {
+                if (!node.crashed) {
+                    node.wheel.advanceTo(clock.millis());
+                }
+            }
+        }
+
+        for (Node node : nodes) {
+            node.crash();
+        }
+
+        report.lockCallCount = store.getCallCount();
+        report.throttledCallCount = store.getThrottledCount();
+
+        return report;
+    }
+
+    private class Node {
+
+        private final String nodeId;
+
+        private final SimulatedLockStore.NodeLocker locker;
+
+        private final TimingWheelScheduledExecutorService wheel;
+
+        private final CronJobSchedulerFactory factory;
+
+        private boolean crashed;
+
+        private Node(String nodeId, MutableClock clock, SimulatedLockStore store) {
+            this.nodeId = nodeId;
+            this.locker = store.forNode(nodeId);
+            this.wheel = new TimingWheelScheduledExecutorService(clock, tickMillis, WHEEL_SIZE, null, null);
+            this.factory = new CronJobSchedulerFactory(locker, wheel, new LeaseRenewer(locker, wheel)).withClock(clock);
+        }
+
+        private void crash() {
+            crashed = true;
+            wheel.shutdownNow();
+        }
+    }
+
+    /**
+     * What happened to the runs of the simulated jobs, every run belongs to the period of its job it started in
+     */
+    static class Report {
+
+        private final int jobCount;
+
+        private final long periodMillis;
+
+        private final long durationMillis;
+
+        private final int[][] runCounts;
+
+        private final String[] lastRunNodes;
+
+        /**
+         * The due time of the first run after a crash of the node which ran the job last, 0 if there was none
+         */
+        private final long[] failedOverDueAts;
+
+        private final LatencyHistogram scheduleDrift = new LatencyHistogram();
+
+        private final LatencyHistogram failoverLatency = new LatencyHistogram();
+
+        private long runCount;
+
+        private long lockCallCount;
+
+        private long throttledCallCount;
+
+        private long locksHeldAtCrashCount;
+
+        private Report(int jobCount, long periodMillis, long durationMillis) {
+            this.jobCount = jobCount;
+            this.periodMillis = periodMillis;
+            this.durationMillis = durationMillis;
+            this.runCounts = new int[jobCount][(int) (durationMillis / periodMillis) + 2];
+            this.lastRunNodes = new String[jobCount];
+            this.failedOverDueAts = new long[jobCount];
+        }
+
+        private long firstDueOffsetMillis(int job) {
+            return job * periodMillis / jobCount;
+        }
+
+        private void recordRun(int job, String nodeId, long startedAt) {
+            final long firstDueAt = START_MILLIS + firstDueOffsetMillis(job);
+            final long period = Math.floorDiv(startedAt - firstDueAt, periodMillis);
+
+            runCount++;
+            runCounts[job][(int) period]++;
+            scheduleDrift.record(startedAt - (firstDueAt + period * periodMillis));
+            lastRunNodes[job] = nodeId;
+
+            if (failedOverDueAts[job] != 0) {
+                failoverLatency.record(startedAt - failedOverDueAts[job]);
+                failedOverDueAts[job] = 0;
+            }
+        }
+
+        private void recordCrash(String nodeId, long crashedAt, int heldLocks) {
+            locksHeldAtCrashCount += heldLocks;
+
+            for (int job = 0; job < jobCount; job++) {
+                if (nodeId.equals(lastRunNodes[job]) && failedOverDueAts[job] == 0) {
+                    final long firstDueAt = START_MILLIS + firstDueOffsetMillis(job);
+                    final long periodsBefore = Math.floorDiv(crashedAt - firstDueAt + periodMillis - 1, periodMillis);
+
+                    failedOverDueAts[job] = firstDueAt + periodsBefore * periodMillis;
+                }
+            }
+        }
+
+        long getRunCount() {
+            return runCount;
+        }
+
+        long getLockCallCount() {
+            return lockCallCount;
+        }
+
+        long getThrottledCallCount() {
+            return throttledCallCount;
+        }
+
+        /**
+         * @return the number of unexpired locks the crashed nodes held when they crashed
+         */
+        long getLocksHeldAtCrashCount() {
+            return locksHeldAtCrashCount;
+        }
+
+        double getLockCallsPerRun() {
+            return runCount > 0 ? (double) lockCallCount / runCount : 0;
+        }
+
+        /**
+         * @return the number of periods of all jobs which ended within the simulation
+         */
+        long getExpectedPeriodCount() {
+            long expected = 0;
+
+            for (int job = 0; job < jobCount; job++) {
+                expected += countCompletedPeriods(job);
+            }
+
+            return expected;
+        }
+
+        /**
+         * @return the number of completed periods of all jobs without any run
+         */
+        long getMissedPeriodCount() {
+            long missed = 0;
+
+            for (int job = 0; job < jobCount; job++) {
+                final int completedPeriods = countCompletedPeriods(job);
+
+                for (int period = 0; period < completedPeriods; period++) {
+                    if (runCounts[job][period] == 0) {
+                        missed++;
+                    }
+                }
+            }
+
+            return missed;
+        }
+
+        /**
+         * @return the number of runs on top of the first one in their period
+         */
+        long getDuplicateRunCount() {
+            long duplicates = 0;
+
+            for (int[] periods : runCounts) {
+                for (int runs : periods) {
+                    duplicates += Math.max(0, runs - 1);
+                }
+            }
+
+            return duplicates;
+        }
+
+        /**
+         * @return how late the runs started after their due time, in milliseconds
+         */
+        LatencyHistogram getScheduleDrift() {
+            return scheduleDrift;
+        }
+
+        /**
+         * @return for each job last run by a node which crashed, how late its next run on another node started after
+         *         its due time, in milliseconds
+         */
+        LatencyHistogram getFailoverLatency() {
+            return failoverLatency;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                "%d runs, %.2f lock calls per run, %d throttled calls, %d of %d periods missed, %d duplicate runs, " +
+                    "drift p50 %dms p99 %dms max %dms, %d failovers max %dms",
+                runCount,
+                getLockCallsPerRun(),
+                throttledCallCount,
+                getMissedPeriodCount(),
+                getExpectedPeriodCount(),
+                getDuplicateRunCount(),
+                scheduleDrift.getPercentile(50),
+                scheduleDrift.getPercentile(99),
+                scheduleDrift.getMax(),
+                failoverLatency.getCount(),
+                failoverLatency.getMax()
+            );
+        }
+
+        private int countCompletedPeriods(int job) {
+            return (int) Math.max(0, (durationMillis - firstDueOffsetMillis(job)) / periodMillis);
+        }
+    }
+}
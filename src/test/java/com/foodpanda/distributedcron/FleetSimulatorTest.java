@@ -0,0 +1,87 @@
+package com.foodpanda.distributedcron;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FleetSimulatorTest {
+
+    private static final long MINUTE = 60_000L;
+
+    @Test
+    public void itShouldRunEveryPeriodExactlyOnceAcrossALargeFleet() {
+        final FleetSimulator.Report report = new FleetSimulator(100, 1000, MINUTE, 50).run(5 * MINUTE);
+
+        assertEquals(0, report.getMissedPeriodCount());
+        assertEquals(0, report.getDuplicateRunCount());
+        assertEquals(5000, report.getRunCount());
+        // every node makes one lock call per run
+        assertEquals(100.0, report.getLockCallsPerRun(), 0.01);
+        // runs start on the first tick after their due time
+        assertTrue(report.getScheduleDrift().getMax() <= 100);
+    }
+
+    @Test
+    public void itShouldCountLockLatencyAsDrift() {
+        final FleetSimulator.Report report = new FleetSimulator(10, 100, MINUTE, 50)
+            .withLockLatency(200, 400)
+            .run(5 * MINUTE);
+
+        assertEquals(0, report.getMissedPeriodCount());
+        assertTrue(report.getScheduleDrift().getPercentile(50) >= 200);
+        assertTrue(report.getScheduleDrift().getMax() <= 500);
+    }
+
+    @Test
+    public void itShouldMissPeriodsOnlyWhenAllNodesAreThrottled() {
+        final FleetSimulator.Report report = new FleetSimulator(3, 1000, MINUTE, 50)
+            .withThrottling(0.5)
+            .run(10 * MINUTE);
+
+        assertTrue(report.getThrottledCallCount() > 0);
+        // a period is missed if all 3 lock calls are throttled, 1 in 8
+        final double missedShare = (double) report.getMissedPeriodCount() / report.getExpectedPeriodCount();
+        assertTrue(String.valueOf(missedShare), missedShare > 0.10 && missedShare < 0.15);
+        assertEquals(0, report.getDuplicateRunCount());
+    }
+
+    @Test
+    public void itShouldFailOverWithinAPeriodWhenLocksExpireBeforeTheNextRun() {
+        // the nodes crash half way into the second period, while holding the locks of the runs they made
+        final FleetSimulator.Report report = new FleetSimulator(10, 100, MINUTE, 50)
+            .withCrash(0, 90_000L)
+            .withCrash(1, 90_000L)
+            .run(5 * MINUTE);
+
+        assertTrue(report.getLocksHeldAtCrashCount() > 0);
+        assertEquals(0, report.getMissedPeriodCount());
+        assertEquals(0, report.getDuplicateRunCount());
+        assertTrue(report.getFailoverLatency().getCount() > 0);
+        assertTrue(report.getFailoverLatency().getMax() <= 100);
+    }
+
+    @Test
+    public void itShouldMissPeriodsWhenTheLocksOfACrashedNodeOutlastThePeriod() {
+        final FleetSimulator.Report report = new FleetSimulator(10, 100, MINUTE, 90)
+            .withCrash(0, 90_000L)
+            .run(5 * MINUTE);
+
+        assertTrue(report.getLocksHeldAtCrashCount() > 0);
+        assertTrue(report.getMissedPeriodCount() > 0);
+        assertEquals(0, report.getDuplicateRunCount());
+        // the other nodes only get the lock on the first run after it expired
+        assertTrue(report.getFailoverLatency().getMax() >= MINUTE);
+    }
+
+    @Test
+    public void itShouldPlayOutTheSameWayForTheSameSeed() {
+        final FleetSimulator simulator = new FleetSimulator(20, 200, MINUTE, 50)
+            .withLockLatency(10, 300)
+            .withThrottling(0.2)
+            .withCrash(3, 100_000L)
+            .withSeed(7);
+
+        assertEquals(simulator.run(5 * MINUTE).toString(), simulator.run(5 * MINUTE).toString());
+    }
+}
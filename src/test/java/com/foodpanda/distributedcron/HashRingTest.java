@@ -0,0 +1,61 @@
+package com.foodpanda.distributedcron;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HashRingTest {
+
+    private static final int JOB_COUNT = 10000;
+
+    @Test
+    public void itShouldHaveNoOwnerWithoutMembers() {
+        assertNull(new HashRing(Collections.emptyList(), 128).ownerOf("job"));
+    }
+
+    @Test
+    public void itShouldSpreadJobsEvenlyAcrossMembers() {
+        final HashRing ring = new HashRing(Arrays.asList("a", "b", "c", "d"), 128);
+        final Map<String, Integer> jobsPerMember = new HashMap<>();
+
+        for (String job : buildJobs()) {
+            jobsPerMember.merge(ring.ownerOf(job), 1, Integer::sum);
+        }
+
+        assertEquals(4, jobsPerMember.size());
+        for (int jobs : jobsPerMember.values()) {
+            // a perfectly even share would be 2500
+            assertTrue("Uneven share of " + jobs + " jobs", jobs > 1800 && jobs < 3200);
+        }
+    }
+
+    @Test
+    public void itShouldOnlyMoveJobsOfTheLeavingMember() {
+        final HashRing before = new HashRing(Arrays.asList("a", "b", "c", "d"), 128);
+        final HashRing after = new HashRing(Arrays.asList("a", "b", "c"), 128);
+
+        for (String job : buildJobs()) {
+            if (!"d".equals(before.ownerOf(job))) {
+                assertEquals(before.ownerOf(job), after.ownerOf(job));
+            }
+        }
+    }
+
+    private List<String> buildJobs() {
+        final List<String> jobs = new ArrayList<>();
+        for (int i = 0; i < JOB_COUNT; i++) {
+            jobs.add("job " + i);
+        }
+
+        return jobs;
+    }
+}
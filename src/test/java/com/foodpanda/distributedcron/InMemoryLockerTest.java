@@ -0,0 +1,184 @@
+package com.foodpanda.distributedcron;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InMemoryLockerTest {
+
+    private static final String LOCK_KEY = "lock";
+
+    private MutableClock clock;
+
+    private InMemoryLocker locker;
+
+    @Before
+    public void setUp() {
+        clock = new MutableClock(1000L);
+        locker = new InMemoryLocker(clock);
+    }
+
+    @Test
+    public void itShouldNotReacquireAHeldLock() {
+        assertTrue(locker.tryLock(LOCK_KEY, 20));
+        assertFalse(locker.tryLock(LOCK_KEY, 20));
+        assertTrue(locker.tryLock(LOCK_KEY + LOCK_KEY, 20));
+    }
+
+    @Test
+    public void itShouldAcquireAnExpiredLock() {
+        assertTrue(locker.tryLock(LOCK_KEY, 1));
+
+        clock.advance(1000L);
+        assertFalse(locker.tryLock(LOCK_KEY, 1));
+
+        clock.advance(1L);
+        assertTrue(locker.tryLock(LOCK_KEY, 1));
+    }
+
+    @Test
+    public void itShouldAcquireAReleasedLock() {
+        assertTrue(locker.tryLock(LOCK_KEY, 20));
+        locker.unlock(LOCK_KEY);
+
+        assertEquals(0, locker.getLockExpiry(LOCK_KEY));
+        assertTrue(locker.tryLock(LOCK_KEY, 20));
+    }
+
+    @Test
+    public void itShouldMarkHandedOffLocksUntilTheyAreAcquired() {
+        assertTrue(locker.tryLock(LOCK_KEY, 20));
+        assertTrue(locker.tryLock("other", 20));
+        locker.handOff(Collections.singletonList(LOCK_KEY));
+        locker.unlock("other");
+
+        assertEquals(Collections.singleton(LOCK_KEY), locker.findHandedOff(Arrays.asList(LOCK_KEY, "other", "missing")));
+        assertEquals(0, locker.getLockExpiry(LOCK_KEY));
+
+        assertTrue(locker.tryLock(LOCK_KEY, 20));
+        assertTrue(locker.findHandedOff(Collections.singletonList(LOCK_KEY)).isEmpty());
+    }
+
+    @Test
+    public void itShouldOnlyCommitCheckpointsWhileTheLockIsHeld() {
+        assertFalse(locker.commitCheckpoint(LOCK_KEY, "1"));
+        assertEquals(null, locker.readCheckpoint(LOCK_KEY));
+
+        assertTrue(locker.tryLock(LOCK_KEY, 1));
+        assertTrue(locker.commitCheckpoint(LOCK_KEY, "2"));
+
+        clock.advance(1001L);
+        assertFalse(locker.commitCheckpoint(LOCK_KEY, "3"));
+
+        // the checkpoint outlives the lock
+        locker.unlock(LOCK_KEY);
+        assertEquals("2", locker.readCheckpoint(LOCK_KEY));
+    }
+
+    @Test
+    public void itShouldReturnTheCheckpointWhenAcquiringTheLock() {
+        final Checkpoint first = locker.tryLockWithCheckpoint(LOCK_KEY, 20);
+        assertEquals(null, first.getValue());
+        assertTrue(first.commit("1"));
+        assertEquals(null, locker.tryLockWithCheckpoint(LOCK_KEY, 20));
+
+        locker.unlock(LOCK_KEY);
+        assertEquals("1", locker.tryLockWithCheckpoint(LOCK_KEY, 20).getValue());
+    }
+
+    @Test
+    public void itShouldRepeatTheSameAttempt() {
+        assertEquals(LockOutcome.ACQUIRED, locker.tryAcquire(LOCK_KEY, 20, "attempt"));
+        assertEquals(LockOutcome.ACQUIRED, locker.tryAcquire(LOCK_KEY, 20, "attempt"));
+        assertEquals(LockOutcome.CONTENDED, locker.tryAcquire(LOCK_KEY, 20, "other attempt"));
+        assertFalse(locker.tryLock(LOCK_KEY, 20));
+    }
+
+    @Test
+    public void itShouldRenewOnlyHeldLocks() {
+        assertFalse(locker.renewLock(LOCK_KEY, 20));
+
+        assertTrue(locker.tryLock(LOCK_KEY, 1));
+        assertTrue(locker.renewLock(LOCK_KEY, 20));
+        assertEquals(21000L, locker.getLockExpiry(LOCK_KEY));
+
+        clock.advance(30000L);
+        assertFalse(locker.renewLock(LOCK_KEY, 20));
+    }
+
+    @Test
+    public void itShouldClaimEachPeriodOnce() {
+        assertEquals(LockOutcome.ACQUIRED, locker.claimPeriod(LOCK_KEY, 0L, 5000L, 20));
+        assertEquals(LockOutcome.CONTENDED, locker.claimPeriod(LOCK_KEY, 0L, 5000L, 20));
+
+        locker.unlock(LOCK_KEY);
+        assertEquals(5000L, locker.getNextDueAt(LOCK_KEY));
+        assertEquals(LockOutcome.CONTENDED, locker.claimPeriod(LOCK_KEY, 0L, 5000L, 20));
+
+        assertTrue(locker.tryLock(LOCK_KEY, 20));
+        assertEquals(LockOutcome.CONTENDED, locker.claimPeriod(LOCK_KEY, 5000L, 10000L, 20));
+
+        locker.unlock(LOCK_KEY);
+        assertEquals(LockOutcome.ACQUIRED, locker.claimPeriod(LOCK_KEY, 5000L, 10000L, 20));
+    }
+
+    @Test
+    public void itShouldSweepExpiredLocks() {
+        for (int i = 0; i < 10000; i++) {
+            locker.tryLock(LOCK_KEY + i, 1);
+        }
+
+        clock.advance(5000L);
+
+        for (int i = 0; i < 10000; i++) {
+            locker.tryLock(LOCK_KEY, 1);
+        }
+
+        assertTrue("expired locks were not swept, " + locker.size() + " left", locker.size() < 1000);
+    }
+
+    @Test
+    public void itShouldGrantAContendedLockToOneThreadOnly() throws Exception {
+        final int threads = 8;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+
+        try {
+            for (int round = 0; round < 100; round++) {
+                final String lockKey = LOCK_KEY + round;
+                final List<Future<Boolean>> attempts = new ArrayList<>();
+
+                for (int i = 0; i < threads; i++) {
+                    attempts.add(executor.submit(() -> {
+                        start.await();
+
+                        return locker.tryLock(lockKey, 20);
+                    }));
+                }
+
+                start.countDown();
+
+                int acquired = 0;
+                for (Future<Boolean> attempt : attempts) {
+                    acquired += attempt.get() ? 1 : 0;
+                }
+
+                assertEquals(1, acquired);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.foodpanda.distributedcron;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class JdbcLockerTest {
+
+    private static final String LOCK_KEY = "lock";
+
+    private static final String TABLE_NAME = "fleet_cron_lock";
+
+    private static int databaseCount = 0;
+
+    private JdbcConnectionPool dataSource;
+
+    private MutableClock clock;
+
+    private JdbcLocker locker;
+
+    @Before
+    public void setUp() throws SQLException {
+        // Unique database for each run
+        dataSource = JdbcConnectionPool.create("jdbc:h2:mem:locks" + databaseCount++, "sa", "");
+
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute(
+                "CREATE TABLE " + TABLE_NAME + " ("
+                    + "id VARCHAR(255) PRIMARY KEY, "
+                    + "lock_expiry BIGINT NOT NULL, "
+                    + "owner VARCHAR(255) NOT NULL, "
+                    + "created_at VARCHAR(64) NOT NULL)"
+            );
+        }
+
+        clock = new MutableClock(1000L);
+        locker = buildLockerOwnedBy("node-a");
+    }
+
+    @After
+    public void tearDown() {
+        dataSource.dispose();
+    }
+
+    @Test
+    public void testTryLockDoesNotReacquire() {
+        assertTrue(locker.tryLock(LOCK_KEY, 20));
+        assertFalse(locker.tryLock(LOCK_KEY, 20));
+        assertTrue(locker.tryLock(LOCK_KEY + LOCK_KEY, 20));
+    }
+
+    @Test
+    public void testExpiresLock() {
+        assertTrue(locker.tryLock(LOCK_KEY, 1));
+
+        clock.advance(1001L);
+        assertEquals(LockOutcome.ACQUIRED, buildLockerOwnedBy("node-b").tryAcquire(LOCK_KEY, 1));
+    }
+
+    @Test
+    public void testUnlock() {
+        assertTrue(locker.tryLock(LOCK_KEY, 20));
+        locker.unlock(LOCK_KEY);
+
+        assertEquals(0, locker.getLockExpiry(LOCK_KEY));
+        assertTrue(buildLockerOwnedBy("node-b").tryLock(LOCK_KEY, 20));
+    }
+
+    @Test
+    public void testTryAcquireTellsContendedFromError() {
+        assertEquals(LockOutcome.ACQUIRED, locker.tryAcquire(LOCK_KEY, 20));
+        assertEquals(LockOutcome.CONTENDED, buildLockerOwnedBy("node-b").tryAcquire(LOCK_KEY, 20));
+
+        dataSource.dispose();
+        assertEquals(LockOutcome.ERROR, locker.tryAcquire(LOCK_KEY, 20));
+        assertEquals(0, locker.getLockExpiry(LOCK_KEY));
+    }
+
+    @Test
+    public void testCommitsOnConnectionsHandedOutWithoutAutoCommit() throws SQLException {
+        final Connection connection = dataSource.getConnection();
+        connection.setAutoCommit(false);
+        final DataSource transactionalDataSource = mock(DataSource.class);
+        when(transactionalDataSource.getConnection()).thenReturn(connection);
+
+        assertTrue(new JdbcLocker(transactionalDataSource, TABLE_NAME, clock, "node-b").tryLock(LOCK_KEY, 20));
+
+        assertEquals(LockOutcome.CONTENDED, locker.tryAcquire(LOCK_KEY, 20));
+    }
+
+    @Test
+    public void testContendedAttemptsOnAKnownLockOnlyUpdate() throws SQLException {
+        final AtomicInteger inserts = new AtomicInteger();
+        final JdbcLocker contender = new JdbcLocker(countingInserts(inserts), TABLE_NAME, clock, "node-b");
+        assertTrue(locker.tryLock(LOCK_KEY, 20));
+
+        // the first attempt doesn't know the row yet
+        assertEquals(LockOutcome.CONTENDED, contender.tryAcquire(LOCK_KEY, 20));
+        assertEquals(1, inserts.get());
+
+        assertEquals(LockOutcome.CONTENDED, contender.tryAcquire(LOCK_KEY, 20));
+        assertEquals(Collections.emptySet(), contender.tryLockAll(Arrays.asList(LOCK_KEY, LOCK_KEY), 20));
+        assertEquals(1, inserts.get());
+
+        clock.advance(21000L);
+        assertEquals(LockOutcome.ACQUIRED, contender.tryAcquire(LOCK_KEY, 20));
+    }
+
+    @Test
+    public void testTryLockAllAcquiresTheFreeLocks() {
+        assertTrue(buildLockerOwnedBy("node-b").tryLock("held", 20));
+
+        assertEquals(
+            new HashSet<>(Arrays.asList(LOCK_KEY, "other")),
+            locker.tryLockAll(Arrays.asList(LOCK_KEY, "held", "other"), 20)
+        );
+        assertEquals(21000L, locker.getLockExpiry("other"));
+    }
+
+    @Test
+    public void testReleaseOnlyByOwner() {
+        assertTrue(locker.tryLock(LOCK_KEY, 20));
+
+        buildLockerOwnedBy("node-b").unlock(LOCK_KEY);
+        buildLockerOwnedBy("node-b").unlockAll(Collections.singletonList(LOCK_KEY));
+        assertFalse(buildLockerOwnedBy("node-c").tryLock(LOCK_KEY, 20));
+
+        locker.unlock(LOCK_KEY);
+        assertTrue(buildLockerOwnedBy("node-c").tryLock(LOCK_KEY, 20));
+    }
+
+    @Test
+    public void testRenewOnlyByOwner() {
+        assertTrue(locker.tryLock(LOCK_KEY, 1));
+
+        assertFalse(buildLockerOwnedBy("node-b").renewLock(LOCK_KEY, 20));
+        assertTrue(locker.renewLock(LOCK_KEY, 20));
+        assertEquals(21000L, locker.getLockExpiry(LOCK_KEY));
+
+        clock.advance(30000L);
+        assertFalse(locker.renewLock(LOCK_KEY, 20));
+    }
+
+    @Test
+    public void itShouldReleaseAllLocksInOneBatch() {
+        assertTrue(locker.tryLock(LOCK_KEY, 20));
+        assertTrue(locker.tryLock("other", 20));
+
+        locker.unlockAll(Arrays.asList(LOCK_KEY, "other", "missing"));
+
+        assertEquals(0, locker.getLockExpiry(LOCK_KEY));
+        assertEquals(0, locker.getLockExpiry("other"));
+        assertTrue(buildLockerOwnedBy("node-b").tryLock("other", 20));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsInvalidTableName() {
+        new JdbcLocker(dataSource, "locks; DROP TABLE locks");
+    }
+
+    private JdbcLocker buildLockerOwnedBy(String ownerId) {
+        return new JdbcLocker(dataSource, TABLE_NAME, clock, ownerId);
+    }
+
+    /**
+     * @return a data source handing out connections of the test database, counting the INSERT statements prepared
+     */
+    private DataSource countingInserts(AtomicInteger inserts) throws SQLException {
+        final DataSource countingDataSource = mock(DataSource.class);
+        when(countingDataSource.getConnection()).thenAnswer(invocation -> {
+            final Connection connection = dataSource.getConnection();
+
+            return Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[] {Connection.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("prepareStatement") && ((String) args[0]).startsWith("INSERT")) {
+                        inserts.incrementAndGet();
+                    }
+
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                }
+            );
+        });
+
+        return countingDataSource;
+    }
+}
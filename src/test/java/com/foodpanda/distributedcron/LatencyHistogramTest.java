@@ -0,0 +1,59 @@
+package com.foodpanda.distributedcron;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void itShouldCountSmallValuesExactly() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 0; value < 16; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(16, histogram.getCount());
+        assertEquals(15, histogram.getMax());
+        assertEquals(7.5, histogram.getMean(), 0.001);
+        assertEquals(7, histogram.getPercentile(50));
+        assertEquals(15, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void itShouldKeepPercentilesWithinTheBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value * 1000);
+        }
+
+        assertWithinBucketError(50_000_000L, histogram.getPercentile(50));
+        assertWithinBucketError(99_000_000L, histogram.getPercentile(99));
+        assertEquals(100_000_000L, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void itShouldMapEveryValueIntoABucketCoveringIt() {
+        long[] values = {0, 7, 8, 9, 15, 16, 17, 1000, 1023, 1024, 123_456_789L, Long.MAX_VALUE};
+
+        for (long value : values) {
+            int bucket = LatencyHistogram.bucketOf(value);
+
+            assertTrue(value + " above its bucket", value <= LatencyHistogram.upperBoundOf(bucket));
+            assertTrue(value + " below its bucket", bucket == 0 || value > LatencyHistogram.upperBoundOf(bucket - 1));
+        }
+    }
+
+    @Test
+    public void itShouldReturnZeroWhenEmpty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getPercentile(99));
+        assertEquals(0, histogram.getMean(), 0);
+    }
+
+    private static void assertWithinBucketError(long expected, long actual) {
+        assertTrue("expected about " + expected + " but was " + actual, Math.abs(actual - expected) <= expected / 8);
+    }
+}
@@ -0,0 +1,92 @@
+package com.foodpanda.distributedcron;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class LeaderElectionTest {
+
+    private static final String LEADER_LOCK_KEY = "LEADER_fleet";
+
+    private LeaderElection election;
+
+    @After
+    public void tearDown() {
+        election.stop();
+    }
+
+    @Test
+    public void itShouldBecomeLeaderAndKeepRenewing() throws InterruptedException {
+        final Locker locker = mock(Locker.class);
+        when(locker.tryLock(LEADER_LOCK_KEY, 1)).thenReturn(true);
+        when(locker.renewLock(LEADER_LOCK_KEY, 1)).thenReturn(true);
+
+        election = new LeaderElection(locker, "fleet", 1);
+        election.start();
+
+        Thread.sleep(1200);
+
+        assertTrue(election.isLeader());
+        verify(locker, atLeast(2)).renewLock(LEADER_LOCK_KEY, 1);
+    }
+
+    @Test
+    public void itShouldTakeOverOnceTheLeaseLapses() throws InterruptedException {
+        final Locker locker = mock(Locker.class);
+        when(locker.tryLock(LEADER_LOCK_KEY, 1)).thenReturn(false, false, true);
+
+        election = new LeaderElection(locker, "fleet", 1);
+        election.start();
+
+        assertFalse(election.isLeader());
+        Thread.sleep(1000);
+        assertTrue(election.isLeader());
+    }
+
+    @Test
+    public void itShouldStepDownWhenRenewalFails() throws InterruptedException {
+        final Locker locker = mock(Locker.class);
+        when(locker.tryLock(LEADER_LOCK_KEY, 1)).thenReturn(true, false);
+        when(locker.renewLock(LEADER_LOCK_KEY, 1)).thenReturn(false);
+
+        election = new LeaderElection(locker, "fleet", 1);
+        election.start();
+
+        Thread.sleep(500);
+
+        assertFalse(election.isLeader());
+    }
+
+    @Test
+    public void itShouldOnlyRunJobsOnTheLeaderWithoutLocking() throws InterruptedException {
+        final Locker locker = LockerMocks.mockLocker();
+        when(locker.tryLock(LEADER_LOCK_KEY, 10)).thenReturn(false);
+
+        election = new LeaderElection(locker, "fleet", 10);
+        election.start();
+
+        final Runnable cronJob = mock(Runnable.class);
+        new CronJobSchedulerFactory(locker)
+            .withJobAssigner(election)
+            .createScheduler("test cron job")
+            .scheduleAtFixedRate(cronJob, 0, 1, TimeUnit.MILLISECONDS);
+
+        Thread.sleep(100);
+
+        verify(cronJob, never()).run();
+        verify(locker, never()).tryLock("LOCK_test cron job", 600);
+        verify(locker, never()).unlock(anyString());
+        verify(locker, never()).renewLock(anyString(), anyInt());
+    }
+}
@@ -0,0 +1,71 @@
+package com.foodpanda.distributedcron;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class LeaseRenewerTest {
+
+    @Test
+    public void itShouldKeepRenewingWhileTheLeaseIsHeld() throws InterruptedException {
+        final Locker locker = mock(Locker.class);
+        when(locker.renewLock(eq("key"), anyInt())).thenReturn(true);
+
+        final LeaseRenewer.Lease lease = new LeaseRenewer(locker).keepAlive("key", 1, () -> { });
+
+        Thread.sleep(1100);
+        lease.cancel();
+
+        verify(locker, atLeast(2)).renewLock("key", 1);
+        assertFalse(lease.isLost());
+    }
+
+    @Test
+    public void itShouldSignalWhenRenewalFails() throws InterruptedException {
+        final Locker locker = mock(Locker.class);
+        when(locker.renewLock(eq("key"), anyInt())).thenReturn(false);
+
+        final CountDownLatch lost = new CountDownLatch(1);
+        final LeaseRenewer.Lease lease = new LeaseRenewer(locker).keepAlive("key", 1, lost::countDown);
+
+        assertTrue(lost.await(2, TimeUnit.SECONDS));
+        assertTrue(lease.isLost());
+    }
+
+    @Test
+    public void itShouldInterruptTheRunWhenTheLeaseIsLost() throws InterruptedException {
+        final Locker locker = LockerMocks.mockLocker();
+        when(locker.tryLock(eq("LOCK_lease job"), anyInt())).thenReturn(true);
+        when(locker.renewLock(eq("LOCK_lease job"), anyInt())).thenReturn(false);
+
+        final CountDownLatch interrupted = new CountDownLatch(1);
+
+        new CronJobSchedulerFactory(locker)
+            .createScheduler("lease job")
+            .scheduleAtFixedRateWithLease(
+                () -> {
+                    try {
+                        Thread.sleep(5000);
+                    } catch (InterruptedException e) {
+                        interrupted.countDown();
+                    }
+                },
+                0,
+                1,
+                TimeUnit.HOURS,
+                1
+            );
+
+        assertTrue(interrupted.await(2, TimeUnit.SECONDS));
+    }
+}
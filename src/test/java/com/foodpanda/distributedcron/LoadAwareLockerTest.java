@@ -0,0 +1,141 @@
+package com.foodpanda.distributedcron;
+
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class LoadAwareLockerTest {
+
+    private Membership membership;
+
+    private InMemoryLocker sharedLocker;
+
+    @Before
+    public void setUp() {
+        membership = mock(Membership.class);
+        sharedLocker = new InMemoryLocker();
+    }
+
+    @Test
+    public void itShouldPublishItsLoadWithTheHeartbeat() {
+        when(membership.readLiveLoads()).thenReturn(ImmutableMap.of("node", 0.7));
+
+        final LoadAwareLocker locker = buildLocker("node", 0.7);
+
+        assertEquals(ImmutableMap.of("node", 0.7), locker.getLoads());
+        verify(membership).heartbeat(0.7);
+    }
+
+    @Test
+    public void itShouldWaitAShareOfTheBiddingWindowMatchingItsRank() {
+        when(membership.readLiveLoads()).thenReturn(ImmutableMap.of("idle", 0.1, "busy", 0.5, "saturated", 0.9));
+
+        assertEquals(0, buildLocker("idle", 0.1).bidDelayMillis("LOCK_job"));
+        assertEquals(100, buildLocker("busy", 0.5).bidDelayMillis("LOCK_job"));
+        assertEquals(200, buildLocker("saturated", 0.9).bidDelayMillis("LOCK_job"));
+        assertEquals(200, buildLocker("joining", 0.0).bidDelayMillis("LOCK_job"));
+    }
+
+    @Test
+    public void itShouldNotWaitWithoutAnotherLiveMember() {
+        when(membership.readLiveLoads()).thenReturn(ImmutableMap.of("alone", 0.9));
+        assertEquals(0, buildLocker("alone", 0.9).bidDelayMillis("LOCK_job"));
+
+        when(membership.readLiveLoads()).thenReturn(ImmutableMap.of());
+        assertEquals(0, buildLocker("joining", 0.0).bidDelayMillis("LOCK_job"));
+    }
+
+    @Test
+    public void itShouldBreakTiesDifferentlyPerLock() {
+        when(membership.readLiveLoads()).thenReturn(ImmutableMap.of("first", 0.5, "second", 0.5));
+
+        final LoadAwareLocker first = buildLocker("first", 0.5);
+        final LoadAwareLocker second = buildLocker("second", 0.5);
+        int firstWins = 0;
+
+        for (int job = 0; job < 100; job++) {
+            final long firstDelay = first.bidDelayMillis("LOCK_job " + job);
+            final long secondDelay = second.bidDelayMillis("LOCK_job " + job);
+
+            assertEquals(200, firstDelay + secondDelay);
+            firstWins += firstDelay == 0 ? 1 : 0;
+        }
+
+        assertTrue(firstWins > 20 && firstWins < 80);
+    }
+
+    @Test
+    public void itShouldLetTheLeastLoadedNodeWin() throws InterruptedException {
+        final Map<String, Double> loads = ImmutableMap.of("idle", 0.1, "busy", 0.5, "saturated", 0.9);
+        when(membership.readLiveLoads()).thenReturn(loads);
+
+        final List<LoadAwareLocker> lockers = new ArrayList<>();
+        for (Map.Entry<String, Double> node : loads.entrySet()) {
+            lockers.add(buildLocker(node.getKey(), node.getValue()));
+        }
+
+        for (int run = 0; run < 5; run++) {
+            final String lockKey = "LOCK_job " + run;
+            final Map<String, Boolean> acquired = new ConcurrentHashMap<>();
+            final CountDownLatch done = new CountDownLatch(lockers.size());
+
+            for (int i = 0; i < lockers.size(); i++) {
+                final LoadAwareLocker locker = lockers.get(i);
+                final String nodeId = new ArrayList<>(loads.keySet()).get(i);
+
+                new Thread(() -> {
+                    acquired.put(nodeId, locker.tryLock(lockKey, 20));
+                    done.countDown();
+                }).start();
+            }
+
+            done.await();
+
+            assertTrue(acquired.get("idle"));
+            assertFalse(acquired.get("busy"));
+            assertFalse(acquired.get("saturated"));
+        }
+    }
+
+    @Test
+    public void itShouldFallBackToTheNextNodeWhenTheLeastLoadedOneIsGone() {
+        when(membership.readLiveLoads()).thenReturn(ImmutableMap.of("gone", 0.1, "busy", 0.5));
+
+        final LoadAwareLocker busy = buildLocker("busy", 0.5);
+
+        final long start = System.nanoTime();
+        assertTrue(busy.tryLock("LOCK_job", 20));
+        assertTrue(System.nanoTime() - start >= 200_000_000L);
+    }
+
+    private LoadAwareLocker buildLocker(String nodeId, double load) {
+        final LoadAwareLocker locker = new LoadAwareLocker(
+            sharedLocker,
+            membership,
+            nodeId,
+            () -> load,
+            200,
+            1000,
+            Executors.newSingleThreadScheduledExecutor()
+        );
+
+        locker.refresh();
+
+        return locker;
+    }
+}
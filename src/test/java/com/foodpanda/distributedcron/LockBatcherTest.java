@@ -0,0 +1,53 @@
+package com.foodpanda.distributedcron;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class LockBatcherTest {
+
+    @Test
+    public void itShouldAcquireALockKeyQueuedTwiceInOneWindowOnlyOnce() throws Exception {
+        final Locker locker = LockerMocks.mockLocker();
+        when(locker.tryLockAll(anyCollectionOf(String.class), anyInt())).thenReturn(ImmutableSet.of("LOCK_first", "LOCK_second"));
+
+        final LockBatcher batcher = new LockBatcher(locker, Executors.newSingleThreadScheduledExecutor(), Runnable::run, 50);
+        final CompletableFuture<Boolean> first = batcher.acquire("LOCK_first", 60);
+        final CompletableFuture<Boolean> duplicate = batcher.acquire("LOCK_first", 60);
+        final CompletableFuture<Boolean> second = batcher.acquire("LOCK_second", 60);
+
+        assertTrue(first.get(1, TimeUnit.SECONDS));
+        assertFalse(duplicate.get(1, TimeUnit.SECONDS));
+        assertTrue(second.get(1, TimeUnit.SECONDS));
+        verify(locker, times(1)).tryLockAll(eq(Arrays.asList("LOCK_first", "LOCK_second")), eq(60));
+    }
+
+    @Test
+    public void itShouldFailTheRequestsOfABatchWhichCouldNotBeAcquired() throws Exception {
+        final Locker locker = LockerMocks.mockLocker();
+        when(locker.tryLockAll(anyCollectionOf(String.class), anyInt())).thenThrow(new IllegalStateException("lock store down"));
+
+        final LockBatcher batcher = new LockBatcher(locker, Executors.newSingleThreadScheduledExecutor(), Runnable::run, 50);
+        final CompletableFuture<Boolean> request = batcher.acquire("LOCK_first", 60);
+
+        assertEquals(
+            IllegalStateException.class,
+            request.handle((acquired, ex) -> ex.getClass()).get(1, TimeUnit.SECONDS)
+        );
+    }
+}
@@ -0,0 +1,24 @@
+package com.foodpanda.distributedcron;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Mockito doesn't call default methods of mocked interfaces, so handles of a mocked locker have to be stubbed
+ */
+final class LockerMocks {
+
+    private LockerMocks() {
+    }
+
+    /**
+     * @return a mocked locker whose handles call the mock with their key
+     */
+    static Locker mockLocker() {
+        final Locker locker = mock(Locker.class);
+        when(locker.handle(anyString())).thenAnswer(invocation -> new KeyedLockHandle(locker, (String) invocation.getArguments()[0]));
+
+        return locker;
+    }
+}
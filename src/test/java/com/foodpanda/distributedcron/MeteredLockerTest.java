@@ -0,0 +1,74 @@
+package com.foodpanda.distributedcron;
+
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MeteredLockerTest {
+
+    private Locker locker;
+
+    private InMemoryCronJobMetrics metrics;
+
+    private MeteredLocker meteredLocker;
+
+    @Before
+    public void setUp() {
+        locker = mock(Locker.class);
+        metrics = new InMemoryCronJobMetrics();
+        meteredLocker = new MeteredLocker(locker, metrics);
+    }
+
+    @Test
+    public void itShouldRecordTheOutcomeOfEachAcquisition() {
+        when(locker.tryAcquire("lock", 10)).thenReturn(LockOutcome.ACQUIRED, LockOutcome.CONTENDED, LockOutcome.ERROR);
+
+        assertTrue(meteredLocker.tryLock("lock", 10));
+        assertFalse(meteredLocker.tryLock("lock", 10));
+        assertFalse(meteredLocker.tryLock("lock", 10));
+
+        assertEquals(1, metrics.getLockOutcomeCount("lock", LockOutcome.ACQUIRED));
+        assertEquals(1, metrics.getLockOutcomeCount("lock", LockOutcome.CONTENDED));
+        assertEquals(1, metrics.getLockOutcomeCount("lock", LockOutcome.ERROR));
+        assertEquals(3, metrics.getLockAcquireLatency("lock").getCount());
+    }
+
+    @Test
+    public void itShouldRecordAnErrorWhenTheLockerThrows() {
+        when(locker.tryAcquire("lock", 10)).thenThrow(new RuntimeException("oh noes"));
+
+        try {
+            meteredLocker.tryLock("lock", 10);
+        } catch (RuntimeException e) {
+            // expected
+        }
+
+        assertEquals(1, metrics.getLockOutcomeCount("lock", LockOutcome.ERROR));
+    }
+
+    @Test
+    public void itShouldRecordEachLockOfABatch() {
+        when(locker.tryLockAll(Arrays.asList("a", "b"), 10)).thenReturn(ImmutableSet.of("a"));
+
+        assertEquals(ImmutableSet.of("a"), meteredLocker.tryLockAll(Arrays.asList("a", "b"), 10));
+
+        assertEquals(1, metrics.getLockOutcomeCount("a", LockOutcome.ACQUIRED));
+        assertEquals(1, metrics.getLockOutcomeCount("b", LockOutcome.CONTENDED));
+    }
+
+    @Test
+    public void itShouldRecordUnlocks() {
+        meteredLocker.unlock("lock");
+
+        assertEquals(1, metrics.getUnlockLatency("lock").getCount());
+    }
+}
@@ -0,0 +1,57 @@
+package com.foodpanda.distributedcron;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A clock which only moves when the test moves it
+ */
+class MutableClock extends Clock {
+
+    private final AtomicLong millis;
+
+    private final ZoneId zone;
+
+    MutableClock(long millis) {
+        this(new AtomicLong(millis), ZoneOffset.UTC);
+    }
+
+    private MutableClock(AtomicLong millis, ZoneId zone) {
+        this.millis = millis;
+        this.zone = zone;
+    }
+
+    void setMillis(long millis) {
+        this.millis.set(millis);
+    }
+
+    void advance(long millis) {
+        this.millis.addAndGet(millis);
+    }
+
+    @Override
+    public long millis() {
+        return millis.get();
+    }
+
+    @Override
+    public Instant instant() {
+        return Instant.ofEpochMilli(millis.get());
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    /**
+     * @return a view of this clock in the zone, which moves along with it
+     */
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return new MutableClock(millis, zone);
+    }
+}
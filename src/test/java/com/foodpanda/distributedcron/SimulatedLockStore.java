@@ -0,0 +1,188 @@
+package com.foodpanda.distributedcron;
+
+import java.time.Clock;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Lock store of a simulated fleet, with the conditional write semantics of the DynamoDB lock table
+ *
+ * A lock is acquired if it doesn't exist or has expired, and is only renewed or released by the node which owns it,
+ * like the conditional updates of DynamoDbLocker. Every call takes a latency drawn from a range and is throttled with
+ * some probability, both decided by a seeded Random so a simulation always plays out the same way.
+ *
+ * Not thread safe, it is only ever called by the thread driving the simulation.
+ */
+class SimulatedLockStore {
+
+    private final Clock clock;
+
+    private final Random random;
+
+    private final Map<String, Lock> locks = new HashMap<>();
+
+    private long minLatencyMillis;
+
+    private long maxLatencyMillis;
+
+    private double throttleRate;
+
+    private long callCount;
+
+    private long throttledCount;
+
+    SimulatedLockStore(Clock clock, Random random) {
+        this.clock = clock;
+        this.random = random;
+    }
+
+    /**
+     * @param minLatencyMillis the least time a lock call takes
+     * @param maxLatencyMillis the most time a lock call takes
+     */
+    void setLatency(long minLatencyMillis, long maxLatencyMillis) {
+        this.minLatencyMillis = minLatencyMillis;
+        this.maxLatencyMillis = maxLatencyMillis;
+    }
+
+    /**
+     * @param throttleRate the share of lock calls which are rejected as throttled, between 0 and 1
+     */
+    void setThrottleRate(double throttleRate) {
+        this.throttleRate = throttleRate;
+    }
+
+    /**
+     * @return the locker of a node, owning the locks it acquires
+     */
+    NodeLocker forNode(String nodeId) {
+        return new NodeLocker(nodeId);
+    }
+
+    long getCallCount() {
+        return callCount;
+    }
+
+    long getThrottledCount() {
+        return throttledCount;
+    }
+
+    /**
+     * @return the number of unexpired locks the node holds
+     */
+    int countHeldBy(String nodeId) {
+        final long now = clock.millis();
+        int held = 0;
+
+        for (Lock lock : locks.values()) {
+            if (lock.owner.equals(nodeId) && lock.expiry >= now) {
+                held++;
+            }
+        }
+
+        return held;
+    }
+
+    class NodeLocker implements Locker {
+
+        private final String nodeId;
+
+        private long lastLatencyMillis;
+
+        private NodeLocker(String nodeId) {
+            this.nodeId = nodeId;
+        }
+
+        @Override
+        public boolean tryLock(String lockKey, int expiryInSeconds) {
+            return tryAcquire(lockKey, expiryInSeconds) == LockOutcome.ACQUIRED;
+        }
+
+        @Override
+        public LockOutcome tryAcquire(String lockKey, int expiryInSeconds) {
+            if (!call()) {
+                return LockOutcome.THROTTLED;
+            }
+
+            final long now = clock.millis();
+            final Lock held = locks.get(lockKey);
+
+            if (held != null && held.expiry >= now) {
+                return LockOutcome.CONTENDED;
+            }
+
+            locks.put(lockKey, new Lock(nodeId, now + expiryInSeconds * 1000L));
+
+            return LockOutcome.ACQUIRED;
+        }
+
+        @Override
+        public boolean renewLock(String lockKey, int expiryInSeconds) {
+            if (!call()) {
+                return false;
+            }
+
+            final long now = clock.millis();
+            final Lock held = locks.get(lockKey);
+
+            if (held == null || !held.owner.equals(nodeId) || held.expiry < now) {
+                return false;
+            }
+
+            locks.put(lockKey, new Lock(nodeId, now + expiryInSeconds * 1000L));
+
+            return true;
+        }
+
+        @Override
+        public void unlock(String lockKey) {
+            if (!call()) {
+                return;
+            }
+
+            final Lock held = locks.get(lockKey);
+
+            if (held != null && held.owner.equals(nodeId)) {
+                locks.remove(lockKey);
+            }
+        }
+
+        /**
+         * @return how long the last call of this node took
+         */
+        long getLastLatencyMillis() {
+            return lastLatencyMillis;
+        }
+
+        /**
+         * Counts the call and draws its latency
+         *
+         * @return false if the call was throttled
+         */
+        private boolean call() {
+            callCount++;
+            lastLatencyMillis = minLatencyMillis + (long) (random.nextDouble() * (maxLatencyMillis - minLatencyMillis));
+
+            if (throttleRate > 0 && random.nextDouble() < throttleRate) {
+                throttledCount++;
+
+                return false;
+            }
+
+            return true;
+        }
+    }
+
+    private static final class Lock {
+
+        private final String owner;
+
+        private final long expiry;
+
+        private Lock(String owner, long expiry) {
+            this.owner = owner;
+            this.expiry = expiry;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.foodpanda.distributedcron;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TimeLimitedLockerTest {
+
+    private static final String LOCK_KEY = "lock";
+
+    private MutableClock clock;
+
+    private SlowLocker slowLocker;
+
+    @Before
+    public void setUp() {
+        clock = new MutableClock(System.currentTimeMillis());
+        slowLocker = new SlowLocker(clock);
+    }
+
+    @Test
+    public void itShouldGiveUpOnSlowAcquisitionsAndReleaseThemLater() throws InterruptedException {
+        final TimeLimitedLocker locker = buildLocker(0, 5);
+        // the first call loads the classes of the call path, which can take longer than the timeout on a cold JVM
+        new TimeLimitedLocker(slowLocker, 1000).tryAcquire("warm up", 20);
+        slowLocker.delays.add(200L);
+
+        final long start = System.nanoTime();
+        assertEquals(LockOutcome.ERROR, locker.tryAcquire(LOCK_KEY, 20));
+        assertTrue(System.nanoTime() - start < 150_000_000L);
+        assertEquals(1, locker.getTimeoutCount());
+
+        Thread.sleep(300);
+
+        // the acquisition completed after the timeout, and was released right away
+        assertEquals(0, slowLocker.getLockExpiry(LOCK_KEY));
+        assertTrue(locker.tryLock(LOCK_KEY, 20));
+    }
+
+    @Test
+    public void itShouldHedgeSlowAcquisitionsWithTheSameAttempt() throws InterruptedException {
+        final TimeLimitedLocker locker = buildLocker(20, 5);
+        slowLocker.delays.add(150L);
+        slowLocker.delays.add(0L);
+
+        assertEquals(LockOutcome.ACQUIRED, locker.tryAcquire(LOCK_KEY, 20));
+        assertEquals(1, locker.getHedgeCount());
+
+        Thread.sleep(250);
+
+        // the first request acquired the lock again for the same attempt, which is still held
+        assertTrue(slowLocker.getLockExpiry(LOCK_KEY) > clock.millis());
+        assertEquals(LockOutcome.CONTENDED, locker.tryAcquire(LOCK_KEY, 20));
+    }
+
+    @Test
+    public void itShouldFailFastWhileTheCircuitBreakerIsOpen() {
+        final TimeLimitedLocker locker = buildLocker(0, 2);
+        slowLocker.delays.add(200L);
+        slowLocker.delays.add(200L);
+
+        assertEquals(LockOutcome.ERROR, locker.tryAcquire(LOCK_KEY, 20));
+        assertEquals(TimeLimitedLocker.State.CLOSED, locker.getState());
+        assertEquals(LockOutcome.ERROR, locker.tryAcquire("other", 20));
+        assertEquals(TimeLimitedLocker.State.OPEN, locker.getState());
+
+        final long start = System.nanoTime();
+        assertEquals(LockOutcome.ERROR, locker.tryAcquire("third", 20));
+        assertTrue(System.nanoTime() - start < 20_000_000L);
+        assertEquals(1, locker.getRejectedCount());
+
+        clock.advance(1000L);
+        assertEquals(LockOutcome.ACQUIRED, locker.tryAcquire("third", 20));
+        assertEquals(TimeLimitedLocker.State.CLOSED, locker.getState());
+
+        assertEquals(2, locker.getCallCount(TimeLimitedLocker.State.CLOSED));
+        assertEquals(1, locker.getCallCount(TimeLimitedLocker.State.HALF_OPEN));
+    }
+
+    @Test
+    public void itShouldReleaseLocksWhileTheCircuitBreakerIsOpen() {
+        final TimeLimitedLocker locker = buildLocker(0, 1);
+        assertTrue(locker.tryLock(LOCK_KEY, 20));
+        slowLocker.delays.add(200L);
+        assertEquals(LockOutcome.ERROR, locker.tryAcquire("other", 20));
+        assertEquals(TimeLimitedLocker.State.OPEN, locker.getState());
+
+        locker.unlock(LOCK_KEY);
+
+        assertEquals(0, slowLocker.getLockExpiry(LOCK_KEY));
+        assertEquals(TimeLimitedLocker.State.OPEN, locker.getState());
+        assertEquals(0, locker.getRejectedCount());
+    }
+
+    @Test
+    public void itShouldFailAcquisitionsTheCallPoolHasNoRoomFor() {
+        final TimeLimitedLocker locker = new TimeLimitedLocker(
+            slowLocker,
+            50,
+            0,
+            5,
+            1000,
+            new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new SynchronousQueue<>()),
+            clock
+        );
+        slowLocker.delays.add(200L);
+        assertEquals(LockOutcome.ERROR, locker.tryAcquire(LOCK_KEY, 20));
+
+        // the only thread is still waiting for the lock store
+        final long start = System.nanoTime();
+        assertEquals(LockOutcome.ERROR, locker.tryAcquire("other", 20));
+        assertTrue(System.nanoTime() - start < 20_000_000L);
+        assertEquals(1, locker.getTimeoutCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void itShouldRequireAnIdempotentLockerToHedge() {
+        new TimeLimitedLocker(LockerMocks.mockLocker(), 50, 20);
+    }
+
+    private TimeLimitedLocker buildLocker(long hedgeDelayMillis, int failureThreshold) {
+        return new TimeLimitedLocker(
+            slowLocker,
+            50,
+            hedgeDelayMillis,
+            failureThreshold,
+            1000,
+            Executors.newCachedThreadPool(),
+            clock
+        );
+    }
+
+    /**
+     * Delays its acquisitions by the next queued delay, if any
+     */
+    private static final class SlowLocker extends InMemoryLocker {
+
+        private final Queue<Long> delays = new ConcurrentLinkedQueue<>();
+
+        private SlowLocker(MutableClock clock) {
+            super(clock);
+        }
+
+        @Override
+        public LockOutcome tryAcquire(String lockKey, int expiryInSeconds, String attemptId) {
+            final Long delay = delays.poll();
+
+            if (delay != null && delay > 0) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            return super.tryAcquire(lockKey, expiryInSeconds, attemptId);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.foodpanda.distributedcron;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TimingWheelScheduledExecutorServiceTest {
+
+    private MutableClock clock;
+
+    private TimingWheelScheduledExecutorService executorService;
+
+    @Before
+    public void setUp() {
+        clock = new MutableClock(1000000L);
+        // no ticker thread, the test advances the wheel
+        executorService = new TimingWheelScheduledExecutorService(clock, 10, 8, null, null);
+    }
+
+    @Test
+    public void itShouldRunTasksWithinOneTickAfterTheirDeadline() {
+        final AtomicLong ranAt = new AtomicLong();
+
+        // far enough to be cascaded down through two higher levels of the 8 bucket wheel
+        executorService.schedule(() -> ranAt.set(clock.millis()), 5003, TimeUnit.MILLISECONDS);
+
+        advanceInTicksBy(5000);
+        assertEquals(0, ranAt.get());
+
+        advanceInTicksBy(20);
+        assertTrue(ranAt.get() >= 1005003 && ranAt.get() <= 1005013);
+    }
+
+    @Test
+    public void itShouldRunAtFixedRate() {
+        final AtomicInteger runs = new AtomicInteger();
+
+        executorService.scheduleAtFixedRate(runs::incrementAndGet, 0, 100, TimeUnit.MILLISECONDS);
+        advanceInTicksBy(1000);
+
+        assertEquals(10, runs.get());
+    }
+
+    @Test
+    public void itShouldKeepRunningWithAPeriodBelowAMillisecond() {
+        final AtomicInteger atFixedRate = new AtomicInteger();
+        final AtomicInteger withFixedDelay = new AtomicInteger();
+
+        executorService.scheduleAtFixedRate(atFixedRate::incrementAndGet, 0, 500, TimeUnit.MICROSECONDS);
+        executorService.scheduleWithFixedDelay(withFixedDelay::incrementAndGet, 0, 500, TimeUnit.MICROSECONDS);
+        advanceInTicksBy(100);
+
+        // rounded up to a millisecond, and run at most once per tick
+        assertTrue(atFixedRate.get() > 1);
+        assertTrue(withFixedDelay.get() > 1);
+        assertEquals(2, executorService.getPendingTaskCount());
+    }
+
+    @Test
+    public void itShouldNotRunCancelledTasks() {
+        final Runnable task = mock(Runnable.class);
+
+        final ScheduledFuture<?> future = executorService.schedule(task, 100, TimeUnit.MILLISECONDS);
+        future.cancel(false);
+        advanceInTicksBy(200);
+
+        verify(task, never()).run();
+        assertEquals(0, executorService.getPendingTaskCount());
+    }
+
+    @Test
+    public void itShouldHandleTensOfThousandsOfTasks() {
+        final AtomicInteger runs = new AtomicInteger();
+
+        for (int i = 0; i < 20000; i++) {
+            executorService.scheduleAtFixedRate(runs::incrementAndGet, i % 1000, 1000, TimeUnit.MILLISECONDS);
+        }
+        advanceInTicksBy(3000);
+
+        assertEquals(60000, runs.get());
+        assertEquals(20000, executorService.getPendingTaskCount());
+    }
+
+    @Test
+    public void itShouldRunWithARealTickerThread() throws InterruptedException {
+        final TimingWheelScheduledExecutorService realExecutorService = new TimingWheelScheduledExecutorService(1, 64);
+        final Runnable cronJob = mock(Runnable.class);
+        final Locker locker = LockerMocks.mockLocker();
+        when(locker.tryLock(anyString(), anyInt())).thenReturn(true);
+
+        new CronJobSchedulerFactory(locker, realExecutorService)
+            .createScheduler("wheel job")
+            .scheduleAtFixedRate(cronJob, 0, 1, TimeUnit.MILLISECONDS);
+
+        Thread.sleep(100);
+
+        realExecutorService.shutdown();
+        assertTrue(realExecutorService.awaitTermination(1, TimeUnit.SECONDS));
+        verify(cronJob, atLeast(25)).run();
+    }
+
+    private void advanceInTicksBy(long millis) {
+        final long until = clock.millis() + millis;
+
+        while (clock.millis() < until) {
+            clock.advance(Math.min(10, until - clock.millis()));
+            executorService.advanceTo(clock.millis());
+        }
+    }
+}